@@ -0,0 +1,45 @@
+package com.google.pdsl.xray.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.core.XrayAuth;
+import com.google.pdsl.xray.core.XrayTestResultUpdater;
+
+import java.nio.file.Path;
+import java.util.Map;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Aggregates and serializes the exported results through the PDSL observer, in a JVM of its own. Nothing is
+ * sent, so the probe needs no XRAY instance.
+ */
+public final class AdapterProbe {
+
+    private AdapterProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        XrayTestResultUpdater updater = new XrayTestResultUpdater.Builder("Benchmark", "Benchmark", Map::of)
+                .withObjectMapper(objectMapper)
+                .withXrayAuth(new XrayAuth("http://localhost/authenticate", "client-id", "client-secret"))
+                .withXrayStatuses(StartupBenchmark.XRAY_STATUSES)
+                .build();
+        updater.importResults(Path.of(args[0]));
+        int bytes = objectMapper.writeValueAsBytes(updater.getXrayPayload()).length;
+        StartupBenchmark.report(bytes);
+    }
+}
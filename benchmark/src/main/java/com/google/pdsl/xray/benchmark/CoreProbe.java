@@ -0,0 +1,37 @@
+package com.google.pdsl.xray.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.core.ResultAggregator;
+
+import java.nio.file.Path;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Aggregates and serializes the exported results with the core module only, in a JVM of its own.
+ */
+public final class CoreProbe {
+
+    private CoreProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        ResultAggregator aggregator = new ResultAggregator("Benchmark", StartupBenchmark.XRAY_STATUSES);
+        aggregator.importResults(Path.of(args[0]));
+        int bytes = new ObjectMapper().writeValueAsBytes(aggregator.executions()).length;
+        StartupBenchmark.report(bytes);
+    }
+}
@@ -0,0 +1,142 @@
+package com.google.pdsl.xray.benchmark;
+
+import com.google.pdsl.xray.core.ResultAggregator;
+import com.google.pdsl.xray.core.TestItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Compares what a test JVM pays to aggregate results with the core module alone and with the PDSL adapter
+ * and everything it depends on.
+ * <p>
+ * Each probe runs in a fresh JVM on the classpath of its module, several times, and aggregates and
+ * serializes the same exported results. The benchmark reports the size of each classpath, the median time
+ * until the probe finished and the number of classes it loaded.
+ * <p>
+ * Arguments: the core classpath file, the adapter classpath file (both written by the build), the directory
+ * of the probe classes and optionally the number of runs and of results.
+ */
+public final class StartupBenchmark {
+
+    static final List<String> XRAY_STATUSES = List.of("EXECUTING", "FAILED", "BLOCKED", "PASSED", "TODO");
+    private static final String REPORT_PREFIX = "probe:";
+
+    private record Sample(long wallMillis, long uptimeMillis, long loadedClasses) {}
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: StartupBenchmark <core classpath file> <adapter classpath file> <probe classes> [runs] [results]");
+            System.exit(2);
+        }
+        String coreClasspath = classpath(Path.of(args[0]), args[2]);
+        String adapterClasspath = classpath(Path.of(args[1]), args[2]);
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int results = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        Path exported = Files.createTempFile("pdsl-xray-benchmark", ".bin");
+        try {
+            export(exported, results);
+            System.out.printf("%-8s %5s %10s %10s %10s %8s%n", "probe", "jars", "jar KiB", "wall ms", "uptime ms", "classes");
+            run("core", CoreProbe.class, coreClasspath, exported, runs);
+            run("adapter", AdapterProbe.class, adapterClasspath, exported, runs);
+        } finally {
+            Files.deleteIfExists(exported);
+        }
+    }
+
+    /**
+     * Called by a probe once it is done.
+     */
+    static void report(int payloadBytes) {
+        System.out.printf("%s %d %d %d%n", REPORT_PREFIX, ManagementFactory.getRuntimeMXBean().getUptime(),
+                ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount(), payloadBytes);
+    }
+
+    private static void export(Path file, int results) {
+        ResultAggregator aggregator = new ResultAggregator("Benchmark", XRAY_STATUSES);
+        Instant now = Instant.now();
+        for (int i = 0; i < results; i++) {
+            URI source = URI.create("file:/features/suite-%d.feature?ruleIndex=0&ordinal=%d&tableIndex=%d"
+                    .formatted(i % 10, i % 50, i));
+            aggregator.add(source, new TestItem("Test " + i, "PROJ-" + (100 + i % 50), i % 7 == 0 ? "FAILED" : "PASSED",
+                    "PROJ-1", null, Set.of(i % 2 == 0 ? "DEV" : "TST"), List.of("Given a step", "Then it passes"),
+                    null, null, now, now));
+        }
+        aggregator.exportResults(file);
+    }
+
+    private static void run(String name, Class<?> probe, String classpath, Path exported, int runs)
+            throws IOException, InterruptedException {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            samples.add(sample(probe, classpath, exported));
+        }
+        List<String> jars = Arrays.stream(classpath.split(File.pathSeparator))
+                .filter(entry -> entry.endsWith(".jar"))
+                .toList();
+        long jarBytes = 0;
+        for (String jar : jars) {
+            jarBytes += Files.size(Path.of(jar));
+        }
+        System.out.printf("%-8s %5d %10d %10d %10d %8d%n", name, jars.size(), jarBytes / 1024,
+                median(samples.stream().mapToLong(Sample::wallMillis).toArray()),
+                median(samples.stream().mapToLong(Sample::uptimeMillis).toArray()),
+                median(samples.stream().mapToLong(Sample::loadedClasses).toArray()));
+    }
+
+    private static Sample sample(Class<?> probe, String classpath, Path exported) throws IOException, InterruptedException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(java.toString(), "-cp", classpath, probe.getName(), exported.toString())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        int exitCode = process.waitFor();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String report = output.lines()
+                .filter(line -> line.startsWith(REPORT_PREFIX))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("%s exited with %d:%n%s".formatted(probe.getSimpleName(), exitCode, output)));
+        String[] fields = report.substring(REPORT_PREFIX.length()).trim().split(" ");
+        return new Sample(wallMillis, Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static String classpath(Path classpathFile, String probeClasses) throws IOException {
+        return probeClasses + File.pathSeparator + Files.readString(classpathFile, StandardCharsets.UTF_8).strip();
+    }
+}
@@ -0,0 +1,248 @@
+package com.google.pdsl.xray.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.core.ExecutionPublisher;
+import com.google.pdsl.xray.core.ResultAggregator;
+import com.google.pdsl.xray.core.XrayAuth;
+import com.google.pdsl.xray.core.XrayImportClient;
+import com.google.pdsl.xray.models.Info;
+import com.google.pdsl.xray.models.PublishResult;
+import com.google.pdsl.xray.models.XrayTestExecution;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Publishes test results exported with {@code XrayTestResultUpdater#exportResults(Path)} to XRAY.
+ * <p>
+ * The results of every file are added to a single {@link ResultAggregator} and sent with an
+ * {@link ExecutionPublisher}, so they are grouped into executions and serialized exactly as they would have
+ * been in the test JVM, without PDSL on the class path. Arguments are parsed by hand and nothing is looked
+ * up reflectively at start up, so the uploader can be compiled with GraalVM native-image (see the native
+ * profile).
+ * <p>
+ * Exit codes: 0 if every execution was published, 1 if any was not, 2 if the arguments are invalid.
+ */
+public final class XrayUploader {
+
+    static final int OK = 0;
+    static final int PUBLISH_FAILED = 1;
+    static final int USAGE = 2;
+
+    private static final String REPORT_URL = "https://xray.cloud.getxray.app/api/v2/import/execution/multipart";
+    private static final List<String> XRAY_STATUSES = List.of("EXECUTING", "FAILED", "BLOCKED", "PASSED", "TODO");
+
+    static final String HELP = """
+            Usage: pdsl-xray-upload [options] <results file>...
+
+            Publishes results exported by XrayTestResultUpdater#exportResults to XRAY.
+
+              --auth <file>            properties file with xray.client.id, xray.client.secret and xray.api.url (required)
+              --fields <file>          JSON of the info part: the fields of the test execution issue
+              --info-template <file>   JSON template of the info part with ${summary}, ${testPlanKey}... placeholders
+              --report-url <url>       the multipart import endpoint, if not XRAY Cloud
+              --title <text>           the title of the test executions
+              --description <text>     the description of the test executions
+              --environments <a,b>     environments of results that were not tagged with any
+              --consolidated           publish every result in a single execution
+              --run-summary <file>     write a JSON summary of the publish
+              --outbox <file>          spool executions that could not be sent, for a later --publish-outbox
+              --publish-outbox         only send the executions in the outbox
+              --help                   show this help
+            """;
+
+    /**
+     * The parsed command line.
+     */
+    record Options(Path auth, Optional<Path> fields, Optional<Path> infoTemplate, Optional<String> reportUrl,
+                   String title, String description, Set<String> environments, boolean consolidated,
+                   Optional<Path> runSummary, Optional<Path> outbox, boolean publishOutbox, List<Path> resultFiles) {}
+
+    private XrayUploader() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(HELP);
+            return USAGE;
+        }
+        if (options == null) {
+            out.print(HELP);
+            return OK;
+        }
+
+        List<PublishResult> results;
+        try {
+            ExecutionPublisher publisher = newPublisher(options);
+            if (options.publishOutbox()) {
+                results = publisher.publishOutbox();
+            } else {
+                ResultAggregator aggregator = new ResultAggregator(options.description(), XRAY_STATUSES);
+                options.resultFiles().forEach(aggregator::importResults);
+                results = publisher.publish(executions(aggregator, options));
+            }
+        } catch (IOException | RuntimeException e) {
+            err.println("Could not publish to XRAY: " + e.getMessage());
+            return PUBLISH_FAILED;
+        }
+
+        long failed = results.stream().filter(r -> !r.isSuccessful()).count();
+        for (PublishResult result : results) {
+            out.printf("%-4s %s %s %s (HTTP %d, %d ms)%n", result.isSuccessful() ? "OK" : "FAIL",
+                    result.testPlanKey(), result.testEnvironments(),
+                    Optional.ofNullable(result.testExecutionKey()).orElse("-"), result.statusCode(), result.latencyMillis());
+        }
+        out.printf("Published %d of %d executions%n", results.size() - failed, results.size());
+        return failed == 0 ? OK : PUBLISH_FAILED;
+    }
+
+    /**
+     * @return the options, or null if help was requested
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    static Options parse(String[] args) {
+        Path auth = null;
+        Optional<Path> fields = Optional.empty();
+        Optional<Path> infoTemplate = Optional.empty();
+        Optional<String> reportUrl = Optional.empty();
+        String title = "Automated tests";
+        String description = "Published by pdsl-xray-upload";
+        Set<String> environments = Set.of();
+        boolean consolidated = false;
+        Optional<Path> runSummary = Optional.empty();
+        Optional<Path> outbox = Optional.empty();
+        boolean publishOutbox = false;
+        List<Path> resultFiles = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help", "-h" -> {
+                    return null;
+                }
+                case "--auth" -> auth = Path.of(value(args, ++i, arg));
+                case "--fields" -> fields = Optional.of(Path.of(value(args, ++i, arg)));
+                case "--info-template" -> infoTemplate = Optional.of(Path.of(value(args, ++i, arg)));
+                case "--report-url" -> reportUrl = Optional.of(value(args, ++i, arg));
+                case "--title" -> title = value(args, ++i, arg);
+                case "--description" -> description = value(args, ++i, arg);
+                case "--environments" -> environments = new LinkedHashSet<>(List.of(value(args, ++i, arg).split(",")));
+                case "--consolidated" -> consolidated = true;
+                case "--run-summary" -> runSummary = Optional.of(Path.of(value(args, ++i, arg)));
+                case "--outbox" -> outbox = Optional.of(Path.of(value(args, ++i, arg)));
+                case "--publish-outbox" -> publishOutbox = true;
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    resultFiles.add(Path.of(arg));
+                }
+            }
+        }
+
+        if (auth == null) {
+            throw new IllegalArgumentException("--auth is required");
+        }
+        if (fields.isEmpty() && infoTemplate.isEmpty() && !publishOutbox) {
+            throw new IllegalArgumentException("Either --fields or --info-template is required");
+        }
+        if (publishOutbox && outbox.isEmpty()) {
+            throw new IllegalArgumentException("--publish-outbox requires --outbox");
+        }
+        if (!publishOutbox && resultFiles.isEmpty()) {
+            throw new IllegalArgumentException("No results files were given");
+        }
+        return new Options(auth, fields, infoTemplate, reportUrl, title, description, environments, consolidated,
+                runSummary, outbox, publishOutbox, List.copyOf(resultFiles));
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static ExecutionPublisher newPublisher(Options options) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<Object, Object> fields = options.fields().isPresent()
+                ? readFields(objectMapper, options.fields().get())
+                : Map.of();
+        Path tempDirectory = Files.createTempDirectory("pdsl-xray-upload");
+        tempDirectory.toFile().deleteOnExit();
+        XrayImportClient importClient = new XrayImportClient(XrayAuth.fromPropertiesFile(options.auth().toString()),
+                options.reportUrl().orElse(REPORT_URL), objectMapper);
+        ExecutionPublisher.Builder builder = new ExecutionPublisher.Builder(importClient, objectMapper, tempDirectory)
+                .withFieldSupplier(() -> fields);
+        if (options.infoTemplate().isPresent()) {
+            builder.withInfoTemplate(Files.readString(options.infoTemplate().get(), StandardCharsets.UTF_8),
+                    options.title());
+        }
+        options.runSummary().ifPresent(builder::withRunSummaryFile);
+        options.outbox().ifPresent(builder::withOutbox);
+        return builder.build();
+    }
+
+    /**
+     * @return the executions to publish: one per test plan and environments, or all results in one
+     */
+    static List<XrayTestExecution> executions(ResultAggregator aggregator, Options options) {
+        List<XrayTestExecution> executions = aggregator.executions();
+        if (options.consolidated() && !executions.isEmpty()) {
+            XrayTestExecution first = executions.getFirst();
+            executions = List.of(new XrayTestExecution(first.testExecutionKey(), first.info(),
+                    aggregator.consolidatedTests()));
+        }
+        return executions.stream().map(e -> withEnvironments(e, options.environments())).toList();
+    }
+
+    /**
+     * @return the execution with the given environments if its results were not tagged with any
+     */
+    private static XrayTestExecution withEnvironments(XrayTestExecution execution, Set<String> environments) {
+        Info info = execution.info();
+        if (environments.isEmpty() || !info.testEnvironments().isEmpty()) {
+            return execution;
+        }
+        return new XrayTestExecution(execution.testExecutionKey(), new Info(info.summary(), info.description(),
+                info.testPlanKey(), environments, info.startDate(), info.finishDate()), execution.tests());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> readFields(ObjectMapper objectMapper, Path file) throws IOException {
+        return objectMapper.readValue(file.toFile(), Map.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.google.pdsl.xray.cli;
+
+import com.google.pdsl.xray.core.ResultAggregator;
+import com.google.pdsl.xray.core.TestItem;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XrayUploaderTest {
+
+    @Test
+    void parse_withOptionsAndFiles_readsThemAll() {
+        XrayUploader.Options options = XrayUploader.parse(new String[]{
+                "--auth", "xray.properties", "--fields", "fields.json", "--environments", "DEV,TST",
+                "--consolidated", "shard-1.bin", "shard-2.bin"});
+
+        assertEquals(Path.of("xray.properties"), options.auth());
+        assertEquals(Optional.of(Path.of("fields.json")), options.fields());
+        assertEquals(Set.of("DEV", "TST"), options.environments());
+        assertTrue(options.consolidated());
+        assertEquals(List.of(Path.of("shard-1.bin"), Path.of("shard-2.bin")), options.resultFiles());
+    }
+
+    @Test
+    void parse_help_returnsNull() {
+        assertNull(XrayUploader.parse(new String[]{"--auth", "xray.properties", "--help"}));
+    }
+
+    @Test
+    void parse_withoutAuth_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> XrayUploader.parse(new String[]{"--fields", "fields.json", "shard-1.bin"}));
+    }
+
+    @Test
+    void run_withUnknownOption_printsUsage() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = XrayUploader.run(new String[]{"--auth", "xray.properties", "--verbose"},
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        assertEquals(XrayUploader.USAGE, exitCode);
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Unknown option --verbose"));
+    }
+
+    @Test
+    void executions_consolidated_putsUntaggedResultsInTheGivenEnvironments() {
+        ResultAggregator aggregator = new ResultAggregator("Uploaded", List.of("FAILED", "PASSED"));
+        for (String plan : List.of("PLAN-1", "PLAN-2")) {
+            aggregator.add(URI.create("file:/features/" + plan + ".feature"), new TestItem("Title", plan + "-TEST", "PASSED",
+                    plan, null, Set.of(), List.of(), null, null, Instant.EPOCH, Instant.EPOCH));
+        }
+        XrayUploader.Options options = XrayUploader.parse(new String[]{
+                "--auth", "xray.properties", "--fields", "fields.json", "--environments", "DEV,TST",
+                "--consolidated", "shard-1.bin"});
+
+        List<XrayTestExecution> executions = XrayUploader.executions(aggregator, options);
+
+        assertEquals(1, executions.size());
+        assertEquals(Set.of("DEV", "TST"), executions.getFirst().info().testEnvironments());
+        assertEquals(2, executions.getFirst().tests().size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.google.pdsl.xray.core;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Decides which XRAY test executions the results of each environment combination are reported in.
+ * <p>
+ * Results are always grouped by test plan first. Within a test plan the strategy is given every combination
+ * of environments the tests ran with and maps each one to the environments of the executions its results
+ * go to. Combinations mapped to the same environments share an execution.
+ */
+@FunctionalInterface
+public interface EnvironmentGroupingStrategy {
+
+    /**
+     * @param environmentCombinations the distinct environment combinations of one test plan
+     * @return for each combination, the environments of every execution its results are reported in
+     */
+    Map<Set<String>, Set<Set<String>>> group(Set<Set<String>> environmentCombinations);
+
+    /**
+     * The default: one execution per environment combination, exactly as the tests were tagged.
+     */
+    static EnvironmentGroupingStrategy byCombination() {
+        return combinations -> combinations.stream()
+                .collect(Collectors.toMap(Function.identity(), Set::of));
+    }
+
+    /**
+     * Splits environments into coupled and factorable ones.
+     * <p>
+     * Coupled environments, such as an operating system, describe how a test ran and always stay together
+     * with the rest of their combination. Factorable environments, such as a stage, can be reported
+     * separately: a test tagged DEV,TST passed in both DEV and TST, so it can be part of a DEV execution and a
+     * TST execution. Every result is reported under each of its factorable environments exactly once, and
+     * never in more executions than {@link #byCombination()} would create.
+     * <p>
+     * E.g. DEV,TST + DEV + TST results in 2 executions (DEV and TST) rather than 3, while
+     * DEV,Android + DEV,iOS still results in 2 when Android and iOS are coupled.
+     *
+     * @param isCoupled whether an environment must stay with the rest of its combination
+     */
+    static EnvironmentGroupingStrategy factoring(Predicate<String> isCoupled) {
+        return new FactoringEnvironmentGrouping(isCoupled);
+    }
+}
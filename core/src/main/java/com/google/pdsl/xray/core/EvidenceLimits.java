@@ -0,0 +1,110 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.models.Evidence;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Bounds how much evidence is sent with an execution.
+ * <p>
+ * The evidence of each test is kept in order while its files fit in the limit per test and in what is left
+ * of the limit per execution. Files that are left out, or that no longer exist, are listed in the comment of
+ * the test instead. The limits are on the size of the files; base64 makes the request a third larger.
+ */
+final class EvidenceLimits {
+
+    private final long maxBytesPerTest;
+    private final long maxBytesPerExecution;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    EvidenceLimits(long maxBytesPerTest, long maxBytesPerExecution) {
+        this.maxBytesPerTest = maxBytesPerTest;
+        this.maxBytesPerExecution = maxBytesPerExecution;
+    }
+
+    /**
+     * @return the execution with only the evidence that fits in the limits, or the same execution if it all fits
+     */
+    XrayTestExecution apply(XrayTestExecution execution) {
+        if (execution.tests().stream().allMatch(t -> t.evidence().isEmpty())) {
+            return execution;
+        }
+        long executionBytes = 0;
+        int omitted = 0;
+        Set<XrayTestResult> tests = new LinkedHashSet<>();
+        for (XrayTestResult test : execution.tests()) {
+            if (test.evidence().isEmpty()) {
+                tests.add(test);
+                continue;
+            }
+            long testBytes = 0;
+            List<Evidence> kept = new ArrayList<>();
+            List<String> notes = new ArrayList<>();
+            for (Evidence evidence : test.evidence()) {
+                long size = size(evidence);
+                if (size < 0) {
+                    notes.add(String.format("Evidence %s was not found", evidence.file()));
+                } else if (testBytes + size > maxBytesPerTest) {
+                    notes.add(String.format("Evidence %s (%d bytes) was not attached: over the limit of %d bytes per test",
+                            evidence.filename(), size, maxBytesPerTest));
+                } else if (executionBytes + size > maxBytesPerExecution) {
+                    notes.add(String.format("Evidence %s (%d bytes) was not attached: over the limit of %d bytes per execution",
+                            evidence.filename(), size, maxBytesPerExecution));
+                } else {
+                    kept.add(evidence);
+                    testBytes += size;
+                    executionBytes += size;
+                }
+            }
+            if (notes.isEmpty()) {
+                tests.add(test);
+                continue;
+            }
+            omitted += notes.size();
+            String note = String.join(String.format("%n"), notes);
+            tests.add(new XrayTestResult(test.testKey(), test.status(), test.examples(), test.start(), test.finish(),
+                    test.comment() == null ? note : test.comment() + String.format("%n%n") + note, kept));
+        }
+        if (omitted == 0) {
+            return execution;
+        }
+        logger.warning(String.format("%d evidence files of the execution for test plan %s and environments %s were not attached",
+                omitted, execution.info().testPlanKey(), execution.info().testEnvironments()));
+        return new XrayTestExecution(execution.testExecutionKey(), execution.info(), Collections.unmodifiableSet(tests));
+    }
+
+    /**
+     * @return the size of the file, or -1 if it cannot be read
+     */
+    private static long size(Evidence evidence) {
+        try {
+            return Files.isReadable(evidence.file()) ? Files.size(evidence.file()) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
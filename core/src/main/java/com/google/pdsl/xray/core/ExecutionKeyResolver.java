@@ -0,0 +1,65 @@
+package com.google.pdsl.xray.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Maps a test plan, environment set and run to the XRAY test execution already created for them, so that
+ * every upload of a run (e.g. from several shards) adds its results to the same execution instead of
+ * creating a new one.
+ * <p>
+ * When {@link #find} returns empty the caller creates the execution and then calls {@link #record} with its
+ * key, or {@link #release} if the import failed.
+ */
+public interface ExecutionKeyResolver {
+
+    /**
+     * @return the key of the execution created for the group in the run, or empty if the caller should create it
+     */
+    Optional<String> find(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException;
+
+    /**
+     * Remembers the execution created for the group in the run.
+     */
+    void record(String testPlanKey, Set<String> testEnvironments, String runId, String testExecutionKey) throws IOException;
+
+    /**
+     * Called instead of {@link #record} when the execution for the group could not be created.
+     */
+    default void release(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException {
+    }
+
+    /**
+     * Keeps the execution keys in a file that can be shared by all processes on a host, e.g. the shards of
+     * a CI job. Access to the file is serialized with a file lock.
+     * <p>
+     * When a process is about to create the execution for a group, it claims the group in the file. Other
+     * processes that need the same group wait for the key to be recorded, for at most the claim timeout,
+     * rather than creating an execution of their own.
+     *
+     * @param file         the shared file. It is created if it does not exist
+     * @param claimTimeout how long to wait for another process to create an execution before creating one
+     */
+    static ExecutionKeyResolver sharedFile(Path file, Duration claimTimeout) {
+        return new SharedExecutionKeyFile(file, claimTimeout, Duration.ofDays(7), Clock.systemUTC());
+    }
+}
@@ -0,0 +1,37 @@
+package com.google.pdsl.xray.core;
+
+import java.io.IOException;
+import java.util.Optional;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Finds a test execution issue by a label, e.g. with a JQL search {@code issuetype = "Test Execution" AND
+ * labels = "..."}.
+ * <p>
+ * The publish ledger labels the executions it creates, so that an import that got no answer, but may still
+ * have created the execution, can be looked up before the execution is created again.
+ */
+@FunctionalInterface
+public interface ExecutionLookup {
+
+    /**
+     * @param label the label the execution was created with
+     * @return the key of the execution with the label, or empty if there is none
+     * @throws IOException if the execution could not be looked up
+     */
+    Optional<String> findByLabel(String label) throws IOException;
+}
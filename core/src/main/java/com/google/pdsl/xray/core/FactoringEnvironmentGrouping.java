@@ -0,0 +1,97 @@
+package com.google.pdsl.xray.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Groups results into the fewest executions by factoring out environments that do not need to stay with
+ * their combination. See {@link EnvironmentGroupingStrategy#factoring(Predicate)}.
+ * <p>
+ * Combinations are first grouped by their coupled environments. Within such a group the factorable
+ * environments are split into the coarsest blocks that every combination is a union of: two environments are
+ * in the same block when every combination has either both or neither of them. Each combination is then
+ * reported once per block it contains, so a result only ever appears under environments it ran in. The blocks
+ * are only used when they need fewer executions than the combinations themselves.
+ */
+final class FactoringEnvironmentGrouping implements EnvironmentGroupingStrategy {
+
+    private final Predicate<String> isCoupled;
+
+    FactoringEnvironmentGrouping(Predicate<String> isCoupled) {
+        this.isCoupled = isCoupled;
+    }
+
+    @Override
+    public Map<Set<String>, Set<Set<String>>> group(Set<Set<String>> environmentCombinations) {
+        Map<Set<String>, List<Set<String>>> combinationsByCoupled = new HashMap<>();
+        for (Set<String> combination : environmentCombinations) {
+            Set<String> coupled = new TreeSet<>();
+            combination.stream().filter(isCoupled).forEach(coupled::add);
+            combinationsByCoupled.computeIfAbsent(coupled, (k) -> new ArrayList<>()).add(combination);
+        }
+
+        Map<Set<String>, Set<Set<String>>> executions = new HashMap<>();
+        combinationsByCoupled.forEach((coupled, combinations) -> executions.putAll(group(coupled, combinations)));
+        return executions;
+    }
+
+    private Map<Set<String>, Set<Set<String>>> group(Set<String> coupled, List<Set<String>> combinations) {
+        // Each factorable environment is identified by the combinations it occurs in
+        List<Set<String>> factorable = new ArrayList<>();
+        Map<String, Set<Integer>> occurrences = new TreeMap<>();
+        for (Set<String> combination : combinations) {
+            Set<String> environments = new HashSet<>(combination);
+            environments.removeAll(coupled);
+            factorable.add(environments);
+            for (String environment : environments) {
+                occurrences.computeIfAbsent(environment, (k) -> new TreeSet<>()).add(factorable.size() - 1);
+            }
+        }
+        Map<Set<Integer>, Set<String>> blocksByOccurrence = new HashMap<>();
+        occurrences.forEach((environment, combinationIndices) ->
+                blocksByOccurrence.computeIfAbsent(combinationIndices, (k) -> new TreeSet<>()).add(environment));
+        Set<Set<String>> distinctFactorable = new HashSet<>(factorable);
+        boolean factor = blocksByOccurrence.size() + (distinctFactorable.contains(Set.of()) ? 1 : 0)
+                < distinctFactorable.size();
+
+        Map<Set<String>, Set<Set<String>>> executions = new HashMap<>();
+        for (int i = 0; i < combinations.size(); i++) {
+            Set<String> combination = combinations.get(i);
+            if (!factor || factorable.get(i).isEmpty()) {
+                executions.put(combination, Set.of(combination));
+                continue;
+            }
+            Set<Set<String>> blocks = new LinkedHashSet<>();
+            for (String environment : new TreeSet<>(factorable.get(i))) {
+                Set<String> execution = new HashSet<>(coupled);
+                execution.addAll(blocksByOccurrence.get(occurrences.get(environment)));
+                blocks.add(Set.copyOf(execution));
+            }
+            executions.put(combination, blocks);
+        }
+        return executions;
+    }
+}
@@ -0,0 +1,128 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Renders test failures into the text placed in the "comment" field of an XRAY test.
+ * <p>
+ * Only the frames from the configured packages are kept and the text is bounded to a maximum length.
+ * Identical renderings are interned so that many tests failing the same way share a single string,
+ * which lets the original {@link Throwable} be released as soon as it has been rendered. The interner only
+ * holds weak references, so a rendering is released with the last result that uses it, e.g. once the
+ * results are published.
+ */
+final class FailureCommentRenderer {
+
+    private static final String TRUNCATION_MARKER = "\n...";
+
+    private final int maxLength;
+    private final List<String> packagePrefixes;
+    private final Interner<String> internedComments = Interners.newWeakInterner();
+
+    /**
+     * @param maxLength       the maximum number of characters of a rendered failure
+     * @param packagePrefixes stack frames from classes starting with any of these are kept. If empty, all
+     *                        frames are kept until the maximum length is reached
+     */
+    FailureCommentRenderer(int maxLength, List<String> packagePrefixes) {
+        Preconditions.checkArgument(maxLength > TRUNCATION_MARKER.length(),
+                "The maximum comment length must be greater than %s", TRUNCATION_MARKER.length());
+        this.maxLength = maxLength;
+        this.packagePrefixes = List.copyOf(packagePrefixes);
+    }
+
+    /**
+     * Renders the failure and its causes.
+     *
+     * @param throwable the failure
+     * @return a shared instance of the rendered text
+     */
+    String render(Throwable throwable) {
+        StringBuilder builder = new StringBuilder();
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Throwable current = throwable;
+        while (current != null && seen.add(current) && builder.length() < maxLength) {
+            if (current != throwable) {
+                builder.append("Caused by: ");
+            }
+            builder.append(current).append('\n');
+            appendFrames(builder, current.getStackTrace());
+            current = current.getCause();
+        }
+        return intern(truncate(builder));
+    }
+
+    /**
+     * @param comment text to truncate and share
+     * @return a shared instance of the text, bounded to the maximum length
+     */
+    String intern(String comment) {
+        return internedComments.intern(truncate(new StringBuilder(comment)));
+    }
+
+    private void appendFrames(StringBuilder builder, StackTraceElement[] frames) {
+        int omitted = 0;
+        for (StackTraceElement frame : frames) {
+            if (builder.length() >= maxLength) {
+                return;
+            }
+            if (isKept(frame)) {
+                if (omitted > 0) {
+                    builder.append("\t... ").append(omitted).append(" more\n");
+                    omitted = 0;
+                }
+                builder.append("\tat ").append(frame).append('\n');
+            } else {
+                omitted++;
+            }
+        }
+        if (omitted > 0) {
+            builder.append("\t... ").append(omitted).append(" more\n");
+        }
+    }
+
+    private boolean isKept(StackTraceElement frame) {
+        if (packagePrefixes.isEmpty()) {
+            return true;
+        }
+        for (String prefix : packagePrefixes) {
+            if (frame.getClassName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String truncate(StringBuilder builder) {
+        while (builder.length() > 0 && builder.charAt(builder.length() - 1) == '\n') {
+            builder.setLength(builder.length() - 1);
+        }
+        if (builder.length() <= maxLength) {
+            return builder.toString();
+        }
+        builder.setLength(maxLength - TRUNCATION_MARKER.length());
+        return builder.append(TRUNCATION_MARKER).toString();
+    }
+}
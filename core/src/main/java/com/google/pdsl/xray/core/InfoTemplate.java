@@ -0,0 +1,149 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.models.XrayTestExecution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The JSON of the multipart info part (the fields of the test execution issue), with placeholders for the
+ * values of each execution.
+ * <p>
+ * The template is compiled once into UTF-8 encoded fragments; rendering an execution only escapes its values
+ * and writes them between the fragments. A placeholder that is a whole JSON string, e.g.
+ * {@code "summary": "${summary}"}, is replaced by the JSON value, so {@code "${testEnvironments}"} becomes
+ * an array. A placeholder inside a longer string, e.g. {@code "Nightly run of ${testPlanKey}"}, is replaced
+ * by the escaped text, with environments separated by commas.
+ * <p>
+ * Placeholders: {@value #PLACEHOLDERS}
+ */
+final class InfoTemplate {
+
+    static final String PLACEHOLDERS = "title, summary, description, testPlanKey, testEnvironments";
+    private static final Set<String> NAMES = Set.of(PLACEHOLDERS.split(", "));
+    private static final Pattern PLACEHOLDER = Pattern.compile("(\"?)\\$\\{([A-Za-z]+)}(\"?)");
+    private static final JsonStringEncoder ENCODER = JsonStringEncoder.getInstance();
+
+    private record Placeholder(String name, boolean wholeValue) {}
+
+    private final List<byte[]> fragments;
+    private final List<Placeholder> placeholders;
+
+    private InfoTemplate(List<byte[]> fragments, List<Placeholder> placeholders) {
+        this.fragments = fragments;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @param template the JSON of the info part with placeholders
+     * @throws IllegalArgumentException if a placeholder is unknown or the template is not valid JSON
+     */
+    static InfoTemplate compile(String template, ObjectMapper objectMapper) {
+        List<byte[]> fragments = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int end = 0;
+        while (matcher.find()) {
+            String name = matcher.group(2);
+            if (!NAMES.contains(name)) {
+                throw new IllegalArgumentException("Unknown placeholder ${%s} in the XRAY info template. Known placeholders: %s"
+                        .formatted(name, PLACEHOLDERS));
+            }
+            boolean wholeValue = !matcher.group(1).isEmpty() && !matcher.group(3).isEmpty();
+            // An opening or closing quote next to an inline placeholder belongs to the surrounding text
+            int fragmentEnd = wholeValue ? matcher.start() : matcher.start() + matcher.group(1).length();
+            fragments.add(template.substring(end, fragmentEnd).getBytes(StandardCharsets.UTF_8));
+            placeholders.add(new Placeholder(name, wholeValue));
+            end = wholeValue ? matcher.end() : matcher.end() - matcher.group(3).length();
+        }
+        fragments.add(template.substring(end).getBytes(StandardCharsets.UTF_8));
+        InfoTemplate compiled = new InfoTemplate(List.copyOf(fragments), List.copyOf(placeholders));
+
+        // Render with sample values once so a broken template fails when it is configured, not when publishing
+        try {
+            objectMapper.readTree(compiled.render(Map.of("title", "title", "summary", "summary", "description", "description",
+                    "testPlanKey", "PLAN-1", "testEnvironments", List.of("DEV", "TST"))));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The XRAY info template is not valid JSON: %s".formatted(e.getMessage()), e);
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the info part for the execution
+     */
+    String render(XrayTestExecution execution, String title) {
+        return render(Map.of(
+                "title", title,
+                "summary", nullToEmpty(execution.info().summary()),
+                "description", nullToEmpty(execution.info().description()),
+                "testPlanKey", nullToEmpty(execution.info().testPlanKey()),
+                "testEnvironments", new TreeSet<>(execution.info().testEnvironments())));
+    }
+
+    private String render(Map<String, Object> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        for (int i = 0; i < placeholders.size(); i++) {
+            out.writeBytes(fragments.get(i));
+            Placeholder placeholder = placeholders.get(i);
+            Object value = values.get(placeholder.name());
+            if (value instanceof Collection<?> list) {
+                if (placeholder.wholeValue()) {
+                    out.write('[');
+                    int written = 0;
+                    for (Object element : list) {
+                        if (written++ > 0) {
+                            out.write(',');
+                        }
+                        writeString(out, element.toString());
+                    }
+                    out.write(']');
+                } else {
+                    out.writeBytes(ENCODER.quoteAsUTF8(String.join(",", list.stream().map(Object::toString).toList())));
+                }
+            } else if (placeholder.wholeValue()) {
+                writeString(out, value.toString());
+            } else {
+                out.writeBytes(ENCODER.quoteAsUTF8(value.toString()));
+            }
+        }
+        out.writeBytes(fragments.getLast());
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        out.write('"');
+        out.writeBytes(ENCODER.quoteAsUTF8(value));
+        out.write('"');
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,35 @@
+package com.google.pdsl.xray.core;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * What happens to results that are added while the ingestion queue is full, because tests produce results
+ * faster than they can be grouped.
+ */
+public enum IngestionBackpressure {
+
+    /**
+     * The thread adding the results waits until there is room. No results are lost, but the tests slow down
+     * to the pace of ingestion.
+     */
+    BLOCK,
+
+    /**
+     * The results are dropped and counted, and a warning is logged when publishing. The tests never wait, but
+     * the dropped results are not reported.
+     */
+    DROP
+}
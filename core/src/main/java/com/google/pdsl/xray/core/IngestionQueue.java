@@ -0,0 +1,174 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Hands results from the threads that produce them to a single background thread that ingests them, so the
+ * producers return as soon as the results are queued.
+ * <p>
+ * Any number of threads may submit; items are ingested one at a time in the order they were submitted. The
+ * ingester takes everything that is queued at once and only frees the room it took once those items are
+ * ingested, so at most the capacity is queued or being ingested. When the queue is full the
+ * {@link IngestionBackpressure} decides whether submitting waits or drops the item.
+ * <p>
+ * A failure to ingest an item does not stop the ingester; the first one is thrown by {@link #awaitIdle()}.
+ *
+ * @param <T> the submitted items, e.g. the results of a test suite
+ */
+final class IngestionQueue<T> {
+
+    private record Entry<T>(T item, int weight) {}
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final String name;
+    private final int capacity;
+    private final IngestionBackpressure backpressure;
+    private final Consumer<T> ingester;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Entry<T>> queue = new ArrayDeque<>();
+    // Of the entries that are queued or being ingested
+    private int weight = 0;
+    private boolean ingesting = false;
+    private long dropped = 0;
+    private Throwable failure;
+    private Thread thread;
+
+    /**
+     * @param name         the name of the ingesting thread
+     * @param capacity     the total weight that may be queued or being ingested, e.g. a number of results
+     * @param backpressure what happens when an item does not fit
+     * @param ingester     ingests a single item, always on the ingesting thread
+     */
+    IngestionQueue(String name, int capacity, IngestionBackpressure backpressure, Consumer<T> ingester) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.name = name;
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        this.ingester = ingester;
+    }
+
+    /**
+     * Queues an item for ingestion. An item that weighs more than the capacity is queued once nothing else is.
+     *
+     * @param item   the item
+     * @param weight how much of the capacity the item takes, e.g. its number of results
+     * @return whether the item was queued, rather than dropped
+     */
+    boolean submit(T item, int weight) {
+        lock.lock();
+        try {
+            while (this.weight > 0 && this.weight + weight > capacity) {
+                if (backpressure == IngestionBackpressure.DROP) {
+                    dropped += weight;
+                    return false;
+                }
+                changed.awaitUninterruptibly();
+            }
+            queue.add(new Entry<>(item, weight));
+            this.weight += weight;
+            if (thread == null) {
+                thread = Thread.ofVirtual().name(name).start(this::ingestForever);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every item submitted so far was ingested.
+     *
+     * @throws RuntimeException the first failure to ingest an item since the last call, if any
+     */
+    void awaitIdle() {
+        Throwable failed;
+        lock.lock();
+        try {
+            while (!queue.isEmpty() || ingesting) {
+                changed.awaitUninterruptibly();
+            }
+            if (dropped > 0) {
+                logger.warning(String.format("%d results were dropped because the ingestion queue was full; "
+                        + "they will not be reported", dropped));
+                dropped = 0;
+            }
+            failed = failure;
+            failure = null;
+        } finally {
+            lock.unlock();
+        }
+        if (failed instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failed instanceof Error e) {
+            throw e;
+        }
+    }
+
+    private void ingestForever() {
+        while (true) {
+            List<Entry<T>> batch;
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+                ingesting = true;
+            } finally {
+                lock.unlock();
+            }
+            int ingested = 0;
+            Throwable failed = null;
+            for (Entry<T> entry : batch) {
+                try {
+                    ingester.accept(entry.item());
+                } catch (RuntimeException | Error e) {
+                    logger.warning(String.format("Could not add results: %s", e));
+                    if (failed == null) {
+                        failed = e;
+                    }
+                }
+                ingested += entry.weight();
+            }
+            lock.lock();
+            try {
+                weight -= ingested;
+                ingesting = false;
+                if (failure == null) {
+                    failure = failed;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
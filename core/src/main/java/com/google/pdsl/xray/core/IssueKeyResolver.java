@@ -0,0 +1,68 @@
+package com.google.pdsl.xray.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Looks up which Jira issue keys (test cases, test plans and test executions) exist, so that results tagged
+ * with a mistyped key can be held back instead of making XRAY reject the whole import.
+ * <p>
+ * Keys are looked up in batches, e.g. with a single JQL search {@code key in (...)} per batch.
+ */
+@FunctionalInterface
+public interface IssueKeyResolver {
+
+    /**
+     * @param keys the keys to look up; never more than {@link #maxBatchSize()}
+     * @return the keys among the given ones that exist
+     * @throws IOException if the keys could not be looked up. The keys are then treated as valid
+     */
+    Set<String> findExisting(Set<String> keys) throws IOException;
+
+    /**
+     * @return the most keys to look up at once
+     */
+    default int maxBatchSize() {
+        return 100;
+    }
+
+    /**
+     * A stand-in for offline use: the keys listed in a file, one per line. Blank lines and lines starting
+     * with # are ignored. The file is read on every lookup, so it can be updated while tests run.
+     *
+     * @param knownKeysFile the file with the keys that exist
+     */
+    static IssueKeyResolver fromFile(Path knownKeysFile) {
+        return keys -> {
+            Set<String> known;
+            try (var lines = Files.lines(knownKeysFile, StandardCharsets.UTF_8)) {
+                known = lines.map(String::strip)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .collect(Collectors.toSet());
+            }
+            Set<String> existing = new HashSet<>(keys);
+            existing.retainAll(known);
+            return existing;
+        };
+    }
+}
@@ -0,0 +1,179 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.collect.Iterables;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Checks Jira issue keys before they are sent to XRAY.
+ * <p>
+ * A key must look like a Jira key (PROJ-123) and must exist. Keys known to exist are kept in a local cache
+ * file with the time they were last confirmed, so a key is only looked up again once that is longer ago
+ * than the time to live. Keys that do not exist are not cached: they are usually fixed and created soon
+ * after. The remaining keys of a run are looked up together, in batches, through the resolver.
+ */
+final class IssueKeyValidator {
+
+    private static final Pattern ISSUE_KEY = Pattern.compile("[A-Z][A-Z0-9_]*-[1-9][0-9]*");
+    private static final char SEPARATOR = '\t';
+
+    private final IssueKeyResolver resolver;
+    private final Path cacheFile;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final Map<String, Long> confirmedMillis = new HashMap<>();
+
+    IssueKeyValidator(IssueKeyResolver resolver, Path cacheFile, Duration timeToLive, Clock clock) {
+        this.resolver = resolver;
+        this.cacheFile = cacheFile;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        load();
+    }
+
+    static boolean isWellFormed(String key) {
+        return ISSUE_KEY.matcher(key).matches();
+    }
+
+    /**
+     * @param keys the keys to check
+     * @return the keys that are malformed or do not exist. Keys that could not be looked up are assumed to exist
+     */
+    Set<String> findInvalid(Collection<String> keys) {
+        return findInvalid(keys, new PublishCircuitBreaker(clock, Optional.empty(), Integer.MAX_VALUE, Optional.empty()));
+    }
+
+    /**
+     * @param keys           the keys to check
+     * @param circuitBreaker the breaker of the publish the keys are checked for. Keys that are not looked up
+     *                       before its deadline are assumed to exist
+     * @return the keys that are malformed or do not exist. Keys that could not be looked up are assumed to exist
+     */
+    synchronized Set<String> findInvalid(Collection<String> keys, PublishCircuitBreaker circuitBreaker) {
+        Set<String> invalid = new TreeSet<>();
+        Set<String> toLookUp = new TreeSet<>();
+        long now = clock.millis();
+        for (String key : keys) {
+            if (!isWellFormed(key)) {
+                invalid.add(key);
+            } else if (!isConfirmed(key, now)) {
+                toLookUp.add(key);
+            }
+        }
+        int checked = 0;
+        for (List<String> batch : Iterables.partition(toLookUp, Math.max(1, resolver.maxBatchSize()))) {
+            Optional<Set<String>> existing;
+            try {
+                existing = circuitBreaker.withinDeadline(() -> resolver.findExisting(new HashSet<>(batch)));
+            } catch (IOException | RuntimeException e) {
+                logger.warning(String.format("Could not check whether the issues %s exist, sending them as they are: %s",
+                        batch, e.getMessage()));
+                checked += batch.size();
+                continue;
+            }
+            if (existing.isEmpty()) {
+                logger.warning(String.format("Stopped checking whether issues exist because the publish deadline has passed; sending the other %d as they are",
+                        toLookUp.size() - checked));
+                break;
+            }
+            checked += batch.size();
+            for (String key : batch) {
+                if (existing.get().contains(key)) {
+                    confirmedMillis.put(key, now);
+                } else {
+                    invalid.add(key);
+                }
+            }
+        }
+        if (!toLookUp.isEmpty()) {
+            save();
+        }
+        return invalid;
+    }
+
+    synchronized int size() {
+        return confirmedMillis.size();
+    }
+
+    private boolean isConfirmed(String key, long now) {
+        Long confirmed = confirmedMillis.get(key);
+        return confirmed != null && now - confirmed <= timeToLive.toMillis();
+    }
+
+    /**
+     * Writes the confirmed keys that have not expired. The file is replaced atomically.
+     */
+    private void save() {
+        long now = clock.millis();
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> e : confirmedMillis.entrySet()) {
+                    if (isConfirmed(e.getKey(), now)) {
+                        writer.append(e.getKey()).append(SEPARATOR).append(Long.toString(e.getValue()));
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache only saves lookups; the next run will simply look the keys up again
+            logger.warning(String.format("Could not save the issue key cache to %s: %s",
+                    cacheFile.toAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                // key, time it was last confirmed
+                String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+                if (fields.length != 2) {
+                    continue;
+                }
+                confirmedMillis.put(fields[0], Long.parseLong(fields[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Could not read the issue key cache from %s".formatted(cacheFile.toAbsolutePath()), e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.models.PublishResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Stops a publish from sending more executions once XRAY is clearly degraded or the time budget is used up.
+ * <p>
+ * The breaker opens after a number of consecutive imports that failed or were slower than a threshold, or
+ * once the deadline of the publish has passed. It never closes again during the same publish; a new breaker
+ * is created for each one.
+ */
+final class PublishCircuitBreaker {
+
+    /**
+     * A lookup made while publishing, e.g. of issue keys in Jira.
+     */
+    @FunctionalInterface
+    interface Lookup<T> {
+        T call() throws IOException;
+    }
+
+    private final Clock clock;
+    private final Optional<Instant> deadline;
+    private final int failureThreshold;
+    private final Optional<Duration> slowCallThreshold;
+    private int consecutiveFailures = 0;
+    private Optional<String> openReason = Optional.empty();
+
+    /**
+     * @param clock             the clock the deadline is measured with
+     * @param budget            how long the whole publish may take, if limited
+     * @param failureThreshold  the number of consecutive failed or slow imports that open the breaker
+     * @param slowCallThreshold imports slower than this count as failures, if set
+     */
+    PublishCircuitBreaker(Clock clock, Optional<Duration> budget, int failureThreshold, Optional<Duration> slowCallThreshold) {
+        this.clock = clock;
+        this.deadline = budget.map(b -> clock.instant().plus(b));
+        this.failureThreshold = failureThreshold;
+        this.slowCallThreshold = slowCallThreshold;
+    }
+
+    /**
+     * @return true when no more imports should be attempted during this publish
+     */
+    boolean isOpen() {
+        if (openReason.isEmpty() && deadline.isPresent() && !clock.instant().isBefore(deadline.get())) {
+            openReason = Optional.of("the publish deadline has passed");
+        }
+        return openReason.isPresent();
+    }
+
+    /**
+     * @return why the breaker opened, if it did
+     */
+    Optional<String> getOpenReason() {
+        return openReason;
+    }
+
+    /**
+     * @return the time left until the deadline, which bounds how long a single import may take
+     */
+    Optional<Duration> remaining() {
+        return deadline.map(d -> Duration.between(clock.instant(), d))
+                .map(d -> d.isNegative() ? Duration.ZERO : d);
+    }
+
+    /**
+     * Makes a lookup within the time the publish has left, so a stalled lookup does not hold the publish past
+     * its deadline. A lookup that outlives the deadline is interrupted and its result ignored. Safe to call
+     * from any thread.
+     *
+     * @return the result of the lookup, or empty if the deadline passed first
+     * @throws IOException if the lookup failed
+     */
+    <T> Optional<T> withinDeadline(Lookup<T> lookup) throws IOException {
+        Optional<Duration> remaining = remaining();
+        if (remaining.isEmpty()) {
+            return Optional.of(lookup.call());
+        }
+        if (remaining.get().isZero()) {
+            return Optional.empty();
+        }
+        FutureTask<T> task = new FutureTask<>(lookup::call);
+        Thread.ofVirtual().name("xray-lookup").start(task);
+        try {
+            return Optional.of(task.get(remaining.get().toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a lookup");
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Counts the outcome of an import towards opening the breaker.
+     */
+    void record(PublishResult result) {
+        boolean slow = slowCallThreshold.map(t -> result.latencyMillis() > t.toMillis()).orElse(false);
+        if (result.isSuccessful() && !slow) {
+            consecutiveFailures = 0;
+            return;
+        }
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold && openReason.isEmpty()) {
+            openReason = Optional.of("%d consecutive imports failed or took longer than %s"
+                    .formatted(consecutiveFailures, slowCallThreshold.map(Duration::toString).orElse("the deadline allows")));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * A local, append-only record of the executions that were successfully published to XRAY.
+ * <p>
+ * Each execution group (the tests of a test plan and environment set within a run) is identified by a group
+ * key and its content by a fingerprint that does not depend on the order of the tests. The executions built per
+ * feature file share the test plan, environments and summary, so the group key includes the test keys to tell
+ * them apart. Replaying a publish with
+ * the same content is skipped, and publishing different content for a group that already landed reuses
+ * the execution key XRAY returned the first time instead of creating a new execution.
+ * <p>
+ * Every successful publish is appended to the file immediately, so the ledger survives a crash part way
+ * through publishing. When the same group appears several times the last line wins.
+ * <p>
+ * An import that creates an execution is recorded as pending before it is sent. If it gets no answer, e.g.
+ * it timed out after XRAY created the execution, the entry stays pending and the next publish looks the
+ * execution up by its {@link #label} (see {@link ExecutionLookup}) before creating another one.
+ */
+final class PublishLedger {
+
+    private static final String SEPARATOR = "\t";
+    private static final String PENDING = "pending";
+    private static final String LABEL_PREFIX = "pdsl-xray-";
+
+    /**
+     * @param testExecutionKey the key of the execution, or empty if XRAY did not answer with one
+     * @param pending          whether the import was sent without an answer yet, so the execution may or may not exist
+     */
+    record Entry(String fingerprint, String testExecutionKey, boolean pending) {}
+
+    private final Path file;
+    private final String runId;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * @param file  the ledger file. It is created if it does not exist
+     * @param runId identifies the run. Only groups from the same run are considered the same group
+     */
+    PublishLedger(Path file, String runId) {
+        this.file = file;
+        this.runId = runId;
+        load();
+    }
+
+    /**
+     * @return the ledger entry of the execution's group, if it was published before
+     */
+    synchronized Optional<Entry> find(XrayTestExecution execution) {
+        return Optional.ofNullable(entries.get(groupKey(execution)));
+    }
+
+    /**
+     * Records a successful publish and appends it to the ledger file.
+     *
+     * @param execution        the execution that was published
+     * @param testExecutionKey the key of the execution XRAY created or updated
+     */
+    synchronized void recordPublished(XrayTestExecution execution, String testExecutionKey) {
+        record(groupKey(execution), new Entry(fingerprint(execution), testExecutionKey == null ? "" : testExecutionKey, false));
+    }
+
+    /**
+     * Records that an import creating the execution is about to be sent, in case it gets no answer.
+     *
+     * @param execution the execution, without an execution key
+     */
+    synchronized void recordPending(XrayTestExecution execution) {
+        record(groupKey(execution), new Entry(fingerprint(execution), "", true));
+    }
+
+    /**
+     * Records that the execution of a pending import was found, so it was created with the pending content.
+     *
+     * @param execution        an execution of the group of the pending entry
+     * @param testExecutionKey the key of the execution that was found
+     */
+    synchronized void recordFound(XrayTestExecution execution, String testExecutionKey) {
+        String groupKey = groupKey(execution);
+        record(groupKey, new Entry(entries.get(groupKey).fingerprint(), testExecutionKey, false));
+    }
+
+    /**
+     * @return the label of the execution created for the execution's group, to find it with an {@link ExecutionLookup}
+     */
+    String label(XrayTestExecution execution) {
+        return LABEL_PREFIX + groupKey(execution);
+    }
+
+    private void record(String groupKey, Entry entry) {
+        entries.put(groupKey, entry);
+        String line = entry.pending()
+                ? String.join(SEPARATOR, groupKey, entry.fingerprint(), entry.testExecutionKey(), PENDING)
+                : String.join(SEPARATOR, groupKey, entry.fingerprint(), entry.testExecutionKey());
+        try {
+            Files.writeString(file, line + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the XRAY publish ledger %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    /**
+     * Computes a fingerprint of the content of an execution that does not depend on the order of its tests.
+     * The execution key is not part of the content since it may be filled in from the ledger, and neither are
+     * the start and finish times, so results collected again for a replay match the ones that landed.
+     */
+    static String fingerprint(XrayTestExecution execution) {
+        Hasher hasher = Hashing.farmHashFingerprint64().newHasher();
+        putNullable(hasher, execution.info().testPlanKey());
+        new TreeSet<>(execution.info().testEnvironments()).forEach(e -> putNullable(hasher, e));
+        List<XrayTestResult> tests = execution.tests().stream()
+                .sorted(Comparator.comparing(XrayTestResult::testKey))
+                .toList();
+        for (XrayTestResult test : tests) {
+            putNullable(hasher, test.testKey());
+            putNullable(hasher, test.status());
+            putNullable(hasher, test.comment());
+            if (test.examples() != null) {
+                test.examples().forEach(e -> putNullable(hasher, e));
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private String groupKey(XrayTestExecution execution) {
+        Hasher hasher = Hashing.farmHashFingerprint64().newHasher();
+        putNullable(hasher, runId);
+        putNullable(hasher, execution.info().testPlanKey());
+        new TreeSet<>(execution.info().testEnvironments()).forEach(e -> putNullable(hasher, e));
+        putNullable(hasher, execution.info().summary());
+        execution.tests().stream().map(XrayTestResult::testKey).distinct().sorted().forEach(k -> putNullable(hasher, k));
+        return hasher.hash().toString();
+    }
+
+    private static void putNullable(Hasher hasher, String value) {
+        // Length prefix so that ("ab", "c") and ("a", "bc") do not collide
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length == 3 || fields.length == 4) {
+                    entries.put(fields[0], new Entry(fields[1], fields[2], fields.length == 4 && PENDING.equals(fields[3])));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the XRAY publish ledger %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+}
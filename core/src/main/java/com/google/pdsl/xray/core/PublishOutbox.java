@@ -0,0 +1,232 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * A local file of executions that could not be sent to XRAY, so they can be published later.
+ * <p>
+ * Each line is a JSON object with the tenant, test plan, environments and execution key of the execution along
+ * with the exact info part of the multipart import. The results part, which holds the base64 evidence, is
+ * kept as a file in the {@code <outbox>.results} directory next to the outbox and the line names that file,
+ * so it is never read into memory. Entries are appended as soon as they are spooled, so the outbox survives
+ * the process being killed.
+ * <p>
+ * The outbox may be shared by the processes on a host, e.g. the shards of a CI job. Changes are made under
+ * an exclusive lock on a file next to it, and sent entries are removed by their id, so entries another
+ * process appends while the outbox is being published are kept.
+ */
+final class PublishOutbox {
+
+    /**
+     * A file lock is held by the whole JVM, so threads of the same process take turns on this lock first.
+     */
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * An execution waiting to be imported.
+     *
+     * @param id      identifies the entry in the outbox
+     * @param tenant  the name of the tenant the execution is imported to, or null for the default project
+     * @param results the file with the results part of the import
+     */
+    record Entry(String id, String tenant, String testPlanKey, Set<String> testEnvironments, String testExecutionKey,
+                 JsonNode info, Path results) {
+
+        Entry(String tenant, String testPlanKey, Set<String> testEnvironments, String testExecutionKey, JsonNode info,
+              Path results) {
+            this(UUID.randomUUID().toString(), tenant, testPlanKey, testEnvironments, testExecutionKey, info, results);
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+    private final Path resultsDirectory;
+    private final ObjectMapper objectMapper;
+
+    PublishOutbox(Path file, ObjectMapper objectMapper) {
+        this.file = file.toAbsolutePath();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.resultsDirectory = this.file.resolveSibling(this.file.getFileName() + ".results");
+        this.objectMapper = objectMapper;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Adds an execution. Its results file is moved into the outbox, so the caller no longer owns it.
+     */
+    void append(Entry entry) {
+        try {
+            String line = toLine(entry) + System.lineSeparator();
+            withLock(() -> {
+                // Moved before the line is written, so a line never names a file that is not there yet
+                Files.createDirectories(resultsDirectory);
+                Files.move(entry.results(), resultsFile(entry.id()), StandardCopyOption.REPLACE_EXISTING);
+                return Files.writeString(file, line, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the XRAY outbox %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    /**
+     * @return every execution in the outbox, oldest first
+     */
+    List<Entry> read() {
+        try {
+            return withLock(() -> {
+                if (!Files.exists(file)) {
+                    return List.of();
+                }
+                List<Entry> entries = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (!line.isBlank()) {
+                            entries.add(toEntry(objectMapper.readTree(line)));
+                        }
+                    }
+                }
+                return entries;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the XRAY outbox %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    /**
+     * Removes entries and their results files, e.g. those that were published. Entries appended since they
+     * were read are kept.
+     *
+     * @param ids the ids of the entries to remove
+     */
+    void remove(Set<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            withLock(() -> {
+                if (!Files.exists(file)) {
+                    return null;
+                }
+                Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                boolean kept = false;
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                     BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (!line.isBlank() && !ids.contains(textOrNull(objectMapper.readTree(line), "id"))) {
+                            writer.append(line);
+                            writer.newLine();
+                            kept = true;
+                        }
+                    }
+                }
+                for (String id : ids) {
+                    Files.deleteIfExists(resultsFile(id));
+                }
+                if (kept) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.delete(temp);
+                    Files.delete(file);
+                    deleteIfEmpty(resultsDirectory);
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save the XRAY outbox %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private <T> T withLock(LockedAction<T> action) throws IOException {
+        ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(file, f -> new ReentrantLock());
+        localLock.lock();
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Released when the channel is closed
+            channel.lock();
+            return action.run();
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private Entry toEntry(JsonNode node) {
+        Set<String> environments = new LinkedHashSet<>();
+        node.path("testEnvironments").forEach(e -> environments.add(e.asText()));
+        return new Entry(textOrNull(node, "id"), textOrNull(node, "tenant"), textOrNull(node, "testPlanKey"),
+                Set.copyOf(environments), textOrNull(node, "testExecutionKey"), node.get("info"),
+                resultsFile(textOrNull(node, "id")));
+    }
+
+    private String toLine(Entry entry) throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", entry.id());
+        node.put("tenant", entry.tenant());
+        node.put("testPlanKey", entry.testPlanKey());
+        entry.testEnvironments().forEach(node.putArray("testEnvironments")::add);
+        node.put("testExecutionKey", entry.testExecutionKey());
+        node.set("info", entry.info());
+        node.put("results", resultsFile(entry.id()).getFileName().toString());
+        return objectMapper.writeValueAsString(node);
+    }
+
+    private static void deleteIfEmpty(Path directory) throws IOException {
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            // Results of entries whose lines were cut short by a crash
+        }
+    }
+
+    private Path resultsFile(String id) {
+        return resultsDirectory.resolve(id + ".json");
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,172 @@
+package com.google.pdsl.xray.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Prepares items on a background thread while the caller sends the ones that are ready, e.g. serializes the
+ * next execution while the previous one is uploaded.
+ * <p>
+ * Items are prepared in order and handed over through a bounded queue, so the preparing thread waits once
+ * it is that many items ahead and at most that many prepared items (such as payload files) exist at a time.
+ * A failure to prepare an item is thrown to the caller when it reaches that item. Closing the pipeline stops
+ * preparing and discards the prepared items that were not taken. The preparing thread is never interrupted,
+ * since an interrupt closes any file channel it is writing to or locking, and the stage could then not undo
+ * what it did, e.g. release a claim; it stops after the item it is preparing.
+ *
+ * @param <T> the items to prepare
+ * @param <P> the prepared items
+ */
+final class PublishPipeline<T, P> implements Closeable {
+
+    /**
+     * Prepares a single item.
+     */
+    @FunctionalInterface
+    interface Stage<T, P> {
+        /**
+         * @return the prepared item, or empty if there is nothing to send for it
+         */
+        Optional<P> prepare(T item) throws IOException;
+    }
+
+    /**
+     * What is handed over for each item: the prepared item, the failure to prepare it, or the end.
+     */
+    private record Slot<P>(P prepared, Throwable failure) {}
+
+    private static final Slot<?> END = new Slot<>(null, null);
+
+    private final BlockingQueue<Slot<P>> queue;
+    private final Consumer<P> discard;
+    private final Thread preparer;
+    private volatile boolean closed = false;
+    private boolean done = false;
+
+    /**
+     * Starts preparing the items.
+     *
+     * @param name     the name of the preparing thread
+     * @param items    the items, in the order they are taken
+     * @param capacity how many prepared items may wait to be taken
+     * @param stage    prepares each item
+     * @param discard  releases a prepared item that is not taken, e.g. deletes its file
+     */
+    PublishPipeline(String name, List<T> items, int capacity, Stage<T, P> stage, Consumer<P> discard) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.discard = discard;
+        this.preparer = Thread.ofVirtual().name(name).start(() -> prepareAll(items, stage));
+    }
+
+    /**
+     * Waits for the next prepared item.
+     *
+     * @return the next prepared item, or empty once every item was taken
+     * @throws IOException if preparing the item failed
+     */
+    Optional<P> next() throws IOException {
+        if (done) {
+            return Optional.empty();
+        }
+        Slot<P> slot;
+        try {
+            slot = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next payload");
+        }
+        if (slot == END) {
+            done = true;
+            return Optional.empty();
+        }
+        if (slot.failure() != null) {
+            done = true;
+            switch (slot.failure()) {
+                case IOException e -> throw e;
+                case RuntimeException e -> throw e;
+                case Error e -> throw e;
+                default -> throw new IOException(slot.failure());
+            }
+        }
+        return Optional.of(slot.prepared());
+    }
+
+    /**
+     * Stops preparing items once the one being prepared is done, and discards those that were prepared but
+     * not taken.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            preparer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Slot<P> slot = queue.poll(); slot != null; slot = queue.poll()) {
+            if (slot.prepared() != null) {
+                discard.accept(slot.prepared());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prepareAll(List<T> items, Stage<T, P> stage) {
+        try {
+            for (T item : items) {
+                if (closed) {
+                    return;
+                }
+                Optional<P> prepared = stage.prepare(item);
+                if (prepared.isPresent() && !hand(new Slot<>(prepared.get(), null))) {
+                    discard.accept(prepared.get());
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            if (!closed) {
+                hand(new Slot<>(null, e));
+            }
+            return;
+        }
+        hand((Slot<P>) END);
+    }
+
+    /**
+     * @return whether the slot was handed over, rather than the pipeline closed first
+     */
+    private boolean hand(Slot<P> slot) {
+        while (!closed) {
+            try {
+                if (queue.offer(slot, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                // Only closing stops the hand-over; checked by the loop
+            }
+        }
+        return false;
+    }
+}
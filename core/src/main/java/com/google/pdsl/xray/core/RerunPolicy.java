@@ -0,0 +1,80 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.constants.StepStatus;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Decides which result is kept when an example is run again, e.g. because a flaky scenario was retried.
+ * <p>
+ * A rerun is a result added for the same position in the same feature file (rule, scenario and row of the
+ * examples table) with the same test key and environments as an earlier one. Only the kept result is stored,
+ * so retries do not add examples to the test.
+ */
+public enum RerunPolicy {
+
+    /**
+     * The latest attempt is reported, whatever the earlier ones were.
+     */
+    LAST_WINS {
+        @Override
+        boolean keepsRerun(String earlierStatus, String rerunStatus) {
+            return true;
+        }
+    },
+
+    /**
+     * The example passed if any attempt passed. The first passing attempt is kept; until one passes, the
+     * latest attempt is.
+     */
+    ANY_PASS {
+        @Override
+        boolean keepsRerun(String earlierStatus, String rerunStatus) {
+            return !passed(earlierStatus);
+        }
+    },
+
+    /**
+     * The example only passed if every attempt passed. The first attempt that did not pass is kept; while
+     * they all pass, the latest attempt is.
+     */
+    ALL_MUST_PASS {
+        @Override
+        boolean keepsRerun(String earlierStatus, String rerunStatus) {
+            return passed(earlierStatus);
+        }
+    };
+
+    /**
+     * @param earlierStatus the status of the attempt kept so far
+     * @param rerunStatus   the status of the next attempt
+     * @return whether the next attempt replaces the one kept so far
+     */
+    abstract boolean keepsRerun(String earlierStatus, String rerunStatus);
+
+    /**
+     * @param earlier the result kept so far
+     * @param rerun   the result of the next attempt
+     * @return the result to keep
+     */
+    TestItem choose(TestItem earlier, TestItem rerun) {
+        return keepsRerun(earlier.status(), rerun.status()) ? rerun : earlier;
+    }
+
+    private static boolean passed(String status) {
+        return StepStatus.PASSED.name().equals(status);
+    }
+}
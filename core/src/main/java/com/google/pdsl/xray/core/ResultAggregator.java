@@ -0,0 +1,789 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Streams;
+import com.google.pdsl.xray.constants.StepStatus;
+import com.google.pdsl.xray.models.Evidence;
+import com.google.pdsl.xray.models.Info;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Groups test results into XRAY test executions: one per test plan, environment combination (or the
+ * executions the environment grouping strategy puts it in) and source.
+ * <p>
+ * The aggregator knows nothing about PDSL or about how executions are sent, so it can be used on its own,
+ * e.g. by a tool that collects results from another framework. Results are added with
+ * {@link #add(URI, TestItem)}, where the query parameters ruleIndex, ordinal and tableIndex of the source
+ * locate the example in its feature file. A result added again for the same position is a rerun; the
+ * {@link RerunPolicy} decides which of the attempts is kept.
+ */
+public final class ResultAggregator {
+
+    private static final DateTimeFormatter XRAY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+    private static final Position DEFAULT_POSITION = new Position(-1, -1, -1);
+
+    private final String description;
+    private final List<String> xrayStatuses;
+    private final Path tempDirectory;
+    private final FailureCommentRenderer failureCommentRenderer;
+    private final EnvironmentGroupingStrategy environmentGrouping;
+    private final Optional<Integer> exampleLimit;
+    private final Optional<Long> heapBudget;
+    private final RerunPolicy rerunPolicy;
+    private final boolean reportAttempts;
+    private final Optional<ResultIndex> index;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final Map<String, HierarchicalTestSuite> suites = new HashMap<>();
+    // The tests of every suite's cached executions, with the number of executions holding each, so the
+    // consolidated execution only changes by the suites that were rebuilt
+    private final Map<XrayTestResult, Integer> consolidatedTests = new LinkedHashMap<>();
+    private long estimatedResultBytes = 0;
+
+    /**
+     * Where an example is in its feature file, read from the query of its source.
+     */
+    private record Position(int ruleIndex, int ordinal, int testIndex) {}
+
+    /**
+     * An aggregator that keeps every result in memory and groups executions by environment combination. Results
+     * are not indexed.
+     *
+     * @param description  the description of the executions
+     * @param xrayStatuses the XRAY statuses, most significant first
+     */
+    public ResultAggregator(String description, List<String> xrayStatuses) {
+        this(description, xrayStatuses, null, new FailureCommentRenderer(4000, List.of()),
+                EnvironmentGroupingStrategy.byCombination(), Optional.empty(), Optional.empty(),
+                RerunPolicy.LAST_WINS, false, false);
+    }
+
+    /**
+     * @param tempDirectory  where results are spilled to once the heap budget is exceeded
+     * @param rerunPolicy    which attempt is kept when an example is run again
+     * @param reportAttempts whether the comment of a test lists the examples that took more than one attempt
+     * @param indexResults   whether results are indexed for queries. The index is kept in memory, also for
+     *                       results that are spilled to disk
+     */
+    ResultAggregator(String description, List<String> xrayStatuses, Path tempDirectory,
+                     FailureCommentRenderer failureCommentRenderer, EnvironmentGroupingStrategy environmentGrouping,
+                     Optional<Integer> exampleLimit, Optional<Long> heapBudget, RerunPolicy rerunPolicy,
+                     boolean reportAttempts, boolean indexResults) {
+        Preconditions.checkNotNull(description, "description must not be null");
+        Preconditions.checkNotNull(xrayStatuses, "xrayStatuses must not be null");
+        Preconditions.checkNotNull(rerunPolicy, "rerunPolicy must not be null");
+        Preconditions.checkArgument(heapBudget.isEmpty() || tempDirectory != null,
+                "a temp directory is required to spill results");
+        this.description = description;
+        this.xrayStatuses = xrayStatuses;
+        this.tempDirectory = tempDirectory;
+        this.failureCommentRenderer = failureCommentRenderer;
+        this.environmentGrouping = environmentGrouping;
+        this.exampleLimit = exampleLimit;
+        this.heapBudget = heapBudget;
+        this.rerunPolicy = rerunPolicy;
+        this.reportAttempts = reportAttempts;
+        this.index = indexResults ? Optional.of(new ResultIndex(rerunPolicy)) : Optional.empty();
+    }
+
+    /**
+     * Adds the result of an example.
+     *
+     * @param source   the feature file of the example, with its position in the query
+     * @param testItem the result
+     */
+    public void add(URI source, TestItem testItem) {
+        add(source, testItem, 1);
+    }
+
+    /**
+     * @param attempts how many times the example ran before, e.g. as read back from exported results
+     */
+    void add(URI source, TestItem testItem, int attempts) {
+        Position position = getPosition(source);
+        suites.computeIfAbsent(testItem.testPlanKey(), (k) -> new HierarchicalTestSuite()).addTestResult(
+                source,
+                testItem,
+                position,
+                attempts
+        );
+        index.ifPresent(i -> i.add(source, testItem, !position.equals(DEFAULT_POSITION)));
+        if (heapBudget.isPresent()) {
+            estimatedResultBytes += estimateRetainedBytes(testItem);
+            if (estimatedResultBytes > heapBudget.get()) {
+                logger.fine(String.format("Accumulated results exceed the heap budget of %d bytes; moving them to disk",
+                        heapBudget.get()));
+                suites.values().forEach(HierarchicalTestSuite::spill);
+                estimatedResultBytes = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the results added so far, indexed for queries. The index is kept up to date as results are added
+     * @throws IllegalStateException if this aggregator does not index results
+     */
+    public ResultIndex index() {
+        Preconditions.checkState(index.isPresent(), "Results are not indexed");
+        return index.get();
+    }
+
+    /**
+     * The executions are cached per test plan until results are added to it, so calling this again is cheap.
+     * Test plans whose results changed are built in parallel on the common fork-join pool, so building takes
+     * about as long as the largest of them.
+     *
+     * @return an execution per test plan, execution environments and source
+     */
+    public List<XrayTestExecution> executions() {
+        List<HierarchicalTestSuite> changed = suites.values().stream()
+                .filter(HierarchicalTestSuite::isDirty)
+                .toList();
+        if (changed.size() > 1) {
+            // Suites share nothing while they are built; the consolidated tests are updated one at a time below
+            changed.parallelStream().forEach(HierarchicalTestSuite::rebuild);
+        }
+        return suites.values().stream()
+                .flatMap(s -> s.info2Results().stream())
+                .toList();
+    }
+
+    /**
+     * @return the tests of every execution, for publishing them all in a single execution
+     */
+    public Set<XrayTestResult> consolidatedTests() {
+        // Building the executions brings the consolidated tests up to date with every suite
+        executions();
+        return Collections.unmodifiableSet(consolidatedTests.keySet());
+    }
+
+    /**
+     * @return the results added for the test plan, in memory and spilled
+     */
+    public List<TestItem> testItems(String testPlanKey) {
+        HierarchicalTestSuite suite = suites.get(testPlanKey);
+        if (suite == null) {
+            return List.of();
+        }
+        return suite.permutations()
+                .map(p -> p.result)
+                .toList();
+    }
+
+    /**
+     * Passes every result added so far, with its source, to the action.
+     */
+    public void forEach(BiConsumer<URI, TestItem> action) {
+        suites.values().stream()
+                .flatMap(HierarchicalTestSuite::permutations)
+                .forEach(p -> action.accept(p.source(), p.result()));
+    }
+
+    /**
+     * Writes every result added so far to a file. The results are kept.
+     *
+     * @param file the file to write. It is replaced if it exists
+     */
+    public void exportResults(Path file) {
+        List<SpilledRun.Record> records = suites.values().stream()
+                .flatMap(HierarchicalTestSuite::permutations)
+                .map(p -> new SpilledRun.Record(p.source(), p.permutationNumber(), p.result(), p.attempts()))
+                .toList();
+        SpilledRun.writeTo(file, records);
+    }
+
+    /**
+     * Adds the results in a file written by {@link #exportResults(Path)}.
+     *
+     * @throws IllegalArgumentException if the file does not contain exported results
+     */
+    public void importResults(Path file) {
+        Iterator<SpilledRun.Record> records = SpilledRun.open(file).iterator();
+        while (records.hasNext()) {
+            SpilledRun.Record record = records.next();
+            add(record.source(), record.item(), record.attempts());
+        }
+    }
+
+    /**
+     * Removes every result, including those spilled to disk.
+     */
+    public void clear() {
+        suites.values().forEach(HierarchicalTestSuite::discard);
+        suites.clear();
+        index.ifPresent(ResultIndex::clear);
+        estimatedResultBytes = 0;
+    }
+
+    /**
+     * A rough estimate of the memory a result keeps alive: the item and its permutation plus the strings
+     * it references. Strings shared between items (such as step descriptions) are counted for each item,
+     * which errs on the side of spilling early.
+     */
+    private static long estimateRetainedBytes(TestItem item) {
+        long bytes = 160;
+        bytes += stringBytes(item.title()) + stringBytes(item.testKey()) + stringBytes(item.status())
+                + stringBytes(item.testPlanKey()) + stringBytes(item.testExecutionKey()) + stringBytes(item.failureComment());
+        bytes += 16L * item.environments().size();
+        bytes += 16L * item.stepDescription().size();
+        bytes += 80L * item.evidence().size();
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private static Position getPosition(URI uri) {
+        if (uri.getQuery() == null) {
+            return DEFAULT_POSITION;
+        }
+        Map<String, String> params = Arrays.stream(uri.getQuery().split("&"))
+                .filter(s -> s.split("=").length == 2)
+                .collect(Collectors.toMap(s -> s.split("=")[0], s -> s.split("=")[1], (a, b) -> b));
+        try {
+            return new Position(Integer.parseInt(params.get("ruleIndex")),
+                    Integer.parseInt(params.get("ordinal")),
+                    Integer.parseInt(params.get("tableIndex"))
+            );
+        } catch (RuntimeException e) {
+            return DEFAULT_POSITION;
+        }
+    }
+
+    private void updateConsolidatedTests(List<XrayTestExecution> previous, List<XrayTestExecution> current) {
+        for (XrayTestExecution execution : previous) {
+            execution.tests().forEach(test -> consolidatedTests.computeIfPresent(test, (k, count) -> count == 1 ? null : count - 1));
+        }
+        for (XrayTestExecution execution : current) {
+            execution.tests().forEach(test -> consolidatedTests.merge(test, 1, Integer::sum));
+        }
+    }
+
+    private final class HierarchicalTestSuite {
+
+        private record TestGroup(String source, int groupNumber, Map<Integer, TestOrdinal> ordinals) {
+
+            Collection<XrayTestResult> toTestExecutionResults(List<String> xrayStatuses) {
+
+                List<XrayTestResult> results = new ArrayList<>();
+                for (TestOrdinal ordinal : ordinals.values()) {
+                    // Sort all of the ordinals to make the results show up the same way as they did in the file
+                    ordinal.permutations.sort(Comparator.comparingInt(t -> t.permutationNumber));
+                    List<String> examplesResults = new ArrayList<>();
+                    List<XrayTestResult.Iteration> iterations = new ArrayList<>();
+                    for (int i = 0; i < ordinal.permutations.size(); i++) {
+                        TestPermutation permutation = ordinal.permutations.get(i);
+                        examplesResults.add(permutation.result.status());
+                        iterations.add(new XrayTestResult.Iteration(
+                                String.valueOf(i),
+                                permutation.result.status(),
+                                new HashMap<>(),
+                                iterationStepsFromPermutation(permutation)));
+                    }
+                    boolean timed = isTimedPerTest(ordinal.permutations);
+                    XrayTestResult consolidatedResult = new XrayTestResult(ordinal.permutations.getFirst().result.testKey(),
+                            calculateOverallStatus(examplesResults, xrayStatuses), examplesResults,
+                            timed ? earliestStart(ordinal.permutations).map(ResultAggregator::toXrayDate).orElse(null) : null,
+                            timed ? latestFinish(ordinal.permutations).map(ResultAggregator::toXrayDate).orElse(null) : null,
+                            null);
+                    results.add(consolidatedResult);
+                }
+                return results;
+           }
+
+        }
+        /**
+         * @param reruns the index in permutations of each positioned example, to find the earlier attempt of a rerun
+         */
+        private record TestOrdinal(int ordinal, String xrayTestCase, List<TestPermutation> permutations,
+                                   Map<RerunKey, Integer> reruns) { }
+
+        /**
+         * @param attempts how many results were added for the example; only the one the rerun policy chose is kept
+         */
+        private record TestPermutation(URI source, int permutationNumber, TestItem result, int attempts) { }
+
+        /**
+         * What makes a result a rerun of an earlier one within the same rule and scenario of a feature file.
+         */
+        private record RerunKey(int permutationNumber, String testKey, Set<String> environments) { }
+
+        /**
+         * A permutation and the run it was read from; runs are numbered in the order their results were added.
+         */
+        private record RankedPermutation(int rank, TestPermutation permutation) { }
+
+        // There are only a handful of environment combinations, so their sort keys are worth caching
+        private final Map<Set<String>, String> environmentKeys = new HashMap<>();
+        /**
+         * The order permutations are spilled and merged in: test plan, environments, source, test and permutation.
+         */
+        private final Comparator<TestPermutation> mergeOrder = Comparator
+                .comparing((TestPermutation p) -> p.result.testPlanKey(), Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(p -> environmentKeys.computeIfAbsent(p.result.environments(),
+                        (k) -> String.join(",", new TreeSet<>(k))))
+                .thenComparing(p -> p.source.getPath())
+                .thenComparing(p -> p.result.testKey(), Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(p -> p.permutationNumber)
+                // Keeps the attempts of an example next to each other when tests share a key within a source
+                .thenComparing(p -> p.source.toString());
+        private final Map<String, List<TestGroup>> source2TestGroups = new HashMap<>();
+        private final List<SpilledRun> spilledRuns = new ArrayList<>();
+        // Kept when results are spilled, so the grouping strategy sees every combination
+        private final Set<Set<String>> environmentCombinations = new HashSet<>();
+        // The executions last built from the results; only rebuilt once results were added since
+        private List<XrayTestExecution> snapshot = List.of();
+        // Executions built ahead of info2Results, e.g. in parallel with other suites
+        private List<XrayTestExecution> rebuilt = null;
+        private boolean dirty = false;
+
+
+        void addTestResult(URI source, TestItem result, Position position, int attempts) {
+            int groupNumber = position.ruleIndex();
+            int ordinal = position.ordinal();
+            int exampleNumber = position.testIndex();
+            List<TestGroup> testGroups = source2TestGroups.computeIfAbsent(source.getPath(), (k) -> new ArrayList<>());
+            TestGroup group = testGroups.stream()
+                    .filter(g -> g.groupNumber == groupNumber)
+                    .findFirst()
+                    .orElseGet(() -> {
+                        var g = new TestGroup(source.getPath(), groupNumber, new HashMap<>());
+                        testGroups.add(g);
+                        return g;
+                    });
+            TestOrdinal testOrdinal = group.ordinals.computeIfAbsent(ordinal,
+                    (k) -> new TestOrdinal(ordinal, result.testKey(), new ArrayList<>(), new HashMap<>()));
+            List<TestPermutation> permutations = testOrdinal.permutations();
+            TestPermutation permutation = new TestPermutation(source, exampleNumber, result, attempts);
+            if (position.equals(DEFAULT_POSITION)) {
+                // Without a position there is no telling a rerun from another example
+                permutations.add(permutation);
+            } else {
+                Integer earlier = testOrdinal.reruns().putIfAbsent(
+                        new RerunKey(exampleNumber, result.testKey(), result.environments()), permutations.size());
+                if (earlier == null) {
+                    permutations.add(permutation);
+                } else {
+                    permutations.set(earlier, rerun(permutations.get(earlier), permutation));
+                }
+            }
+            environmentCombinations.add(result.environments());
+            rebuilt = null;
+            dirty = true;
+        }
+        /**
+         * Creates XrayTestExecutionResult objects based on any added test results in the past.
+         * <p>
+         * The results held in memory and any runs spilled to disk are merged in order of test plan, environments,
+         * source, test and permutation, so only the results of one test plan are needed at a time regardless of
+         * how many results were moved out of memory. Within a test plan the environment grouping strategy
+         * decides which executions the results of each environment combination go to.
+         * <p>
+         * The executions are cached until more results are added, so calling this again is cheap.
+         * @return an immutable list with an execution per test plan, execution environments and source
+         */
+        List<XrayTestExecution> info2Results() {
+            if (dirty) {
+                List<XrayTestExecution> executions = rebuilt != null ? rebuilt : buildExecutions();
+                updateConsolidatedTests(snapshot, executions);
+                snapshot = executions;
+                rebuilt = null;
+                dirty = false;
+            }
+            return snapshot;
+        }
+
+        boolean isDirty() {
+            return dirty;
+        }
+
+        /**
+         * Builds the executions without publishing them to the consolidated tests, which the next call to
+         * {@link #info2Results()} does. Only touches the state of this suite, so suites can be rebuilt in parallel.
+         */
+        void rebuild() {
+            rebuilt = buildExecutions();
+        }
+
+        private List<XrayTestExecution> buildExecutions() {
+            // The permutations contain all the information about that is needed to put them in a hierarchy.
+            // Consolidate across different test groups and create an execution:
+            // per Test Plan
+            // per environment combination, or the executions the grouping strategy puts the combination in
+            Map<Set<String>, Set<Set<String>>> executionEnvironments =
+                    environmentGrouping.group(Set.copyOf(environmentCombinations));
+            List<XrayTestExecution> results = new ArrayList<>();
+            PeekingIterator<TestPermutation> permutations = Iterators.peekingIterator(sortedPermutations());
+            while (permutations.hasNext()) {
+                String testPlanKey = permutations.peek().result.testPlanKey();
+
+                // Permutations could conceivably have come from multiple files and have multiple test plans/test cases
+                // specified in the rows.
+                // In order to create "examples" in the same test case, group by source file and test case.
+                // The merge order puts all the examples of a test case in a source next to each other.
+                Map<Set<String>, Execution> executions = new LinkedHashMap<>();
+                while (permutations.hasNext() && Objects.equals(testPlanKey, permutations.peek().result.testPlanKey())) {
+                    TestPermutation head = permutations.peek();
+                    List<TestPermutation> examples = new ArrayList<>();
+                    while (permutations.hasNext() && isSameTest(head, permutations.peek())) {
+                        examples.add(permutations.next());
+                    }
+                    TestRun test = toTestRun(examples);
+                    Set<String> combination = head.result.environments();
+                    for (Set<String> environments : executionEnvironments.getOrDefault(combination, Set.of(combination))) {
+                        executions.computeIfAbsent(environments, (k) -> new Execution(head.result.testExecutionKey()))
+                                .testsBySource.computeIfAbsent(head.source.getPath(), (k) -> new ExecutionTests())
+                                .add(test);
+                    }
+                }
+
+                // Create executions from our data which should now be completely structured
+                executions.forEach((environments, execution) -> {
+                    String sources = String.join(String.format("%n"), execution.testsBySource.keySet());
+                    for (ExecutionTests executionTests : execution.testsBySource.values()) {
+                        results.add(
+                                new XrayTestExecution(execution.testExecutionKey,
+                                new Info(
+                                String.format("Automated tests from sources:%n%s", sources),
+                                description,
+                                testPlanKey,
+                                environments,
+                                executionTests.start.map(ResultAggregator::toXrayDate).orElse(null),
+                                executionTests.finish.map(ResultAggregator::toXrayDate).orElse(null)),
+                                executionTests.tests.values().stream()
+                                        .map(this::toXrayTestResult)
+                                        .collect(Collectors.collectingAndThen(
+                                                Collectors.toCollection(LinkedHashSet::new), Collections::unmodifiableSet))));
+                    }
+                });
+            }
+            return List.copyOf(results);
+        }
+
+        /**
+         * The tests of an execution by source, and the execution they are reported to if one was tagged.
+         */
+        private record Execution(String testExecutionKey, Map<String, ExecutionTests> testsBySource) {
+            Execution(String testExecutionKey) {
+                this(testExecutionKey, new TreeMap<>());
+            }
+        }
+
+        /**
+         * The tests of a single execution and the time window they ran in.
+         */
+        private final class ExecutionTests {
+            private final Map<String, TestRun> tests = new LinkedHashMap<>();
+            private Optional<Instant> start = Optional.empty();
+            private Optional<Instant> finish = Optional.empty();
+
+            void add(TestRun test) {
+                // Combinations that share an execution can each contain the same test
+                tests.merge(test.testKey(), test, this::merge);
+                start = earliest(start, test.start());
+                finish = latest(finish, test.finish());
+            }
+
+            private TestRun merge(TestRun existing, TestRun other) {
+                StatusRuns examples = StatusRuns.concat(existing.examples(), other.examples());
+                String comment = existing.comment() == null || existing.comment().equals(other.comment())
+                        ? other.comment()
+                        : other.comment() == null
+                        ? existing.comment()
+                        : failureCommentRenderer.intern(existing.comment() + String.format("%n%n") + other.comment());
+                return new TestRun(existing.testKey(), examples, earliest(existing.start(), other.start()),
+                        latest(existing.finish(), other.finish()), existing.timed() && other.timed(), comment,
+                        distinct(Stream.concat(existing.evidence().stream(), other.evidence().stream())));
+            }
+        }
+
+        /**
+         * A test as it is reported in an execution: the statuses of its examples, their failures, evidence and
+         * when they ran.
+         *
+         * @param timed whether start and finish are the test's own timing, rather than that of the suites it ran in
+         */
+        private record TestRun(String testKey, StatusRuns examples, Optional<Instant> start, Optional<Instant> finish,
+                               boolean timed, String comment, List<Path> evidence) { }
+
+        private static List<Path> distinct(Stream<Path> evidence) {
+            return evidence.distinct().toList();
+        }
+
+        private TestRun toTestRun(List<TestPermutation> examples) {
+            String comment = Stream.of(failureComment(examples), attemptsComment(examples))
+                    .filter(Objects::nonNull)
+                    .reduce((failures, attempts) -> failures + String.format("%n%n") + attempts)
+                    .orElse(null);
+            return new TestRun(examples.getFirst().result.testKey(),
+                    StatusRuns.of(() -> examples.stream().map(p -> p.result.status()).iterator()),
+                    earliestStart(examples),
+                    latestFinish(examples),
+                    isTimedPerTest(examples),
+                    comment,
+                    distinct(examples.stream().flatMap(p -> p.result.evidence().stream())));
+        }
+
+        private XrayTestResult toXrayTestResult(TestRun test) {
+            StatusRuns examples = test.examples();
+            String comment = test.comment();
+            if (exampleLimit.isPresent() && examples.size() > exampleLimit.get()) {
+                // Only passing examples after the limit and the last other status are left out, so every
+                // listed example keeps its position
+                String passed = StepStatus.PASSED.name();
+                examples = test.examples().limit(passed, exampleLimit.get());
+                String summary = String.format("%d of %d examples passed; the last %d passing examples are not listed",
+                        test.examples().count(passed), test.examples().size(), test.examples().size() - examples.size());
+                comment = comment == null ? summary : comment + String.format("%n%n") + summary;
+            }
+            // A suite's window only dates the execution; sent with the test it would look like the test's own timing
+            return new XrayTestResult(test.testKey(),
+                    calculateOverallStatus(List.copyOf(test.examples().distinctStatuses()), xrayStatuses), examples,
+                    test.start().filter(s -> test.timed()).map(ResultAggregator::toXrayDate).orElse(null),
+                    test.finish().filter(f -> test.timed()).map(ResultAggregator::toXrayDate).orElse(null),
+                    comment,
+                    test.evidence().stream().map(Evidence::of).toList());
+        }
+
+        private static Optional<Instant> earliest(Optional<Instant> a, Optional<Instant> b) {
+            return Stream.of(a, b).flatMap(Optional::stream).min(Comparator.naturalOrder());
+        }
+
+        private static Optional<Instant> latest(Optional<Instant> a, Optional<Instant> b) {
+            return Stream.of(a, b).flatMap(Optional::stream).max(Comparator.naturalOrder());
+        }
+
+        private static boolean isSameTest(TestPermutation a, TestPermutation b) {
+            return isSameExecutionGroup(a, b)
+                    && a.source.getPath().equals(b.source.getPath())
+                    && Objects.equals(a.result.testKey(), b.result.testKey());
+        }
+
+        private static boolean isSameExecutionGroup(TestPermutation a, TestPermutation b) {
+            return Objects.equals(a.result.testPlanKey(), b.result.testPlanKey())
+                    && a.result.environments().equals(b.result.environments());
+        }
+
+        /**
+         * @return every permutation, in memory and spilled, in the order executions are built in
+         */
+        private Iterator<TestPermutation> sortedPermutations() {
+            List<TestPermutation> inMemory = new ArrayList<>(permutationsInMemory().toList());
+            inMemory.sort(mergeOrder);
+            if (spilledRuns.isEmpty()) {
+                // Reruns were already resolved as they were added
+                return inMemory.iterator();
+            }
+            // An example can have attempts in several runs. Equal permutations are merged in the order their runs
+            // were written, oldest first, so the rerun policy sees the attempts in the order they ran
+            List<Iterator<RankedPermutation>> runs = new ArrayList<>();
+            for (SpilledRun run : spilledRuns) {
+                int rank = runs.size();
+                runs.add(Iterators.transform(run.iterator(), r -> new RankedPermutation(rank,
+                        new TestPermutation(r.source(), r.permutationNumber(), r.item(), r.attempts()))));
+            }
+            int newest = runs.size();
+            runs.add(Iterators.transform(inMemory.iterator(), p -> new RankedPermutation(newest, p)));
+            Iterator<RankedPermutation> merged = Iterators.mergeSorted(runs, Comparator
+                    .comparing(RankedPermutation::permutation, mergeOrder)
+                    .thenComparingInt(RankedPermutation::rank));
+            return resolveReruns(Iterators.transform(merged, RankedPermutation::permutation));
+        }
+
+        /**
+         * Replaces the attempts of each example, which the merge order puts next to each other, by the one the
+         * rerun policy keeps.
+         */
+        private Iterator<TestPermutation> resolveReruns(Iterator<TestPermutation> sorted) {
+            PeekingIterator<TestPermutation> permutations = Iterators.peekingIterator(sorted);
+            return new AbstractIterator<>() {
+                @Override
+                protected TestPermutation computeNext() {
+                    if (!permutations.hasNext()) {
+                        return endOfData();
+                    }
+                    TestPermutation kept = permutations.next();
+                    while (permutations.hasNext() && isRerun(kept, permutations.peek())) {
+                        kept = rerun(kept, permutations.next());
+                    }
+                    return kept;
+                }
+            };
+        }
+
+        private static boolean isRerun(TestPermutation earlier, TestPermutation next) {
+            return isSameTest(earlier, next)
+                    && earlier.permutationNumber == next.permutationNumber
+                    && earlier.source.equals(next.source)
+                    && !getPosition(earlier.source).equals(DEFAULT_POSITION);
+        }
+
+        private TestPermutation rerun(TestPermutation earlier, TestPermutation next) {
+            return new TestPermutation(earlier.source, earlier.permutationNumber,
+                    rerunPolicy.choose(earlier.result, next.result), earlier.attempts + next.attempts);
+        }
+
+        /**
+         * Moves every result held in memory to a sorted run on disk.
+         */
+        void spill() {
+            List<TestPermutation> inMemory = new ArrayList<>(permutationsInMemory().toList());
+            if (inMemory.isEmpty()) {
+                return;
+            }
+            inMemory.sort(mergeOrder);
+            spilledRuns.add(SpilledRun.write(tempDirectory, inMemory.stream()
+                    .map(p -> new SpilledRun.Record(p.source, p.permutationNumber, p.result, p.attempts))
+                    .toList()));
+            source2TestGroups.clear();
+        }
+
+        /**
+         * Deletes any results that were spilled to disk.
+         */
+        void discard() {
+            spilledRuns.forEach(SpilledRun::delete);
+            spilledRuns.clear();
+            source2TestGroups.clear();
+            environmentCombinations.clear();
+            updateConsolidatedTests(snapshot, List.of());
+            snapshot = List.of();
+            rebuilt = null;
+            dirty = false;
+        }
+
+        /**
+         * @return every permutation, in memory and spilled, with reruns resolved
+         */
+        Stream<TestPermutation> permutations() {
+            return Streams.stream(sortedPermutations());
+        }
+
+        private Stream<TestPermutation> permutationsInMemory() {
+            return source2TestGroups.values().stream()
+                    .flatMap(List::stream)
+                    .flatMap(g -> g.ordinals.values().stream())
+                    .flatMap(o -> o.permutations.stream());
+        }
+
+        /**
+         * Combines the distinct failures of the permutations. When a test has several examples each failure
+         * is labelled with the example it came from.
+         */
+        private String failureComment(List<TestPermutation> permutations) {
+            Map<String, List<Integer>> examplesByComment = new LinkedHashMap<>();
+            for (int i = 0; i < permutations.size(); i++) {
+                String comment = permutations.get(i).result.failureComment();
+                if (comment != null) {
+                    examplesByComment.computeIfAbsent(comment, (k) -> new ArrayList<>()).add(i + 1);
+                }
+            }
+            if (examplesByComment.isEmpty()) {
+                return null;
+            }
+            if (permutations.size() == 1) {
+                return examplesByComment.keySet().iterator().next();
+            }
+            return failureCommentRenderer.intern(examplesByComment.entrySet().stream()
+                    .map(e -> String.format("Examples %s:%n%s", e.getValue(), e.getKey()))
+                    .collect(Collectors.joining(String.format("%n%n"))));
+        }
+
+        /**
+         * Lists the examples that took more than one attempt, if attempts are reported.
+         */
+        private String attemptsComment(List<TestPermutation> permutations) {
+            if (!reportAttempts) {
+                return null;
+            }
+            List<String> reruns = new ArrayList<>();
+            for (int i = 0; i < permutations.size(); i++) {
+                TestPermutation permutation = permutations.get(i);
+                if (permutation.attempts > 1) {
+                    String attempts = String.format("%s after %d attempts", permutation.result.status(), permutation.attempts);
+                    reruns.add(permutations.size() == 1 ? attempts : String.format("Example %d: %s", i + 1, attempts));
+                }
+            }
+            return reruns.isEmpty() ? null : String.join(String.format("%n"), reruns);
+        }
+
+        private static boolean isTimedPerTest(List<TestPermutation> permutations) {
+            return permutations.stream().noneMatch(p -> p.result.suiteTimed());
+        }
+
+        private static Optional<Instant> earliestStart(List<TestPermutation> permutations) {
+            return permutations.stream()
+                    .map(p -> p.result.start())
+                    .filter(Objects::nonNull)
+                    .min(Comparator.naturalOrder());
+        }
+
+        private static Optional<Instant> latestFinish(List<TestPermutation> permutations) {
+            return permutations.stream()
+                    .map(p -> p.result.finish())
+                    .filter(Objects::nonNull)
+                    .max(Comparator.naturalOrder());
+        }
+
+    }
+
+    /**
+     * Formats a timestamp the way the XRAY v2 import expects, e.g. 2014-08-30T11:47:35+01:00
+     */
+    private static String toXrayDate(Instant instant) {
+        return XRAY_DATE_FORMAT.format(instant.atZone(ZoneId.systemDefault()));
+    }
+
+    private static List<XrayTestResult.Iteration.XrayStep> iterationStepsFromPermutation(HierarchicalTestSuite.TestPermutation p) {
+        List<XrayTestResult.Iteration.XrayStep> steps = new ArrayList<>();
+        for (String step : p.result.stepDescription()) {
+            // TODO: We need to track the correct status by step rather than
+            // just assign the overall status to it.
+            // This is challenging to do unless we know what the custom statuses are.
+            steps.add(new XrayTestResult.Iteration.XrayStep(p.result.status(), step));
+        }
+        return steps;
+    }
+    /* Look at all the statuses we've gotten. Find the most significant status and use that to represent
+       the overall status of the test.
+     */
+
+    private static String calculateOverallStatus(List<String> statuses, List<String> xrayStatuses) {
+        int index = statuses.stream()
+                .mapToInt(xrayStatuses::indexOf)
+                .sorted()
+                .findFirst()
+                .orElseThrow();
+        return xrayStatuses.get(index);
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.pdsl.xray.models.XrayTestResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * A local record of the last result published to XRAY for each test.
+ * <p>
+ * Entries are keyed by test plan, environment set and test key and hold the last published status, a
+ * hash of the status and examples and when it was published. The history is stored as a tab separated
+ * file with one line per test so that it stays compact for very large suites.
+ * <p>
+ * This allows publishing only the tests whose result changed since the last run (or whose last publish
+ * is older than a time to live) instead of uploading every result again.
+ */
+final class ResultHistory {
+
+    private static final char SEPARATOR = '\t';
+
+    private record Entry(String status, long contentHash, long lastPublishedMillis) {}
+
+    private final Path file;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    ResultHistory(Path file, Duration timeToLive, Clock clock) {
+        this.file = file;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * @return true if the result differs from the last one published, was never published or was published
+     * longer ago than the time to live
+     */
+    synchronized boolean hasChanged(String testPlanKey, Set<String> environments, XrayTestResult result) {
+        Entry entry = entries.get(key(testPlanKey, environments, result.testKey()));
+        return entry == null
+                || entry.contentHash != contentHash(result)
+                || clock.millis() - entry.lastPublishedMillis > timeToLive.toMillis();
+    }
+
+    /**
+     * Remembers the results as the latest ones published. Call {@link #save()} to persist them.
+     */
+    synchronized void recordPublished(String testPlanKey, Set<String> environments, Collection<XrayTestResult> results) {
+        long now = clock.millis();
+        for (XrayTestResult result : results) {
+            entries.put(key(testPlanKey, environments, result.testKey()),
+                    new Entry(result.status(), contentHash(result), now));
+        }
+    }
+
+    /**
+     * Writes the history to disk. The file is replaced atomically so a crash never leaves a partial history.
+     */
+    synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    writer.append(e.getKey()).append(SEPARATOR)
+                            .append(e.getValue().status).append(SEPARATOR)
+                            .append(Long.toHexString(e.getValue().contentHash)).append(SEPARATOR)
+                            .append(Long.toString(e.getValue().lastPublishedMillis));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save the XRAY result history to %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                // plan, environments, test key, status, hash, time
+                String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+                if (fields.length != 6) {
+                    continue;
+                }
+                entries.put(String.join(String.valueOf(SEPARATOR), fields[0], fields[1], fields[2]),
+                        new Entry(fields[3], Long.parseUnsignedLong(fields[4], 16), Long.parseLong(fields[5])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Could not read the XRAY result history from %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    private static String key(String testPlanKey, Set<String> environments, String testKey) {
+        return String.join(String.valueOf(SEPARATOR),
+                clean(testPlanKey == null ? "" : testPlanKey),
+                clean(String.join(",", new TreeSet<>(environments))),
+                clean(testKey));
+    }
+
+    private static String clean(String value) {
+        return value.replace(SEPARATOR, ' ').replace('\n', ' ');
+    }
+
+    private static long contentHash(XrayTestResult result) {
+        Hasher hasher = Hashing.farmHashFingerprint64().newHasher()
+                .putString(String.valueOf(result.status()), StandardCharsets.UTF_8);
+        if (result.examples() != null) {
+            for (String example : result.examples()) {
+                hasher.putChar('|').putString(String.valueOf(example), StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+}
@@ -0,0 +1,243 @@
+package com.google.pdsl.xray.core;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The results added to a {@link ResultAggregator}, indexed by test plan, environments, test key, status and
+ * source file, e.g. for a quality gate that fails the build when a test of a plan failed.
+ * <p>
+ * The indexes are updated as each result is added, with reruns resolved by the same {@link RerunPolicy} as the
+ * executions, so queries neither build executions nor read results that were spilled to disk. Only the
+ * indexed fields of each example are kept, not its steps, failure or evidence.
+ * <p>
+ * A query is answered from the smallest index its criteria select, so it takes time in proportion to the
+ * results of that index rather than to every result. Queries may run while results are still being added,
+ * e.g. by asynchronous ingestion; each sees the results added before it started.
+ */
+public final class ResultIndex {
+
+    /**
+     * The indexed fields of the result of one example.
+     *
+     * @param source the feature file of the example, with its position in the query
+     */
+    public record Result(String testPlanKey, Set<String> environments, String testKey, String status, URI source) {
+
+        /**
+         * @return the path of the feature file, without the position of the example
+         */
+        public String sourcePath() {
+            return source.getPath();
+        }
+    }
+
+    /**
+     * Criteria that results must all meet. Criteria that are not set match any result.
+     */
+    public record Query(String testPlanKey, Set<String> environments, String testKey, String status,
+                        String sourcePath) {
+
+        /**
+         * @return a query that matches every result
+         */
+        public static Query all() {
+            return new Query(null, null, null, null, null);
+        }
+
+        public Query withTestPlan(String testPlanKey) {
+            return new Query(testPlanKey, environments, testKey, status, sourcePath);
+        }
+
+        /**
+         * @param environments the exact environments of the results
+         */
+        public Query withEnvironments(Set<String> environments) {
+            return new Query(testPlanKey, Set.copyOf(environments), testKey, status, sourcePath);
+        }
+
+        public Query withTestKey(String testKey) {
+            return new Query(testPlanKey, environments, testKey, status, sourcePath);
+        }
+
+        public Query withStatus(String status) {
+            return new Query(testPlanKey, environments, testKey, status, sourcePath);
+        }
+
+        /**
+         * @param sourcePath the path of the feature file, as in {@link Result#sourcePath()}
+         */
+        public Query withSourcePath(String sourcePath) {
+            return new Query(testPlanKey, environments, testKey, status, sourcePath);
+        }
+
+        boolean matches(Result result) {
+            return (testPlanKey == null || testPlanKey.equals(result.testPlanKey()))
+                    && (environments == null || environments.equals(result.environments()))
+                    && (testKey == null || testKey.equals(result.testKey()))
+                    && (status == null || status.equals(result.status()))
+                    && (sourcePath == null || sourcePath.equals(result.sourcePath()));
+        }
+    }
+
+    /**
+     * What makes a result a rerun of an earlier one; the same as in the aggregator.
+     */
+    private record RerunKey(URI source, String testPlanKey, String testKey, Set<String> environments) {}
+
+    private final RerunPolicy rerunPolicy;
+    // Results by id. A rerun that the policy keeps takes the id of the earlier attempt
+    private final List<Result> results = new ArrayList<>();
+    private final Map<RerunKey, Integer> idsByPosition = new HashMap<>();
+    private final Map<String, Set<Integer>> byTestPlan = new HashMap<>();
+    private final Map<Set<String>, Set<Integer>> byEnvironments = new HashMap<>();
+    private final Map<String, Set<Integer>> byTestKey = new HashMap<>();
+    private final Map<String, Set<Integer>> byStatus = new HashMap<>();
+    private final Map<String, Set<Integer>> bySourcePath = new HashMap<>();
+
+    ResultIndex(RerunPolicy rerunPolicy) {
+        this.rerunPolicy = rerunPolicy;
+    }
+
+    /**
+     * @param positioned whether the source locates the example, so a later result for it is a rerun
+     */
+    synchronized void add(URI source, TestItem item, boolean positioned) {
+        Result result = new Result(item.testPlanKey(), item.environments(), item.testKey(), item.status(), source);
+        if (positioned) {
+            RerunKey key = new RerunKey(source, item.testPlanKey(), item.testKey(), item.environments());
+            Integer earlier = idsByPosition.putIfAbsent(key, results.size());
+            if (earlier != null) {
+                // Only the status of a rerun can differ from the earlier attempt
+                Result kept = results.get(earlier);
+                if (rerunPolicy.keepsRerun(kept.status(), result.status())) {
+                    remove(byStatus, kept.status(), earlier);
+                    byStatus.computeIfAbsent(result.status(), (k) -> new LinkedHashSet<>()).add(earlier);
+                    results.set(earlier, result);
+                }
+                return;
+            }
+        }
+        int id = results.size();
+        results.add(result);
+        byTestPlan.computeIfAbsent(result.testPlanKey(), (k) -> new LinkedHashSet<>()).add(id);
+        byEnvironments.computeIfAbsent(result.environments(), (k) -> new LinkedHashSet<>()).add(id);
+        byTestKey.computeIfAbsent(result.testKey(), (k) -> new LinkedHashSet<>()).add(id);
+        byStatus.computeIfAbsent(result.status(), (k) -> new LinkedHashSet<>()).add(id);
+        bySourcePath.computeIfAbsent(result.sourcePath(), (k) -> new LinkedHashSet<>()).add(id);
+    }
+
+    synchronized void clear() {
+        results.clear();
+        idsByPosition.clear();
+        byTestPlan.clear();
+        byEnvironments.clear();
+        byTestKey.clear();
+        byStatus.clear();
+        bySourcePath.clear();
+    }
+
+    /**
+     * @return the results that match the query, in the order they were first added
+     */
+    public synchronized List<Result> find(Query query) {
+        return ids(query).sorted().mapToObj(results::get).toList();
+    }
+
+    /**
+     * @return the number of results that match the query
+     */
+    public synchronized int count(Query query) {
+        return (int) ids(query).count();
+    }
+
+    /**
+     * @return the number of results that match the query by status, most frequent first
+     */
+    public synchronized Map<String, Integer> countByStatus(Query query) {
+        Map<String, Integer> counts = new HashMap<>();
+        ids(query).forEach(id -> counts.merge(results.get(id).status(), 1, Integer::sum));
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    /**
+     * @return whether any result matches the query
+     */
+    public synchronized boolean contains(Query query) {
+        return ids(query).findAny().isPresent();
+    }
+
+    /**
+     * @return the number of results, counting reruns of an example once
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * @return the ids that match the query; the stream must be consumed while holding the lock
+     */
+    private IntStream ids(Query query) {
+        Optional<Set<Integer>> smallest = Stream.of(
+                        lookUp(byTestPlan, query.testPlanKey()),
+                        lookUp(byEnvironments, query.environments()),
+                        lookUp(byTestKey, query.testKey()),
+                        lookUp(byStatus, query.status()),
+                        lookUp(bySourcePath, query.sourcePath()))
+                .flatMap(Optional::stream)
+                .min(Comparator.comparingInt(Set::size));
+        IntStream candidates = smallest.isPresent()
+                ? smallest.get().stream().mapToInt(Integer::intValue)
+                : IntStream.range(0, results.size());
+        return candidates.filter(id -> query.matches(results.get(id)));
+    }
+
+    /**
+     * @return the ids with the value, or empty if the query does not select by it
+     */
+    private static <K> Optional<Set<Integer>> lookUp(Map<K, Set<Integer>> index, K value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Objects.requireNonNullElse(index.get(value), Set.of()));
+    }
+
+    private static <K> void remove(Map<K, Set<Integer>> index, K value, int id) {
+        Set<Integer> ids = index.get(value);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            index.remove(value);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.google.pdsl.xray.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The execution keys of groups (run, test plan and environment set) in a tab separated file shared between
+ * processes.
+ * <p>
+ * Every line is a group, the execution key (empty while the group is claimed by a process creating the
+ * execution) and when the line was written. Lines are only appended, under an exclusive file lock; the last
+ * line of a group wins. Once the superseded and expired lines outnumber the live ones the file is compacted.
+ */
+final class SharedExecutionKeyFile implements ExecutionKeyResolver {
+
+    private static final char SEPARATOR = '\t';
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+    /**
+     * A file lock is held by the whole JVM, so threads of the same process take turns on this lock first.
+     */
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private record Line(String executionKey, long writtenMillis) {}
+
+    private record Snapshot(Map<String, Line> lines, int lineCount) {}
+
+    private final Path file;
+    private final Duration claimTimeout;
+    private final Duration retention;
+    private final Clock clock;
+
+    SharedExecutionKeyFile(Path file, Duration claimTimeout, Duration retention, Clock clock) {
+        this.file = file.toAbsolutePath();
+        this.claimTimeout = claimTimeout;
+        this.retention = retention;
+        this.clock = clock;
+    }
+
+    @Override
+    public Optional<String> find(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException {
+        String group = group(testPlanKey, testEnvironments, runId);
+        while (true) {
+            Optional<Optional<String>> found = withLock(channel -> {
+                Line line = read(channel).lines().get(group);
+                long now = clock.millis();
+                if (line != null && !line.executionKey().isEmpty()) {
+                    return Optional.of(Optional.of(line.executionKey()));
+                }
+                if (line == null || now - line.writtenMillis() > claimTimeout.toMillis()) {
+                    append(channel, group, "", now);
+                    return Optional.of(Optional.empty());
+                }
+                // Another process is creating the execution
+                return Optional.empty();
+            });
+            if (found.isPresent()) {
+                return found.get();
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the execution of %s".formatted(group), e);
+            }
+        }
+    }
+
+    @Override
+    public void record(String testPlanKey, Set<String> testEnvironments, String runId, String testExecutionKey) throws IOException {
+        String group = group(testPlanKey, testEnvironments, runId);
+        withLock(channel -> {
+            append(channel, group, testExecutionKey, clock.millis());
+            return null;
+        });
+    }
+
+    @Override
+    public void release(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException {
+        String group = group(testPlanKey, testEnvironments, runId);
+        withLock(channel -> {
+            // A claim written at time 0 has always timed out, so the next process creates the execution
+            append(channel, group, "", 0);
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    private <T> T withLock(LockedAction<T> action) throws IOException {
+        ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(file, f -> new ReentrantLock());
+        localLock.lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Released when the channel is closed
+            channel.lock();
+            T result = action.run(channel);
+            compactIfNeeded(channel);
+            return result;
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private Snapshot read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+        channel.read(buffer, 0);
+        Map<String, Line> lines = new LinkedHashMap<>();
+        int lineCount = 0;
+        for (String line : new String(buffer.array(), StandardCharsets.UTF_8).split("\n")) {
+            // group, execution key, time written
+            String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+            if (fields.length != 3) {
+                continue;
+            }
+            lineCount++;
+            try {
+                lines.put(fields[0], new Line(fields[1], Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                // A line cut short by a crash; the group is looked up again
+            }
+        }
+        return new Snapshot(lines, lineCount);
+    }
+
+    private static void append(FileChannel channel, String group, String executionKey, long writtenMillis) throws IOException {
+        channel.write(ByteBuffer.wrap(toLine(group, executionKey, writtenMillis).getBytes(StandardCharsets.UTF_8)),
+                channel.size());
+        channel.force(false);
+    }
+
+    private void compactIfNeeded(FileChannel channel) throws IOException {
+        Snapshot snapshot = read(channel);
+        long expiredBefore = clock.millis() - retention.toMillis();
+        Map<String, Line> live = new LinkedHashMap<>(snapshot.lines());
+        live.values().removeIf(line -> line.writtenMillis() < expiredBefore);
+        if (snapshot.lineCount() <= 2 * live.size() + 100) {
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        live.forEach((group, line) -> content.append(toLine(group, line.executionKey(), line.writtenMillis())));
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)), 0);
+        channel.force(false);
+    }
+
+    private static String toLine(String group, String executionKey, long writtenMillis) {
+        return group + SEPARATOR + executionKey + SEPARATOR + writtenMillis + "\n";
+    }
+
+    private static String group(String testPlanKey, Set<String> testEnvironments, String runId) {
+        return String.join(",", clean(runId), clean(testPlanKey == null ? "" : testPlanKey),
+                clean(String.join("+", new TreeSet<>(testEnvironments))));
+    }
+
+    private static String clean(String value) {
+        return value.replace(SEPARATOR, ' ').replace('\n', ' ').replace(',', ' ').replace('+', ' ');
+    }
+}
@@ -0,0 +1,296 @@
+package com.google.pdsl.xray.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * A sorted run of test results that was moved out of memory into a file.
+ * <p>
+ * The records are written in the order they are given and read back one at a time, so several runs can be
+ * merged without loading them. Strings that repeat, such as test plans, environments, step descriptions and
+ * failures, are written once per file and referred to by index afterwards, which keeps the files small. The
+ * source and evidence of a result are unique to it, so they are written inline: a reader only keeps the
+ * strings of the table, and merging many runs does not hold every source it has read.
+ */
+final class SpilledRun {
+
+    private static final int NULL = -1;
+    private static final int NEW_STRING = -2;
+    private static final int MAGIC = 0x50445852;
+    private static final int VERSION = 4;
+
+    /**
+     * A single permutation of a test as it is kept by the hierarchical test suite.
+     *
+     * @param attempts how many times the permutation ran; item is the attempt the rerun policy kept
+     */
+    record Record(URI source, int permutationNumber, TestItem item, int attempts) {}
+
+    private final Path file;
+    private final int size;
+
+    private SpilledRun(Path file, int size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Writes the records to a new file in the directory.
+     *
+     * @param directory where to create the file
+     * @param records   the records, already in the order they should be read back in
+     * @return the run
+     */
+    static SpilledRun write(Path directory, List<Record> records) {
+        Path file = directory.resolve("spilled-results-%s.bin".formatted(UUID.randomUUID()));
+        file.toFile().deleteOnExit();
+        return writeTo(file, records);
+    }
+
+    /**
+     * Writes the records to the file, replacing it if it exists. Unlike spilled runs the file is kept, e.g.
+     * to publish the results from another process with {@link #open(Path)}.
+     *
+     * @param file    the file to write
+     * @param records the records, in the order they should be read back in
+     * @return the run
+     */
+    static SpilledRun writeTo(Path file, List<Record> records) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            Map<String, Integer> strings = new HashMap<>();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            for (Record record : records) {
+                TestItem item = record.item();
+                writeInlineString(out, record.source().toString());
+                out.writeInt(record.permutationNumber());
+                writeString(out, strings, item.title());
+                writeString(out, strings, item.testKey());
+                writeString(out, strings, item.status());
+                writeString(out, strings, item.testPlanKey());
+                writeString(out, strings, item.testExecutionKey());
+                writeStrings(out, strings, item.environments());
+                writeStrings(out, strings, item.stepDescription());
+                writeString(out, strings, item.failureComment());
+                out.writeInt(item.failedStepIndex() == null ? NULL : item.failedStepIndex());
+                writeInstant(out, item.start());
+                writeInstant(out, item.finish());
+                out.writeBoolean(item.suiteTimed());
+                List<Path> evidence = item.evidence();
+                out.writeInt(evidence.size());
+                for (Path path : evidence) {
+                    writeInlineString(out, path.toAbsolutePath().toString());
+                }
+                out.writeInt(record.attempts());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not move test results out of memory into %s".formatted(file.toAbsolutePath()), e);
+        }
+        return new SpilledRun(file, records.size());
+    }
+
+    /**
+     * @param file a file written by {@link #writeTo(Path, List)}
+     * @return the run in the file
+     * @throws IllegalArgumentException if the file does not contain test results
+     */
+    static SpilledRun open(Path file) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return new SpilledRun(file, readHeader(in, file));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read test results from %s".formatted(file.toAbsolutePath()), e);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return an iterator that streams the records from the file. It must be read to the end to release the file
+     */
+    Iterator<Record> iterator() {
+        DataInputStream in;
+        int count;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            count = readHeader(in, file);
+            if (count == 0) {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read test results back from %s".formatted(file.toAbsolutePath()), e);
+        }
+        return new Iterator<>() {
+            private final List<String> strings = new ArrayList<>();
+            private int read = 0;
+
+            @Override
+            public boolean hasNext() {
+                return read < count;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    URI source = URI.create(readInlineString(in));
+                    int permutationNumber = in.readInt();
+                    String title = readString(in, strings);
+                    String testKey = readString(in, strings);
+                    String status = readString(in, strings);
+                    String testPlanKey = readString(in, strings);
+                    String testExecutionKey = readString(in, strings);
+                    Set<String> environments = Set.copyOf(readStrings(in, strings));
+                    List<String> stepDescription = readStrings(in, strings);
+                    String failureComment = readString(in, strings);
+                    int failedStepIndex = in.readInt();
+                    Instant start = readInstant(in);
+                    Instant finish = readInstant(in);
+                    boolean suiteTimed = in.readBoolean();
+                    int evidenceSize = in.readInt();
+                    List<Path> evidence = new ArrayList<>(evidenceSize);
+                    for (int i = 0; i < evidenceSize; i++) {
+                        evidence.add(Path.of(readInlineString(in)));
+                    }
+                    int attempts = in.readInt();
+                    if (++read == count) {
+                        in.close();
+                    }
+                    return new Record(source, permutationNumber, new TestItem(title, testKey, status,
+                            testPlanKey, testExecutionKey, environments, stepDescription, failureComment,
+                            failedStepIndex == NULL ? null : failedStepIndex, start, finish, suiteTimed,
+                            List.copyOf(evidence)), attempts);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read test results back from %s".formatted(file.toAbsolutePath()), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the number of records in the file
+     */
+    private static int readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IllegalArgumentException("%s does not contain test results exported by this version".formatted(
+                    file.toAbsolutePath()));
+        }
+        return in.readInt();
+    }
+
+    void delete() {
+        @SuppressWarnings("unused") boolean unused = file.toFile().delete();
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(NEW_STRING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int code = in.readInt();
+        if (code == NULL) {
+            return null;
+        }
+        if (code != NEW_STRING) {
+            return strings.get(code);
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    /**
+     * Writes a string that is not added to the table, since it does not repeat.
+     */
+    private static void writeInlineString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readInlineString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> strings, Collection<String> values)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, strings, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in, List<String> strings) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in, strings));
+        }
+        return List.copyOf(values);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+}
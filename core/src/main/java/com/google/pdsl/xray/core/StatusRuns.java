@@ -0,0 +1,178 @@
+package com.google.pdsl.xray.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The statuses of the examples of a test, stored as runs of the same status.
+ * <p>
+ * Large Scenario Outlines mostly consist of long runs of PASSED, so a few runs stand in for thousands of
+ * strings. The list is immutable and serializes like any other list of statuses.
+ */
+final class StatusRuns extends AbstractList<String> {
+
+    private static final StatusRuns EMPTY = new StatusRuns(new String[0], new int[0]);
+
+    private final String[] statuses;
+    // The index after the last example of each run
+    private final int[] ends;
+
+    private StatusRuns(String[] statuses, int[] ends) {
+        this.statuses = statuses;
+        this.ends = ends;
+    }
+
+    static StatusRuns of(Iterable<String> statuses) {
+        Builder builder = new Builder();
+        statuses.forEach(status -> builder.add(status, 1));
+        return builder.build();
+    }
+
+    static StatusRuns concat(StatusRuns first, StatusRuns second) {
+        Builder builder = new Builder();
+        first.forEachRun(builder);
+        second.forEachRun(builder);
+        return builder.build();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int position = Arrays.binarySearch(ends, index + 1);
+        return statuses[position >= 0 ? position : -position - 1];
+    }
+
+    @Override
+    public int size() {
+        return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int run = 0;
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                while (index >= ends[run]) {
+                    run++;
+                }
+                index++;
+                return statuses[run];
+            }
+        };
+    }
+
+    /**
+     * @return each status that occurs, in order of first occurrence
+     */
+    Set<String> distinctStatuses() {
+        return new LinkedHashSet<>(Arrays.asList(statuses));
+    }
+
+    /**
+     * @return the number of examples with the status
+     */
+    int count(String status) {
+        int count = 0;
+        for (int run = 0; run < statuses.length; run++) {
+            if (statuses[run].equals(status)) {
+                count += runLength(run);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops examples with the given status from the end, past a limit. Only a trailing stretch of the given
+     * status is dropped, so every kept example stays at the position it has in the data set, and every example
+     * with another status is kept.
+     *
+     * @param status        the status that may be dropped, e.g. PASSED
+     * @param maxExamples   the number of examples to keep, if the other statuses leave room for it
+     * @return the examples that are kept, a prefix of these examples
+     */
+    StatusRuns limit(String status, int maxExamples) {
+        int kept = Math.min(size(), maxExamples);
+        for (int run = statuses.length - 1; run >= 0; run--) {
+            if (!statuses[run].equals(status)) {
+                kept = Math.max(kept, ends[run]);
+                break;
+            }
+        }
+        Builder builder = new Builder();
+        for (int run = 0; run < statuses.length && kept > 0; run++) {
+            int length = Math.min(kept, runLength(run));
+            builder.add(statuses[run], length);
+            kept -= length;
+        }
+        return builder.build();
+    }
+
+    private int runLength(int run) {
+        return ends[run] - (run == 0 ? 0 : ends[run - 1]);
+    }
+
+    private void forEachRun(Builder builder) {
+        for (int run = 0; run < statuses.length; run++) {
+            builder.add(statuses[run], runLength(run));
+        }
+    }
+
+    private static final class Builder {
+        private final List<String> statuses = new ArrayList<>();
+        private final List<Integer> ends = new ArrayList<>();
+
+        void add(String status, int count) {
+            if (count == 0) {
+                return;
+            }
+            int end = (ends.isEmpty() ? 0 : ends.getLast()) + count;
+            if (!statuses.isEmpty() && statuses.getLast().equals(status)) {
+                ends.set(ends.size() - 1, end);
+            } else {
+                statuses.add(status);
+                ends.add(end);
+            }
+        }
+
+        StatusRuns build() {
+            if (statuses.isEmpty()) {
+                return EMPTY;
+            }
+            return new StatusRuns(statuses.toArray(String[]::new), ends.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.constants.StepStatus;
+import com.google.pdsl.xray.constants.XrayTestTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The steps of a scenario that belong to each step-level xray-test-case annotation.
+ * <p>
+ * A comment such as {@code # @xray-test-case=PROJ-10} above step n (1-based) claims the steps from n up to,
+ * but not including, the next annotated step. A comment on the scenario itself (index 0) claims all steps.
+ * The segments only depend on the step comments and the number of steps, so they are worked out once and
+ * shared by every result of the scenario, including all permutations of a Scenario Outline.
+ */
+final class StepSegments {
+
+    private static final StepSegments NONE = new StepSegments(List.of(), new int[0], new int[0]);
+    private static final int MAX_CACHED = 1024;
+
+    /**
+     * The steps claimed by one test case key.
+     *
+     * @param start   index of the first step
+     * @param end     index after the last step
+     * @param testKey the xray-test-case annotated on the step
+     * @param range   index of the segment among the step annotations ordered by start, or -1 if it covers
+     *                the whole scenario
+     */
+    record Segment(int start, int end, String testKey, int range) {}
+
+    private record Key(Map<Integer, ?> stepComments, int totalSteps) {}
+
+    private static final Map<Key, StepSegments> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, StepSegments> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final List<Segment> segments;
+    private final int[] rangeStarts;
+    private final int[] rangeEnds;
+
+    private StepSegments(List<Segment> segments, int[] rangeStarts, int[] rangeEnds) {
+        this.segments = segments;
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+    }
+
+    /**
+     * @param stepComments the TestCase.STEP_COMMENTS metadata: comments by 1-based step index, may be null
+     * @param totalSteps   the number of steps of the scenario
+     * @return the segments, in the order the annotations appear in the step comments
+     */
+    static StepSegments of(Map<Integer, ?> stepComments, int totalSteps) {
+        if (stepComments == null || stepComments.isEmpty()) {
+            return NONE;
+        }
+        // Steps without comments may be mapped to null, which neither carries an annotation nor can be cached
+        Map<Integer, Object> comments = new HashMap<>();
+        stepComments.forEach((step, stepComment) -> {
+            if (step != null && stepComment != null) {
+                comments.put(step, stepComment);
+            }
+        });
+        if (comments.isEmpty()) {
+            return NONE;
+        }
+        Key key = new Key(comments, totalSteps);
+        synchronized (cache) {
+            StepSegments segments = cache.get(key);
+            if (segments == null) {
+                segments = build(comments, totalSteps);
+                cache.put(new Key(Map.copyOf(comments), totalSteps), segments);
+            }
+            return segments;
+        }
+    }
+
+    private static StepSegments build(Map<Integer, ?> stepComments, int totalSteps) {
+        Map<Integer, Set<String>> keysByStep = new LinkedHashMap<>();
+        TreeSet<Integer> annotatedSteps = new TreeSet<>();
+        for (Map.Entry<Integer, ?> entry : stepComments.entrySet()) {
+            if (entry.getValue() instanceof Collection<?> comments) {
+                for (Object comment : comments) {
+                    if (comment instanceof String text) {
+                        String testKey = testCaseKey(text.trim());
+                        if (testKey != null) {
+                            keysByStep.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(testKey);
+                            if (entry.getKey() > 0) {
+                                annotatedSteps.add(entry.getKey());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (keysByStep.isEmpty()) {
+            return NONE;
+        }
+
+        // Annotated steps claim disjoint ranges, so ordering them by step also orders them by start
+        List<Integer> steps = new ArrayList<>(annotatedSteps);
+        int[] rangeStarts = new int[steps.size()];
+        int[] rangeEnds = new int[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            rangeStarts[i] = Math.min(steps.get(i) - 1, totalSteps);
+            int end = i + 1 < steps.size() ? steps.get(i + 1) - 1 : totalSteps;
+            rangeEnds[i] = Math.max(rangeStarts[i], Math.min(end, totalSteps));
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        keysByStep.forEach((step, testKeys) -> {
+            int range = step > 0 ? steps.indexOf(step) : -1;
+            int start = range < 0 ? 0 : rangeStarts[range];
+            int end = range < 0 ? totalSteps : rangeEnds[range];
+            testKeys.forEach(testKey -> segments.add(new Segment(start, end, testKey, range)));
+        });
+        return new StepSegments(List.copyOf(segments), rangeStarts, rangeEnds);
+    }
+
+    private static String testCaseKey(String comment) {
+        String prefix = XrayTestTag.CASE.getTagValue();
+        return comment.startsWith(prefix) ? comment.substring(prefix.length()) : null;
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * Works out the status of every segment: the segment holding the failing step failed, the ones after it
+     * were blocked and the ones before it passed.
+     *
+     * @param failingStepIndex the index of the failing step, or null if the scenario did not fail
+     * @return the status of each segment, in the same order as {@link #segments()}
+     */
+    List<StepStatus> statuses(Integer failingStepIndex) {
+        if (failingStepIndex == null) {
+            return segments.stream().map(s -> StepStatus.PASSED).toList();
+        }
+        // The last range starting at or before the failing step is the only one that can contain it
+        int position = Arrays.binarySearch(rangeStarts, failingStepIndex);
+        int failingRange = position >= 0 ? lastWithStart(position) : -position - 2;
+        List<StepStatus> statuses = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            statuses.add(segment.range() < 0
+                    ? wholeScenarioStatus(failingStepIndex, segment.start(), segment.end())
+                    : stepStatus(segment.range(), failingRange, failingStepIndex));
+        }
+        return statuses;
+    }
+
+    private int lastWithStart(int position) {
+        while (position + 1 < rangeStarts.length && rangeStarts[position + 1] == rangeStarts[position]) {
+            position++;
+        }
+        return position;
+    }
+
+    private StepStatus stepStatus(int range, int failingRange, int failingStepIndex) {
+        if (range > failingRange) {
+            return StepStatus.BLOCKED;
+        }
+        if (range == failingRange && failingStepIndex < rangeEnds[range]) {
+            return StepStatus.FAILED;
+        }
+        return StepStatus.PASSED;
+    }
+
+    private static StepStatus wholeScenarioStatus(int failingStepIndex, int start, int end) {
+        if (failingStepIndex < start) {
+            return StepStatus.BLOCKED;
+        }
+        return failingStepIndex < end ? StepStatus.FAILED : StepStatus.PASSED;
+    }
+}
@@ -0,0 +1,53 @@
+package com.google.pdsl.xray.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Selects the executions that are published to a tenant: another XRAY project with its own credentials.
+ * <p>
+ * Executions are routed per test plan, since a test plan belongs to a single project.
+ */
+@FunctionalInterface
+public interface TenantRoute {
+
+    /**
+     * @param testPlanKey the test plan of the execution, or null
+     * @param tags        the Gherkin tags of the tests of the test plan that ran in this process
+     * @return whether the execution is published to the tenant of this route
+     */
+    boolean matches(String testPlanKey, Set<String> tags);
+
+    /**
+     * Routes the test plans whose key starts with the prefix, e.g. "PAY-" for the plans of the PAY project.
+     */
+    static TenantRoute planKeyPrefix(String prefix) {
+        Preconditions.checkNotNull(prefix, "prefix must not be null");
+        return (testPlanKey, tags) -> testPlanKey != null && testPlanKey.startsWith(prefix);
+    }
+
+    /**
+     * Routes the test plans with a test that has the tag, e.g. "@team-payments". Tags are not kept in exported
+     * results, so this route only applies to results added in the same process.
+     */
+    static TenantRoute tag(String tag) {
+        Preconditions.checkNotNull(tag, "tag must not be null");
+        return (testPlanKey, tags) -> tags.contains(tag);
+    }
+}
@@ -0,0 +1,80 @@
+package com.google.pdsl.xray.core;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The result of one example of a test case, as it is added to a {@link ResultAggregator}.
+ *
+ * @param testKey          the key of the XRAY test case
+ * @param status           the XRAY status of the example
+ * @param testPlanKey      the test plan the result is reported to, or null
+ * @param testExecutionKey the execution the result is reported to, or null to create one
+ * @param stepDescription  the steps of the example
+ * @param failureComment   the rendered failure, or null if the example did not fail
+ * @param failedStepIndex  the index of the step that failed, or null
+ * @param start            when the example started, or null if unknown
+ * @param finish           when the example finished, or null if unknown
+ * @param suiteTimed       whether start and finish are the window of the suite the example ran in rather than
+ *                         its own timing. They then only date the execution, not the test
+ * @param evidence         files to attach to the result, e.g. screenshots. They are only read when the
+ *                         results are sent
+ */
+public record TestItem(String title, String testKey, String status, String testPlanKey, String testExecutionKey,
+                       Set<String> environments,
+                       List<String> stepDescription,
+                       String failureComment,
+                       Integer failedStepIndex,
+                       Instant start,
+                       Instant finish,
+                       boolean suiteTimed,
+                       List<Path> evidence) {
+
+    public TestItem {
+        evidence = evidence == null ? List.of() : List.copyOf(evidence);
+    }
+
+    public TestItem(String title, String testKey, String status, String testPlanKey, String testExecutionKey,
+                    Set<String> environments, List<String> stepDescription, String failureComment,
+                    Integer failedStepIndex, Instant start, Instant finish, List<Path> evidence) {
+        this(title, testKey, status, testPlanKey, testExecutionKey, environments, stepDescription, failureComment,
+                failedStepIndex, start, finish, false, evidence);
+    }
+
+    public TestItem(String title, String testKey, String status, String testPlanKey, String testExecutionKey,
+                    Set<String> environments, List<String> stepDescription, String failureComment,
+                    Integer failedStepIndex, Instant start, Instant finish) {
+        this(title, testKey, status, testPlanKey, testExecutionKey, environments, stepDescription, failureComment,
+                failedStepIndex, start, finish, false, List.of());
+    }
+
+    public Optional<Integer> getFailedStepIndex() {
+        return Optional.ofNullable(failedStepIndex);
+    }
+    public Optional<String> getFailureComment() {
+        return Optional.ofNullable(failureComment);
+    }
+    public Duration getDuration() {
+        return start == null || finish == null ? Duration.ZERO : Duration.between(start, finish);
+    }
+
+}
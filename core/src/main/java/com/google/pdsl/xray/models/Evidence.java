@@ -0,0 +1,77 @@
+package com.google.pdsl.xray.models;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A file attached to the result of a test, e.g. a screenshot or a log.
+ * <p>
+ * Only the path is kept. When the result is serialized the file is read and base64 encoded straight into
+ * the JSON stream as the data of the evidence, so it is never held in memory whatever its size.
+ *
+ * @param file        the file to attach
+ * @param filename    the name the file is shown with in XRAY
+ * @param contentType the media type of the file, e.g. image/png
+ */
+@JsonSerialize(using = Evidence.Serializer.class)
+public record Evidence(Path file, String filename, String contentType) {
+
+    /**
+     * @return evidence named after the file, with the media type guessed from its extension
+     */
+    public static Evidence of(Path file) {
+        String filename = file.getFileName().toString();
+        String contentType = Optional.ofNullable(URLConnection.guessContentTypeFromName(filename))
+                .orElse(filename.endsWith(".log") ? "text/plain" : "application/octet-stream");
+        return new Evidence(file, filename, contentType);
+    }
+
+    /**
+     * Writes {"data": ..., "filename": ..., "contentType": ...} as the XRAY v2 import expects it.
+     */
+    public static final class Serializer extends StdSerializer<Evidence> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(Evidence.class);
+        }
+
+        @Override
+        public void serialize(Evidence evidence, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName("data");
+            try (InputStream in = Files.newInputStream(evidence.file())) {
+                gen.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, in, -1);
+            }
+            gen.writeStringField("filename", evidence.filename());
+            gen.writeStringField("contentType", evidence.contentType());
+            gen.writeEndObject();
+        }
+    }
+}
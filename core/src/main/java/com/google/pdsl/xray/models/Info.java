@@ -0,0 +1,37 @@
+package com.google.pdsl.xray.models;
+
+import java.util.Set;
+
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The "info" object of an XRAY test execution.
+ *
+ * @param summary the summary of the execution
+ * @param description the description of the execution
+ * @param testPlanKey the test plan the execution belongs to (may be null)
+ * @param testEnvironments the environments the tests ran in
+ * @param startDate when the earliest test in the execution started (may be null)
+ * @param finishDate when the latest test in the execution finished (may be null)
+ */
+public record Info(String summary, String description, String testPlanKey, Set<String> testEnvironments,
+                   String startDate, String finishDate) {
+
+    public Info(String summary, String description, String testPlanKey, Set<String> testEnvironments) {
+        this(summary, description, testPlanKey, testEnvironments, null, null);
+    }
+}
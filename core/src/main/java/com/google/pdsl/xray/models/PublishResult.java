@@ -0,0 +1,50 @@
+package com.google.pdsl.xray.models;
+
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * The outcome of a single attempt to import a test execution into XRAY.
+ * <p>
+ * One of these is produced per execution sent to the v2 REST API. It is intended to be
+ * serialized into the optional run summary file so that publishing can be monitored over time.
+ *
+ * @param testPlanKey the test plan the execution was associated with, if any
+ * @param testEnvironments the environments of the execution
+ * @param testExecutionKey the key of the execution XRAY created or updated, if the response contained one
+ * @param statusCode the HTTP status code of the final response, or 0 if there was none (no response in time,
+ *                   or the import was not attempted)
+ * @param latencyMillis the wall-clock time spent sending the request and reading the response
+ * @param payloadBytes the size of the serialized results sent to XRAY
+ * @param attempts the number of requests made for this execution; 0 if the publish deadline had passed or the
+ *                 circuit breaker was open
+ */
+public record PublishResult(String testPlanKey,
+                            Set<String> testEnvironments,
+                            String testExecutionKey,
+                            int statusCode,
+                            long latencyMillis,
+                            long payloadBytes,
+                            int attempts) {
+
+    /**
+     * @return true if XRAY accepted the execution
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+}
@@ -15,6 +15,8 @@ See the License for the specific language governing permissions and
 limitations under the License.
 */
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -27,8 +29,31 @@ import java.util.Map;
  * <p>
  * This object is intended to be serialized and follows the JSON schema used for the v2
  * REST API.
+ *
+ * @param testKey the key of the test case in XRAY
+ * @param status the overall status of the test, e.g. PASSED or FAILED
+ * @param examples the status of each permutation of the test
+ * @param start when the first permutation started, in the date format XRAY expects (may be null)
+ * @param finish when the last permutation finished, in the date format XRAY expects (may be null)
+ * @param comment a description of why the test failed (may be null)
+ * @param evidence files attached to the result, e.g. screenshots. Not serialized when empty
  */
-public record XrayTestResult(String testKey, String status, Collection<String> examples) {
+public record XrayTestResult(String testKey, String status, Collection<String> examples, String start, String finish,
+                             String comment, @JsonInclude(JsonInclude.Include.NON_EMPTY) List<Evidence> evidence) {
+
+    public XrayTestResult {
+        evidence = evidence == null ? List.of() : List.copyOf(evidence);
+    }
+
+    public XrayTestResult(String testKey, String status, Collection<String> examples, String start, String finish,
+                          String comment) {
+        this(testKey, status, examples, start, finish, comment, List.of());
+    }
+
+    public XrayTestResult(String testKey, String status, Collection<String> examples) {
+        this(testKey, status, examples, null, null, null);
+    }
+
     /**
      * Represents a single iteration for a "Manual" style test case in XRAY.
      * <p>
@@ -0,0 +1,86 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.models.Evidence;
+import com.google.pdsl.xray.models.Info;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvidenceLimitsTest {
+
+    private static final Info INFO = new Info("Automated tests from sources:\n/a.feature", "description", "PLAN-1", Set.of("TST"));
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("xray-evidence");
+    }
+
+    private Evidence evidence(String name, int size) throws IOException {
+        return Evidence.of(Files.write(directory.resolve(name), new byte[size]));
+    }
+
+    private static XrayTestResult failed(String testKey, List<Evidence> evidence) {
+        return new XrayTestResult(testKey, "FAILED", List.of("FAILED"), null, null, "boom", evidence);
+    }
+
+    @Test
+    void apply_withinLimits_keepsTheExecution() throws IOException {
+        XrayTestExecution execution = new XrayTestExecution(null, INFO,
+                Set.of(failed("TEST-1", List.of(evidence("screen.png", 10)))));
+
+        assertSame(execution, new EvidenceLimits(100, 100).apply(execution));
+    }
+
+    @Test
+    void apply_overTheLimits_listsTheFilesLeftOutInTheComment() throws IOException {
+        Evidence small = evidence("small.log", 40);
+        Evidence large = evidence("large.png", 80);
+        Evidence missing = Evidence.of(directory.resolve("missing.png"));
+        XrayTestExecution execution = new XrayTestExecution(null, INFO, new LinkedHashSet<>(List.of(
+                failed("TEST-1", List.of(small, large, missing)),
+                failed("TEST-2", List.of(evidence("other.log", 40))))));
+
+        List<XrayTestResult> tests = List.copyOf(new EvidenceLimits(60, 70).apply(execution).tests());
+
+        assertEquals(List.of(small), tests.get(0).evidence());
+        assertTrue(tests.get(0).comment().startsWith("boom"));
+        assertTrue(tests.get(0).comment().contains("large.png (80 bytes) was not attached: over the limit of 60 bytes per test"));
+        assertTrue(tests.get(0).comment().contains("missing.png was not found"));
+        assertEquals(List.of(), tests.get(1).evidence());
+        assertTrue(tests.get(1).comment().contains("other.log (40 bytes) was not attached: over the limit of 70 bytes per execution"));
+    }
+
+    @Test
+    void serialize_encodesTheFileIntoTheJson() throws IOException {
+        byte[] content = "line 1\nline 2\n".getBytes();
+        Evidence log = Evidence.of(Files.write(directory.resolve("run.log"), content));
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(failed("TEST-1", List.of(log))));
+        JsonNode withoutEvidence = objectMapper.readTree(objectMapper.writeValueAsString(failed("TEST-1", List.of())));
+
+        JsonNode evidence = json.get("evidence").get(0);
+        assertEquals(Base64.getEncoder().encodeToString(content), evidence.get("data").asText());
+        assertEquals("run.log", evidence.get("filename").asText());
+        assertEquals("text/plain", evidence.get("contentType").asText());
+        assertFalse(withoutEvidence.has("evidence"));
+    }
+}
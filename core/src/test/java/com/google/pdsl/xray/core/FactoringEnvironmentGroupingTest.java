@@ -0,0 +1,46 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FactoringEnvironmentGroupingTest {
+
+    private final EnvironmentGroupingStrategy grouping =
+            EnvironmentGroupingStrategy.factoring(env -> Set.of("Android", "iOS").contains(env));
+
+    @Test
+    void group_withCoupledEnvironments_factorsOnlyTheStages() {
+        Map<Set<String>, Set<Set<String>>> executions = grouping.group(Set.of(
+                Set.of("DEV", "TST", "iOS"), Set.of("DEV", "iOS"), Set.of("TST", "iOS"), Set.of("DEV", "Android")));
+
+        assertEquals(Map.of(
+                Set.of("DEV", "TST", "iOS"), Set.of(Set.of("DEV", "iOS"), Set.of("TST", "iOS")),
+                Set.of("DEV", "iOS"), Set.of(Set.of("DEV", "iOS")),
+                Set.of("TST", "iOS"), Set.of(Set.of("TST", "iOS")),
+                Set.of("DEV", "Android"), Set.of(Set.of("DEV", "Android"))), executions);
+    }
+
+    @Test
+    void group_whenFactoringNeedsMoreExecutions_keepsTheCombinations() {
+        Map<Set<String>, Set<Set<String>>> executions = grouping.group(Set.of(Set.of("DEV", "TST"), Set.of("TST", "PRD")));
+
+        assertEquals(Map.of(
+                Set.of("DEV", "TST"), Set.of(Set.of("DEV", "TST")),
+                Set.of("TST", "PRD"), Set.of(Set.of("TST", "PRD"))), executions);
+    }
+
+    @Test
+    void group_withStagesAlwaysUsedTogether_keepsThemInOneExecution() {
+        Map<Set<String>, Set<Set<String>>> executions = grouping.group(Set.of(Set.of("DEV", "TST"), Set.of("DEV", "TST", "PRD"),
+                Set.of("PRD")));
+
+        assertEquals(Map.of(
+                Set.of("DEV", "TST"), Set.of(Set.of("DEV", "TST")),
+                Set.of("DEV", "TST", "PRD"), Set.of(Set.of("DEV", "TST"), Set.of("PRD")),
+                Set.of("PRD"), Set.of(Set.of("PRD"))), executions);
+    }
+}
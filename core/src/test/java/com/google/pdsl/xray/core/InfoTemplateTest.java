@@ -0,0 +1,54 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.pdsl.xray.models.Info;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InfoTemplateTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final XrayTestExecution execution = new XrayTestExecution(null,
+            new Info("Run \"nightly\"", null, "PLAN-7", Set.of("TST", "DEV")), Set.of());
+
+    @Test
+    void render_wholeValuePlaceholders_areReplacedByJsonValues() throws Exception {
+        InfoTemplate template = InfoTemplate.compile(
+                "{\"fields\": {\"summary\": \"${summary}\", \"environment\": \"${testEnvironments}\"}}", objectMapper);
+
+        JsonNode fields = objectMapper.readTree(template.render(execution, "Title")).get("fields");
+
+        assertEquals("Run \"nightly\"", fields.get("summary").asText());
+        assertEquals(objectMapper.readTree("[\"DEV\", \"TST\"]"), fields.get("environment"));
+    }
+
+    @Test
+    void render_inlinePlaceholders_areReplacedByEscapedText() throws Exception {
+        InfoTemplate template = InfoTemplate.compile(
+                "{\"fields\": {\"summary\": \"${title}: ${testPlanKey} on ${testEnvironments}\", \"description\": \"${description}\"}}",
+                objectMapper);
+
+        JsonNode fields = objectMapper.readTree(template.render(execution, "Tab\there")).get("fields");
+
+        assertEquals("Tab\there: PLAN-7 on DEV,TST", fields.get("summary").asText());
+        assertEquals("", fields.get("description").asText());
+    }
+
+    @Test
+    void compile_unknownPlaceholder_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> InfoTemplate.compile("{\"fields\": {\"summary\": \"${sumary}\"}}", objectMapper));
+    }
+
+    @Test
+    void compile_invalidJson_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> InfoTemplate.compile("{\"fields\": {\"summary\": ${summary}}", objectMapper));
+    }
+}
@@ -0,0 +1,84 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionQueueTest {
+
+    @Test
+    void awaitIdle_returnsOnceEverySubmittedItemWasIngestedInOrder() throws InterruptedException {
+        List<Integer> ingested = Collections.synchronizedList(new ArrayList<>());
+        IngestionQueue<Integer> queue = new IngestionQueue<>("test", 10, IngestionBackpressure.BLOCK, ingested::add);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 100; i++) {
+                    queue.submit(producer * 1000 + i, 1);
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        queue.awaitIdle();
+
+        assertEquals(400, ingested.size());
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            List<Integer> ofProducer = ingested.stream().filter(i -> i / 1000 == producer).toList();
+            assertEquals(ofProducer.stream().sorted().toList(), ofProducer);
+        }
+    }
+
+    @Test
+    void submit_whenFullWithDrop_dropsTheItem() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> ingested = Collections.synchronizedList(new ArrayList<>());
+        IngestionQueue<String> queue = new IngestionQueue<>("test", 2, IngestionBackpressure.DROP, item -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            ingested.add(item);
+        });
+
+        assertTrue(queue.submit("a", 2));
+        assertFalse(queue.submit("b", 1));
+        release.countDown();
+        queue.awaitIdle();
+
+        assertEquals(List.of("a"), ingested);
+        assertTrue(queue.submit("c", 1));
+        queue.awaitIdle();
+        assertEquals(List.of("a", "c"), ingested);
+    }
+
+    @Test
+    void awaitIdle_afterAFailureToIngest_throwsItOnce() {
+        List<String> ingested = Collections.synchronizedList(new ArrayList<>());
+        IngestionQueue<String> queue = new IngestionQueue<>("test", 10, IngestionBackpressure.BLOCK, item -> {
+            if (item.equals("bad")) {
+                throw new IllegalArgumentException("Only one test plan can be associated with a test case!");
+            }
+            ingested.add(item);
+        });
+        queue.submit("bad", 1);
+        queue.submit("good", 1);
+
+        assertThrows(IllegalArgumentException.class, queue::awaitIdle);
+        queue.awaitIdle();
+        assertEquals(List.of("good"), ingested);
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class IssueKeyValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Set<String>> lookups = new ArrayList<>();
+    private final Set<String> existingKeys = new HashSet<>(Set.of("PROJ-1", "PROJ-2", "PROJ-3"));
+
+    private final IssueKeyResolver resolver = new IssueKeyResolver() {
+        @Override
+        public Set<String> findExisting(Set<String> keys) {
+            lookups.add(keys);
+            Set<String> existing = new HashSet<>(keys);
+            existing.retainAll(existingKeys);
+            return existing;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 2;
+        }
+    };
+
+    @Test
+    void findInvalid_looksUpWellFormedKeysInBatches() {
+        IssueKeyValidator validator = validator(Instant.EPOCH);
+
+        Set<String> invalid = validator.findInvalid(List.of("PROJ-1", "PROJ-2", "PROJ-3", "PROJ-4", "proj-5", "PROJ 6"));
+
+        assertEquals(Set.of("PROJ-4", "proj-5", "PROJ 6"), invalid);
+        assertEquals(List.of(Set.of("PROJ-1", "PROJ-2"), Set.of("PROJ-3", "PROJ-4")), lookups);
+    }
+
+    @Test
+    void findInvalid_existingKeysAreCachedAcrossRunsUntilTheyExpire() {
+        validator(Instant.EPOCH).findInvalid(List.of("PROJ-1", "PROJ-4"));
+        lookups.clear();
+
+        assertEquals(Set.of("PROJ-4"), validator(Instant.EPOCH.plus(Duration.ofHours(1))).findInvalid(List.of("PROJ-1", "PROJ-4")));
+        assertEquals(List.of(Set.of("PROJ-4")), lookups);
+
+        existingKeys.remove("PROJ-1");
+        assertEquals(Set.of("PROJ-1", "PROJ-4"), validator(Instant.EPOCH.plus(Duration.ofDays(2))).findInvalid(List.of("PROJ-1", "PROJ-4")));
+    }
+
+    @Test
+    void findInvalid_resolverFails_treatsKeysAsValid() {
+        IssueKeyValidator validator = new IssueKeyValidator(keys -> {
+            throw new IOException("Jira is down");
+        }, tempDir.resolve("keys.cache"), Duration.ofDays(1), Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+
+        assertEquals(Set.of("bad"), validator.findInvalid(List.of("PROJ-1", "bad")));
+        assertEquals(0, validator.size());
+    }
+
+    @Test
+    void findInvalid_resolverStallsPastTheDeadline_treatsTheRemainingKeysAsValid() {
+        IssueKeyValidator validator = new IssueKeyValidator(keys -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return keys;
+        }, tempDir.resolve("keys.cache"), Duration.ofDays(1), Clock.systemUTC());
+        PublishCircuitBreaker circuitBreaker = new PublishCircuitBreaker(Clock.systemUTC(),
+                Optional.of(Duration.ofMillis(200)), Integer.MAX_VALUE, Optional.empty());
+
+        Set<String> invalid = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> validator.findInvalid(List.of("PROJ-1", "bad"), circuitBreaker));
+
+        assertEquals(Set.of("bad"), invalid);
+        assertEquals(0, validator.size());
+    }
+
+    private IssueKeyValidator validator(Instant now) {
+        return new IssueKeyValidator(resolver, tempDir.resolve("keys.cache"), Duration.ofDays(1), Clock.fixed(now, ZoneOffset.UTC));
+    }
+}
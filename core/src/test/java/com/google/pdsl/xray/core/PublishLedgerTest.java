@@ -0,0 +1,94 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.models.Info;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublishLedgerTest {
+
+    private static final Info INFO = new Info("Automated tests from sources:\n/a.feature", "description", "PLAN-1", Set.of("TST"));
+    private static final XrayTestResult FIRST = new XrayTestResult("TEST-1", "PASSED", List.of("PASSED"));
+    private static final XrayTestResult SECOND = new XrayTestResult("TEST-2", "FAILED", List.of("FAILED"));
+
+    private Path ledgerFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ledgerFile = Files.createTempDirectory("xray-ledger").resolve("ledger.tsv");
+    }
+
+    @Test
+    void fingerprint_doesNotDependOnTestOrderOrExecutionKey() {
+        XrayTestExecution execution = new XrayTestExecution(null, INFO, new LinkedHashSet<>(List.of(FIRST, SECOND)));
+        XrayTestExecution reordered = new XrayTestExecution("EXEC-1", INFO, new LinkedHashSet<>(List.of(SECOND, FIRST)));
+        XrayTestExecution changed = new XrayTestExecution(null, INFO,
+                Set.of(FIRST, new XrayTestResult("TEST-2", "PASSED", List.of("PASSED"))));
+
+        assertEquals(PublishLedger.fingerprint(execution), PublishLedger.fingerprint(reordered));
+        assertNotEquals(PublishLedger.fingerprint(execution), PublishLedger.fingerprint(changed));
+    }
+
+    @Test
+    void fingerprint_doesNotDependOnTimings() {
+        XrayTestExecution execution = new XrayTestExecution(null, INFO, Set.of(new XrayTestResult("TEST-1", "PASSED",
+                List.of("PASSED"), "2025-01-01T10:00:00Z", "2025-01-01T10:01:00Z", null)));
+        XrayTestExecution recollected = new XrayTestExecution(null, INFO, Set.of(new XrayTestResult("TEST-1", "PASSED",
+                List.of("PASSED"), "2025-01-01T11:00:00Z", "2025-01-01T11:01:00Z", null)));
+
+        assertEquals(PublishLedger.fingerprint(execution), PublishLedger.fingerprint(recollected));
+    }
+
+    @Test
+    void find_executionsOfTheSameGroupFromOtherFeatureFiles_areKeptApart() {
+        PublishLedger ledger = new PublishLedger(ledgerFile, "build-1");
+        XrayTestExecution first = new XrayTestExecution(null, INFO, Set.of(FIRST));
+        XrayTestExecution second = new XrayTestExecution(null, INFO, Set.of(SECOND));
+        ledger.recordPublished(first, "EXEC-1");
+
+        assertTrue(ledger.find(second).isEmpty());
+        assertNotEquals(ledger.label(first), ledger.label(second));
+    }
+
+    @Test
+    void find_afterReload_keepsPendingImportUntilFound() {
+        XrayTestExecution execution = new XrayTestExecution(null, INFO, Set.of(FIRST, SECOND));
+        new PublishLedger(ledgerFile, "build-1").recordPending(execution);
+
+        PublishLedger ledger = new PublishLedger(ledgerFile, "build-1");
+        assertTrue(ledger.find(execution).orElseThrow().pending());
+        ledger.recordFound(execution, "EXEC-7");
+
+        PublishLedger.Entry entry = new PublishLedger(ledgerFile, "build-1").find(execution).orElseThrow();
+        assertFalse(entry.pending());
+        assertEquals("EXEC-7", entry.testExecutionKey());
+        assertEquals(PublishLedger.fingerprint(execution), entry.fingerprint());
+    }
+
+    @Test
+    void find_afterReload_returnsPublishedExecutionOfTheSameRunOnly() {
+        XrayTestExecution execution = new XrayTestExecution(null, INFO, Set.of(FIRST, SECOND));
+        new PublishLedger(ledgerFile, "build-1").recordPublished(execution, "EXEC-42");
+
+        PublishLedger sameRun = new PublishLedger(ledgerFile, "build-1");
+        PublishLedger otherRun = new PublishLedger(ledgerFile, "build-2");
+
+        PublishLedger.Entry entry = sameRun.find(execution).orElseThrow();
+        assertEquals("EXEC-42", entry.testExecutionKey());
+        assertEquals(PublishLedger.fingerprint(execution), entry.fingerprint());
+        assertTrue(otherRun.find(execution).isEmpty());
+    }
+}
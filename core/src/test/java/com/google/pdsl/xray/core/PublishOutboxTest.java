@@ -0,0 +1,72 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PublishOutboxTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void remove_keepsEntriesAppendedByAnotherProcessSinceTheRead() throws IOException {
+        Path file = tempDir.resolve("outbox.jsonl");
+        PublishOutbox shard1 = new PublishOutbox(file, objectMapper);
+        PublishOutbox shard2 = new PublishOutbox(file, objectMapper);
+        shard1.append(entry("PLAN-1"));
+        shard1.append(entry("PLAN-2"));
+
+        List<PublishOutbox.Entry> read = shard1.read();
+        shard2.append(entry("PLAN-3"));
+        shard1.remove(Set.of(read.get(0).id(), read.get(1).id()));
+
+        assertEquals(List.of("PLAN-3"), shard2.read().stream().map(PublishOutbox.Entry::testPlanKey).toList());
+    }
+
+    @Test
+    void remove_everyEntry_deletesTheOutbox() throws IOException {
+        Path file = tempDir.resolve("outbox.jsonl");
+        PublishOutbox outbox = new PublishOutbox(file, objectMapper);
+        outbox.append(entry("PLAN-1"));
+
+        outbox.remove(Set.of(outbox.read().getFirst().id()));
+
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(tempDir.resolve("outbox.jsonl.results")));
+        assertEquals(List.of(), outbox.read());
+    }
+
+    @Test
+    void append_movesTheResultsIntoTheOutbox_untilTheEntryIsRemoved() throws IOException {
+        Path file = tempDir.resolve("outbox.jsonl");
+        PublishOutbox outbox = new PublishOutbox(file, objectMapper);
+        PublishOutbox.Entry appended = entry("PLAN-1");
+
+        outbox.append(appended);
+        PublishOutbox.Entry read = outbox.read().getFirst();
+
+        assertFalse(Files.exists(appended.results()));
+        assertEquals("{\"tests\":[\"PLAN-1\"]}", Files.readString(read.results()));
+        assertFalse(Files.readString(file).contains("tests"));
+        outbox.remove(Set.of(read.id()));
+        assertFalse(Files.exists(read.results()));
+    }
+
+    private PublishOutbox.Entry entry(String testPlanKey) throws IOException {
+        Path results = Files.writeString(tempDir.resolve(testPlanKey + "-results.json"), "{\"tests\":[\"" + testPlanKey + "\"]}");
+        return new PublishOutbox.Entry(null, testPlanKey, Set.of("TST"), null,
+                objectMapper.createObjectNode().put("summary", testPlanKey), results);
+    }
+}
@@ -0,0 +1,59 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublishPipelineTest {
+
+    @Test
+    void next_returnsThePreparedItemsInOrder_skippingThoseWithNothingToSend() throws IOException {
+        List<String> taken = new ArrayList<>();
+        try (PublishPipeline<Integer, String> pipeline = new PublishPipeline<>("test", List.of(1, 2, 3, 4, 5), 1,
+                i -> i % 2 == 0 ? Optional.empty() : Optional.of("item-" + i), (p) -> {})) {
+            for (Optional<String> next = pipeline.next(); next.isPresent(); next = pipeline.next()) {
+                taken.add(next.get());
+            }
+            assertTrue(pipeline.next().isEmpty());
+        }
+
+        assertEquals(List.of("item-1", "item-3", "item-5"), taken);
+    }
+
+    @Test
+    void next_whenPreparingFails_throwsTheFailureAfterTheItemsBeforeIt() throws IOException {
+        try (PublishPipeline<Integer, Integer> pipeline = new PublishPipeline<>("test", List.of(1, 2), 2, i -> {
+            if (i == 2) {
+                throw new IOException("disk full");
+            }
+            return Optional.of(i);
+        }, (p) -> {})) {
+            assertEquals(Optional.of(1), pipeline.next());
+            IOException e = assertThrows(IOException.class, pipeline::next);
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    @Test
+    void close_discardsThePreparedItemsThatWereNotTaken() throws IOException {
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> items = List.of(1, 2, 3, 4, 5, 6);
+
+        try (PublishPipeline<Integer, Integer> pipeline = new PublishPipeline<>("test", items, 2,
+                Optional::of, discarded::add)) {
+            assertEquals(Optional.of(1), pipeline.next());
+        }
+
+        // The preparer stops once the queue is full, so only the items it already prepared are discarded
+        assertTrue(discarded.size() <= 3, discarded.toString());
+        assertTrue(discarded.stream().allMatch(i -> i > 1 && i < 5), discarded.toString());
+    }
+}
@@ -0,0 +1,110 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultAggregatorTest {
+
+    private static final List<String> STATUSES = List.of("EXECUTING", "FAILED", "BLOCKED", "PASSED", "TODO");
+
+    private static TestItem item(String testKey, String status, Set<String> environments) {
+        return new TestItem("A test", testKey, status, "PROJ-1", null, environments, List.of("step"),
+                null, null, null, null);
+    }
+
+    private static URI source(int example) {
+        return URI.create("file:/features/a.feature?ruleIndex=0&ordinal=1&tableIndex=" + example);
+    }
+
+    @Test
+    void executions_groupsExamplesByTestPlanEnvironmentsAndSource() {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES);
+        aggregator.add(source(1), item("PROJ-10", "PASSED", Set.of("DEV")));
+        aggregator.add(source(0), item("PROJ-10", "FAILED", Set.of("DEV")));
+        aggregator.add(source(0), item("PROJ-11", "PASSED", Set.of("TST")));
+
+        List<XrayTestExecution> executions = aggregator.executions();
+
+        assertEquals(2, executions.size());
+        XrayTestExecution dev = executions.stream()
+                .filter(e -> e.info().testEnvironments().equals(Set.of("DEV")))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("PROJ-1", dev.info().testPlanKey());
+        XrayTestResult test = dev.tests().iterator().next();
+        assertEquals("FAILED", test.status());
+        assertEquals(List.of("FAILED", "PASSED"), List.copyOf(test.examples()));
+        assertEquals(2, aggregator.consolidatedTests().size());
+        assertEquals(3, aggregator.testItems("PROJ-1").size());
+    }
+
+    @Test
+    void clear_removesEveryResult() {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES);
+        aggregator.add(URI.create("file:/features/a.feature"), item("PROJ-10", "PASSED", Set.of()));
+
+        aggregator.clear();
+
+        assertTrue(aggregator.executions().isEmpty());
+        assertTrue(aggregator.consolidatedTests().isEmpty());
+    }
+
+    @Test
+    void add_rerunOfAnExample_replacesItAccordingToThePolicy() {
+        for (RerunPolicy policy : RerunPolicy.values()) {
+            ResultAggregator aggregator = new ResultAggregator("description", STATUSES, null,
+                    new FailureCommentRenderer(4000, List.of()), EnvironmentGroupingStrategy.byCombination(),
+                    Optional.empty(), Optional.empty(), policy, true, false);
+            aggregator.add(source(0), item("PROJ-10", "PASSED", Set.of("DEV")));
+            aggregator.add(source(1), item("PROJ-10", "FAILED", Set.of("DEV")));
+            aggregator.add(source(1), item("PROJ-10", "PASSED", Set.of("DEV")));
+            aggregator.add(source(0), item("PROJ-10", "FAILED", Set.of("DEV")));
+
+            XrayTestResult test = aggregator.executions().getFirst().tests().iterator().next();
+
+            List<String> expected = switch (policy) {
+                case LAST_WINS -> List.of("FAILED", "PASSED");
+                case ANY_PASS -> List.of("PASSED", "PASSED");
+                case ALL_MUST_PASS -> List.of("FAILED", "FAILED");
+            };
+            assertEquals(expected, List.copyOf(test.examples()), policy.name());
+            assertEquals(2, aggregator.testItems("PROJ-1").size(), policy.name());
+            assertTrue(test.comment().contains("Example 2: " + expected.get(1) + " after 2 attempts"), test.comment());
+        }
+    }
+
+    @Test
+    void executions_rerunAfterResultsWereSpilled_keepsASingleAttempt(@TempDir Path tempDir) {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES, tempDir,
+                new FailureCommentRenderer(4000, List.of()), EnvironmentGroupingStrategy.byCombination(),
+                Optional.empty(), Optional.of(0L), RerunPolicy.ANY_PASS, true, false);
+        aggregator.add(source(0), item("PROJ-10", "FAILED", Set.of("DEV")));
+        aggregator.add(source(0), item("PROJ-10", "PASSED", Set.of("DEV")));
+        aggregator.add(source(0), item("PROJ-10", "FAILED", Set.of("DEV")));
+
+        XrayTestResult test = aggregator.executions().getFirst().tests().iterator().next();
+
+        assertEquals(List.of("PASSED"), List.copyOf(test.examples()));
+        assertEquals("PASSED after 3 attempts", test.comment());
+    }
+
+    @Test
+    void add_resultsWithoutAPosition_areNotTreatedAsReruns() {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES);
+        aggregator.add(URI.create("file:/features/a.feature"), item("PROJ-10", "PASSED", Set.of()));
+        aggregator.add(URI.create("file:/features/a.feature"), item("PROJ-10", "FAILED", Set.of()));
+
+        assertEquals(2, aggregator.testItems("PROJ-1").size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.models.XrayTestResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultHistoryTest {
+
+    private static final String TEST_PLAN_KEY = "PLAN-123";
+    private static final Set<String> ENVIRONMENTS = Set.of("TST", "Android");
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private Path historyFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        historyFile = Files.createTempDirectory("xray-history").resolve("history.tsv");
+    }
+
+    @Test
+    void hasChanged_withUnknownTest_isTrue() {
+        ResultHistory history = new ResultHistory(historyFile, Duration.ofDays(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertTrue(history.hasChanged(TEST_PLAN_KEY, ENVIRONMENTS, new XrayTestResult("TEST-1", "PASSED", List.of("PASSED"))));
+    }
+
+    @Test
+    void hasChanged_afterSaveAndReload_onlyReportsChangedResults() {
+        ResultHistory history = new ResultHistory(historyFile, Duration.ofDays(1), Clock.fixed(NOW, ZoneOffset.UTC));
+        history.recordPublished(TEST_PLAN_KEY, ENVIRONMENTS, List.of(
+                new XrayTestResult("TEST-1", "PASSED", List.of("PASSED", "PASSED")),
+                new XrayTestResult("TEST-2", "PASSED", List.of("PASSED"))));
+        history.save();
+
+        ResultHistory reloaded = new ResultHistory(historyFile, Duration.ofDays(1), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertEquals(2, reloaded.size());
+        assertFalse(reloaded.hasChanged(TEST_PLAN_KEY, Set.of("Android", "TST"),
+                new XrayTestResult("TEST-1", "PASSED", List.of("PASSED", "PASSED"))));
+        assertTrue(reloaded.hasChanged(TEST_PLAN_KEY, ENVIRONMENTS,
+                new XrayTestResult("TEST-1", "PASSED", List.of("PASSED", "PASSED", "PASSED"))));
+        assertTrue(reloaded.hasChanged(TEST_PLAN_KEY, ENVIRONMENTS,
+                new XrayTestResult("TEST-2", "FAILED", List.of("FAILED"))));
+        assertTrue(reloaded.hasChanged(TEST_PLAN_KEY, Set.of("TST"),
+                new XrayTestResult("TEST-2", "PASSED", List.of("PASSED"))));
+    }
+
+    @Test
+    void hasChanged_afterTimeToLive_isTrue() {
+        XrayTestResult result = new XrayTestResult("TEST-1", "PASSED", List.of("PASSED"));
+        ResultHistory history = new ResultHistory(historyFile, Duration.ofDays(1), Clock.fixed(NOW, ZoneOffset.UTC));
+        history.recordPublished(null, Set.of(), List.of(result));
+        history.save();
+
+        ResultHistory nextDay = new ResultHistory(historyFile, Duration.ofDays(1),
+                Clock.fixed(NOW.plus(Duration.ofDays(1)).plusSeconds(1), ZoneOffset.UTC));
+
+        assertTrue(nextDay.hasChanged(null, Set.of(), result));
+    }
+}
@@ -0,0 +1,70 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.core.ResultIndex.Query;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultIndexTest {
+
+    private static final List<String> STATUSES = List.of("EXECUTING", "FAILED", "BLOCKED", "PASSED", "TODO");
+
+    private static TestItem item(String testPlanKey, String testKey, String status, Set<String> environments) {
+        return new TestItem("A test", testKey, status, testPlanKey, null, environments, List.of("step"),
+                null, null, null, null);
+    }
+
+    private static URI source(String feature, int example) {
+        return URI.create("file:/features/" + feature + "?ruleIndex=0&ordinal=1&tableIndex=" + example);
+    }
+
+    @Test
+    void find_selectsResultsMatchingEveryCriterion() {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES, null,
+                new FailureCommentRenderer(4000, List.of()), EnvironmentGroupingStrategy.byCombination(),
+                Optional.empty(), Optional.empty(), RerunPolicy.LAST_WINS, false, true);
+        aggregator.add(source("a.feature", 0), item("PROJ-1", "PROJ-10", "PASSED", Set.of("DEV")));
+        aggregator.add(source("a.feature", 1), item("PROJ-1", "PROJ-10", "FAILED", Set.of("DEV")));
+        aggregator.add(source("b.feature", 0), item("PROJ-1", "PROJ-11", "FAILED", Set.of("TST")));
+        aggregator.add(source("b.feature", 0), item("PROJ-2", "PROJ-12", "FAILED", Set.of("DEV")));
+
+        ResultIndex index = aggregator.index();
+
+        assertEquals(4, index.size());
+        assertEquals(2, index.count(Query.all().withTestPlan("PROJ-1").withStatus("FAILED")));
+        assertEquals(List.of("PROJ-10", "PROJ-12"), index.find(Query.all().withEnvironments(Set.of("DEV"))
+                .withStatus("FAILED")).stream().map(ResultIndex.Result::testKey).toList());
+        assertEquals(Map.of("FAILED", 1), index.countByStatus(Query.all().withSourcePath("/features/b.feature")
+                .withTestPlan("PROJ-1")));
+        assertFalse(index.contains(Query.all().withTestKey("PROJ-11").withStatus("PASSED")));
+        assertEquals(0, index.count(Query.all().withTestPlan("PROJ-3")));
+    }
+
+    @Test
+    void add_rerun_updatesTheIndexAccordingToThePolicy() {
+        ResultAggregator aggregator = new ResultAggregator("description", STATUSES, null,
+                new FailureCommentRenderer(4000, List.of()), EnvironmentGroupingStrategy.byCombination(),
+                Optional.empty(), Optional.empty(), RerunPolicy.ANY_PASS, false, true);
+        aggregator.add(source("a.feature", 0), item("PROJ-1", "PROJ-10", "FAILED", Set.of()));
+        aggregator.add(source("a.feature", 0), item("PROJ-1", "PROJ-10", "PASSED", Set.of()));
+        aggregator.add(source("a.feature", 0), item("PROJ-1", "PROJ-10", "FAILED", Set.of()));
+
+        ResultIndex index = aggregator.index();
+
+        assertEquals(1, index.size());
+        assertTrue(index.contains(Query.all().withStatus("PASSED")));
+        assertFalse(index.contains(Query.all().withStatus("FAILED")));
+
+        aggregator.clear();
+
+        assertEquals(0, aggregator.index().count(Query.all()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SharedExecutionKeyFileTest {
+
+    private static final Set<String> ENVIRONMENTS = Set.of("DEV", "Android");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void find_afterRecord_returnsTheKeyToOtherProcesses() throws Exception {
+        ExecutionKeyResolver shard1 = resolver(Duration.ofMinutes(1));
+        ExecutionKeyResolver shard2 = resolver(Duration.ofMinutes(1));
+
+        assertEquals(Optional.empty(), shard1.find("PLAN-1", ENVIRONMENTS, "build-7"));
+        shard1.record("PLAN-1", ENVIRONMENTS, "build-7", "EXEC-1");
+
+        assertEquals(Optional.of("EXEC-1"), shard2.find("PLAN-1", Set.of("Android", "DEV"), "build-7"));
+        assertEquals(Optional.empty(), shard2.find("PLAN-1", ENVIRONMENTS, "build-8"));
+    }
+
+    @Test
+    void find_whileAnotherProcessCreatesTheExecution_waitsForItsKey() throws Exception {
+        ExecutionKeyResolver shard1 = resolver(Duration.ofMinutes(1));
+        ExecutionKeyResolver shard2 = resolver(Duration.ofMinutes(1));
+        assertEquals(Optional.empty(), shard1.find("PLAN-1", ENVIRONMENTS, "build-7"));
+
+        CompletableFuture<Optional<String>> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return shard2.find("PLAN-1", ENVIRONMENTS, "build-7");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertFalse(waiting.isDone());
+        shard1.record("PLAN-1", ENVIRONMENTS, "build-7", "EXEC-1");
+
+        assertEquals(Optional.of("EXEC-1"), waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void find_afterRelease_letsTheNextProcessCreateTheExecution() throws Exception {
+        ExecutionKeyResolver shard1 = resolver(Duration.ofMinutes(1));
+        ExecutionKeyResolver shard2 = resolver(Duration.ofMinutes(1));
+        assertEquals(Optional.empty(), shard1.find("PLAN-1", ENVIRONMENTS, "build-7"));
+
+        shard1.release("PLAN-1", ENVIRONMENTS, "build-7");
+
+        assertEquals(Optional.empty(), shard2.find("PLAN-1", ENVIRONMENTS, "build-7"));
+    }
+
+    private ExecutionKeyResolver resolver(Duration claimTimeout) {
+        return new SharedExecutionKeyFile(tempDir.resolve("execution-keys.tsv"), claimTimeout, Duration.ofDays(7),
+                Clock.systemUTC());
+    }
+}
@@ -0,0 +1,54 @@
+package com.google.pdsl.xray.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatusRunsTest {
+
+    private static final List<String> STATUSES = List.of("PASSED", "PASSED", "FAILED", "PASSED", "BLOCKED", "BLOCKED");
+
+    @Test
+    void of_behavesLikeTheListOfStatuses() {
+        StatusRuns runs = StatusRuns.of(STATUSES);
+
+        assertEquals(STATUSES, runs);
+        assertEquals(STATUSES, new ArrayList<>(runs));
+        assertEquals(STATUSES.hashCode(), runs.hashCode());
+        for (int i = 0; i < STATUSES.size(); i++) {
+            assertEquals(STATUSES.get(i), runs.get(i));
+        }
+        assertEquals(List.of("PASSED", "FAILED", "BLOCKED"), List.copyOf(runs.distinctStatuses()));
+        assertEquals(3, runs.count("PASSED"));
+    }
+
+    @Test
+    void concat_joinsTheRunsAtTheSeam() {
+        StatusRuns runs = StatusRuns.concat(StatusRuns.of(List.of("PASSED", "FAILED")), StatusRuns.of(List.of("FAILED", "PASSED")));
+
+        assertEquals(List.of("PASSED", "FAILED", "FAILED", "PASSED"), runs);
+    }
+
+    @Test
+    void limit_keepsEveryOtherStatus() {
+        assertEquals(List.of("PASSED", "PASSED", "FAILED", "PASSED", "BLOCKED", "BLOCKED"), StatusRuns.of(STATUSES).limit("PASSED", 4));
+        assertEquals(STATUSES, StatusRuns.of(STATUSES).limit("PASSED", 1));
+    }
+
+    @Test
+    void limit_dropsOnlyTrailingExamples_soPositionsAreKept() {
+        List<String> statuses = List.of("PASSED", "PASSED", "FAILED", "PASSED", "PASSED", "PASSED", "PASSED");
+
+        StatusRuns toLastFailure = StatusRuns.of(statuses).limit("PASSED", 2);
+        StatusRuns toLimit = StatusRuns.of(statuses).limit("PASSED", 5);
+
+        assertEquals(List.of("PASSED", "PASSED", "FAILED"), toLastFailure);
+        assertEquals(List.of("PASSED", "PASSED", "FAILED", "PASSED", "PASSED"), toLimit);
+        for (int i = 0; i < toLimit.size(); i++) {
+            assertEquals(statuses.get(i), toLimit.get(i));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.constants.StepStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StepSegmentsTest {
+
+    private static final Map<Integer, List<String>> STEP_COMMENTS = Map.of(
+            0, List.of("@xray-test-case=SCENARIO-1"),
+            2, List.of("some note", "@xray-test-case=STEP-2"),
+            5, List.of("@xray-test-case=STEP-5", " @xray-test-case=STEP-5b "));
+
+    @Test
+    void of_withAnnotatedSteps_splitsStepsAtEachAnnotation() {
+        StepSegments stepSegments = StepSegments.of(STEP_COMMENTS, 7);
+
+        Map<String, List<Integer>> ranges = stepSegments.segments().stream().collect(Collectors.toMap(
+                StepSegments.Segment::testKey, s -> List.of(s.start(), s.end())));
+        assertEquals(Map.of(
+                "SCENARIO-1", List.of(0, 7),
+                "STEP-2", List.of(1, 4),
+                "STEP-5", List.of(4, 7),
+                "STEP-5b", List.of(4, 7)), ranges);
+    }
+
+    @Test
+    void of_withEqualComments_reusesSegments() {
+        assertSame(StepSegments.of(STEP_COMMENTS, 7), StepSegments.of(Map.copyOf(STEP_COMMENTS), 7));
+        assertTrue(StepSegments.of(Map.of(1, List.of("not an annotation")), 7).isEmpty());
+    }
+
+    @Test
+    void of_withNullComments_ignoresThoseSteps() {
+        Map<Integer, List<String>> stepComments = new HashMap<>(STEP_COMMENTS);
+        stepComments.put(3, null);
+        stepComments.put(null, List.of("@xray-test-case=STEP-X"));
+
+        assertSame(StepSegments.of(STEP_COMMENTS, 7), StepSegments.of(stepComments, 7));
+        assertTrue(StepSegments.of(Collections.singletonMap(1, null), 7).isEmpty());
+    }
+
+    @Test
+    void statuses_withFailingStep_failsItsSegmentAndBlocksTheRest() {
+        StepSegments stepSegments = StepSegments.of(STEP_COMMENTS, 7);
+
+        assertEquals(statusesByKey(stepSegments, null), Map.of(
+                "SCENARIO-1", StepStatus.PASSED, "STEP-2", StepStatus.PASSED,
+                "STEP-5", StepStatus.PASSED, "STEP-5b", StepStatus.PASSED));
+        assertEquals(statusesByKey(stepSegments, 0), Map.of(
+                "SCENARIO-1", StepStatus.FAILED, "STEP-2", StepStatus.BLOCKED,
+                "STEP-5", StepStatus.BLOCKED, "STEP-5b", StepStatus.BLOCKED));
+        assertEquals(statusesByKey(stepSegments, 2), Map.of(
+                "SCENARIO-1", StepStatus.FAILED, "STEP-2", StepStatus.FAILED,
+                "STEP-5", StepStatus.BLOCKED, "STEP-5b", StepStatus.BLOCKED));
+        assertEquals(statusesByKey(stepSegments, 4), Map.of(
+                "SCENARIO-1", StepStatus.FAILED, "STEP-2", StepStatus.PASSED,
+                "STEP-5", StepStatus.FAILED, "STEP-5b", StepStatus.FAILED));
+    }
+
+    private static Map<String, StepStatus> statusesByKey(StepSegments stepSegments, Integer failingStepIndex) {
+        List<StepStatus> statuses = stepSegments.statuses(failingStepIndex);
+        Map<String, StepStatus> byKey = new HashMap<>();
+        for (int i = 0; i < statuses.size(); i++) {
+            byKey.put(stepSegments.segments().get(i).testKey(), statuses.get(i));
+        }
+        return byKey;
+    }
+}
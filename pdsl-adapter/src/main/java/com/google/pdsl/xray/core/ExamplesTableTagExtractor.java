@@ -0,0 +1,96 @@
+package com.google.pdsl.xray.core;
+
+import com.google.pdsl.xray.constants.XrayTestTag;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Turns the XRAY columns of an Examples table row into gherkin tags, e.g. a column XRAY-TEST-CASE with the
+ * value PROJ-10 becomes the tag @xray-test-case=PROJ-10.
+ * <p>
+ * Every row of a Scenario Outline is converted separately, but all rows of a table share the same headers.
+ * Each header is therefore only case-folded and matched against the XRAY tags once, the first time a table
+ * using it is seen; after that a row costs one lookup per column. Tag strings are cached per column value
+ * since plans, executions and environments repeat on most rows.
+ */
+final class ExamplesTableTagExtractor {
+
+    private static final int MAX_CACHED_HEADERS = 4096;
+    private static final int MAX_CACHED_VALUES_PER_COLUMN = 4096;
+    private static final Map<String, XrayTestTag> TAGS_BY_HEADER = new HashMap<>();
+    /**
+     * Marks headers that are known not to be XRAY columns.
+     */
+    private static final XrayColumn NOT_XRAY = new XrayColumn(null, Map.of());
+
+    static {
+        for (XrayTestTag tag : XrayTestTag.values()) {
+            TAGS_BY_HEADER.put(tag.toHtmlTag().toLowerCase(Locale.ROOT), tag);
+        }
+    }
+
+    /**
+     * An XRAY column header and the tags already made from its values.
+     */
+    private record XrayColumn(XrayTestTag tag, Map<String, String> tagsByValue) {
+
+        String toTag(String value) {
+            String cached = tagsByValue.get(value);
+            if (cached != null) {
+                return cached;
+            }
+            String created = "@%s=%s".formatted(tag, value);
+            if (tagsByValue.size() < MAX_CACHED_VALUES_PER_COLUMN) {
+                tagsByValue.put(value, created);
+            }
+            return created;
+        }
+    }
+
+    private final Map<String, XrayColumn> columnsByHeader = new HashMap<>();
+
+    /**
+     * Adds a tag for each XRAY column of the row.
+     *
+     * @param tags          the tags of the scenario to add to
+     * @param substitutions the row, from column header (including the angle brackets) to value
+     */
+    synchronized void addTags(Set<String> tags, Map<String, String> substitutions) {
+        for (Map.Entry<String, String> cell : substitutions.entrySet()) {
+            XrayColumn column = columnsByHeader.get(cell.getKey());
+            if (column == null) {
+                column = indexColumn(cell.getKey());
+            }
+            if (column != NOT_XRAY) {
+                tags.add(column.toTag(cell.getValue()));
+            }
+        }
+    }
+
+    private XrayColumn indexColumn(String header) {
+        XrayTestTag tag = TAGS_BY_HEADER.get(header.toLowerCase(Locale.ROOT));
+        XrayColumn column = tag == null ? NOT_XRAY : new XrayColumn(tag, new HashMap<>());
+        if (columnsByHeader.size() < MAX_CACHED_HEADERS) {
+            columnsByHeader.put(header, column);
+        }
+        return column;
+    }
+}
@@ -0,0 +1,142 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Another XRAY project that an {@link XrayTestResultUpdater} publishes part of the executions to, e.g. that of
+ * another team sharing the test suite. Which executions go to the tenant is decided by the
+ * {@link TenantRoute}s registered with {@link XrayTestResultUpdater.Builder#withTenantRoute}.
+ * <p>
+ * The results are held once by the updater and the connection pool is shared; each tenant authenticates with
+ * its own credentials and can have its own rate limit.
+ */
+public final class XrayTenant {
+
+    private final String name;
+    private final XrayAuth xrayAuth;
+    private final Supplier<Map<Object, Object>> fieldSupplier;
+    private final Optional<String> xrayReportUrl;
+    private final Optional<Double> importsPerSecond;
+    private final Optional<String> infoTemplate;
+
+    private XrayTenant(Builder builder) {
+        this.name = builder.name;
+        this.xrayAuth = builder.xrayAuth;
+        this.fieldSupplier = builder.fieldSupplier;
+        this.xrayReportUrl = builder.xrayReportUrl;
+        this.importsPerSecond = builder.importsPerSecond;
+        this.infoTemplate = builder.infoTemplate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    XrayAuth getXrayAuth() {
+        return xrayAuth;
+    }
+
+    Supplier<Map<Object, Object>> getFieldSupplier() {
+        return fieldSupplier;
+    }
+
+    Optional<String> getXrayReportUrl() {
+        return xrayReportUrl;
+    }
+
+    Optional<Double> getImportsPerSecond() {
+        return importsPerSecond;
+    }
+
+    Optional<String> getInfoTemplate() {
+        return infoTemplate;
+    }
+
+    public static class Builder {
+        private final String name;
+        private final XrayAuth xrayAuth;
+        private final Supplier<Map<Object, Object>> fieldSupplier;
+        private Optional<String> xrayReportUrl = Optional.empty();
+        private Optional<Double> importsPerSecond = Optional.empty();
+        private Optional<String> infoTemplate = Optional.empty();
+
+        /**
+         * @param name          the name routes refer to the tenant by
+         * @param xrayAuth      the credentials of the tenant
+         * @param fieldSupplier the fields of the test execution issues created in the tenant's project. They are
+         *                      used instead of the updater's field supplier or info template, unless the
+         *                      tenant has an info template of its own
+         */
+        public Builder(String name, XrayAuth xrayAuth, Supplier<Map<Object, Object>> fieldSupplier) {
+            Preconditions.checkNotNull(name, "name must not be null");
+            Preconditions.checkNotNull(xrayAuth, "xrayAuth must not be null");
+            Preconditions.checkNotNull(fieldSupplier, "fieldSupplier must not be null");
+            this.name = name;
+            this.xrayAuth = xrayAuth;
+            this.fieldSupplier = fieldSupplier;
+        }
+
+        /**
+         * @param xrayReportUrl the multipart import endpoint of the tenant, if not the one of the updater
+         * @return this builder
+         */
+        public Builder withXrayReportUrl(String xrayReportUrl) {
+            Preconditions.checkNotNull(xrayReportUrl, "xrayReportUrl must not be null");
+            this.xrayReportUrl = Optional.of(xrayReportUrl);
+            return this;
+        }
+
+        /**
+         * Limits how many imports are started for the tenant per second, e.g. to stay within the API limits of
+         * its XRAY plan. An import that cannot start within the time the publish has left is reported as not
+         * answered.
+         *
+         * @param importsPerSecond the most imports per second
+         * @return this builder
+         */
+        public Builder withRateLimit(double importsPerSecond) {
+            Preconditions.checkArgument(importsPerSecond > 0, "importsPerSecond must be positive");
+            this.importsPerSecond = Optional.of(importsPerSecond);
+            return this;
+        }
+
+        /**
+         * Uses a JSON template for the fields of the tenant's test execution issues instead of its field
+         * supplier. The placeholders are those of {@link XrayTestResultUpdater.Builder#withInfoTemplate}.
+         *
+         * @param infoTemplate the JSON of the info part of the tenant's imports
+         * @return this builder
+         * @throws IllegalArgumentException if the template has an unknown placeholder or is not valid JSON
+         */
+        public Builder withInfoTemplate(String infoTemplate) {
+            Preconditions.checkNotNull(infoTemplate, "infoTemplate must not be null");
+            InfoTemplate.compile(infoTemplate, new ObjectMapper());
+            this.infoTemplate = Optional.of(infoTemplate);
+            return this;
+        }
+
+        public XrayTenant build() {
+            return new XrayTenant(this);
+        }
+    }
+}
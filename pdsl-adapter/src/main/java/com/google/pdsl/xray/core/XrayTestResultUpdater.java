@@ -0,0 +1,1549 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.google.pdsl.xray.constants.StepStatus;
+import com.google.pdsl.xray.constants.XrayTestTag;
+import com.google.pdsl.xray.models.PublishResult;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+import com.pdsl.executors.ExecutorObserver;
+import com.pdsl.gherkin.GherkinObserver;
+import com.pdsl.reports.MetadataTestRunResults;
+import com.pdsl.reports.TestResult;
+import com.pdsl.testcases.SharedTestCase;
+import com.pdsl.testcases.TaggedTestCase;
+import com.pdsl.testcases.TestCase;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * XrayTestResultUpdater updates Xray with test execution results. It implements GherkinObserver and
+ * ExecutorObserver to listen for test events.
+ */
+public class XrayTestResultUpdater implements GherkinObserver, ExecutorObserver {
+
+    /**
+     * The key of the test case metadata that lists evidence files, e.g. screenshots, to attach to the result
+     * if the test does not pass. The value is a Path, File or String, or a collection of them.
+     */
+    public static final String EVIDENCE = "xrayEvidence";
+
+    private final ObjectMapper objectMapper; // Jackson ObjectMapper for JSON serialization
+    private final ResultAggregator resultAggregator;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final Set<String> environments;
+    private final String title;
+    private final Path tempDirectory;
+    private final List<String> xrayStatuses;
+    private final int slowestTestsToLog;
+    private final FailureCommentRenderer failureCommentRenderer;
+    private final Optional<ResultHistory> resultHistory;
+    private final Optional<PublishLedger> publishLedger;
+    private final Optional<ExecutionLookup> executionLookup;
+    private final boolean warmUp;
+    private final Optional<IssueKeyValidator> issueKeyValidator;
+    private final Optional<PublishOutbox> quarantine;
+    private final Optional<ExecutionKeyResolver> executionKeyResolver;
+    private final String executionKeyRunId;
+    private final EvidenceLimits evidenceLimits;
+    private final boolean resultIndexed;
+    private final XrayImportClient importClient;
+    private final ExecutionPublisher publisher;
+    private final Optional<IngestionQueue<Submission>> ingestionQueue;
+    private final Map<String, RoutedTenant> tenants;
+    private final List<Route> tenantRoutes;
+    // The tags of the tests of each test plan, if a route could need them
+    private final Map<String, Set<String>> tagsByTestPlan = new HashMap<>();
+    private final ExamplesTableTagExtractor examplesTableTagExtractor = new ExamplesTableTagExtractor();
+    // When the last suite finished, or the first scenario was converted; the next suite is taken to start then
+    private final AtomicReference<Instant> lastSuiteFinishedAt = new AtomicReference<>();
+
+    /**
+     * A tenant and the client that imports to its project.
+     */
+    private record RoutedTenant(XrayTenant tenant, XrayImportClient importClient, Optional<InfoTemplate> infoTemplate) {}
+
+    /**
+     * The executions a route selects go to the tenant with the name.
+     */
+    private record Route(TenantRoute route, String tenant) {}
+
+    /**
+     * When the results of a suite were added; every test of the suite shares it.
+     */
+    private record TimeWindow(Instant start, Instant finish) {
+        Duration duration() {
+            return start == null || finish == null ? Duration.ZERO : Duration.between(start, finish);
+        }
+    }
+
+    /**
+     * Results added in asynchronous ingestion mode, waiting to be grouped.
+     */
+    private record Submission(Collection<TestResult> results, Instant start, Instant finish, boolean suiteTimed) {}
+
+    private record TestPlan(String key, List<XrayTestCase> testCases) {
+        private record XrayTestCase(String key, Set<String> environments, URI uri) {
+        }
+
+    }
+
+    private XrayTestResultUpdater(Builder builder) {
+        Path tempDirectoryPath = builder.tempDirectory.orElseGet(() -> {
+            try {
+                return Files.createTempDirectory("pdsl-xray");
+            } catch (IOException e) {
+                throw new IllegalStateException("""
+                        No path for temporary files was provided in the builder,
+                        so tried to create one in the standard temp directory.
+                        
+                        Recommended: Provide a viable path using this builder.
+                        
+                        Alternative: Fix the following IOException.
+                        """, e);
+            }
+        });
+        validateTempDirectory(tempDirectoryPath);
+        this.tempDirectory = tempDirectoryPath;
+        XrayAuth xrayAuth = builder.xrayAuth
+                .or(() -> builder.prop.map(path -> XrayAuth.fromPropertiesFile(path.toAbsolutePath().toString())))
+                .orElseThrow(() -> new IllegalArgumentException("XrayAuth must be provided either as an object or as a properties file path."));
+        this.environments = builder.environments.orElse(Set.of());
+        this.title = builder.title;
+        this.objectMapper = builder.objectMapper;
+        this.xrayStatuses = builder.xrayStatuses;
+        this.slowestTestsToLog = builder.slowestTestsToLog;
+        this.failureCommentRenderer = new FailureCommentRenderer(builder.failureCommentMaxLength, builder.stackTracePackages);
+        this.resultHistory = builder.resultHistoryFile
+                .map(file -> new ResultHistory(file, builder.resultHistoryTimeToLive, Clock.systemUTC()));
+        this.publishLedger = builder.publishLedgerFile
+                .map(file -> new PublishLedger(file, builder.runId));
+        this.executionLookup = builder.executionLookup;
+        this.warmUp = builder.warmUp;
+        this.issueKeyValidator = builder.issueKeyResolver.map(resolver ->
+                new IssueKeyValidator(resolver, builder.issueKeyCacheFile, builder.issueKeyTimeToLive, Clock.systemUTC()));
+        this.quarantine = builder.quarantineFile.map(file -> new PublishOutbox(file, builder.objectMapper));
+        this.executionKeyResolver = builder.executionKeyResolver;
+        this.executionKeyRunId = builder.executionKeyRunId;
+        this.evidenceLimits = new EvidenceLimits(builder.maxEvidenceBytesPerTest, builder.maxEvidenceBytesPerExecution);
+        this.resultIndexed = builder.resultIndex;
+        this.importClient = new XrayImportClient(xrayAuth, builder.xrayReportUrl, builder.objectMapper);
+        ExecutionPublisher.Builder publisher = new ExecutionPublisher.Builder(importClient, builder.objectMapper,
+                tempDirectoryPath).withFieldSupplier(builder.fieldSupplier);
+        builder.infoTemplate.ifPresent(template -> publisher.withInfoTemplate(template, builder.title));
+        builder.runSummaryFile.ifPresent(publisher::withRunSummaryFile);
+        builder.publishBudget.ifPresent(publisher::withPublishDeadline);
+        builder.slowImportThreshold.ifPresent(threshold -> publisher.withCircuitBreaker(builder.circuitBreakerFailures, threshold));
+        builder.outboxFile.ifPresent(publisher::withOutbox);
+        this.publisher = publisher.build();
+        Map<String, RoutedTenant> tenants = new LinkedHashMap<>();
+        builder.tenants.forEach((name, tenant) -> tenants.put(name, new RoutedTenant(tenant, importClient.forTenant(
+                tenant.getXrayAuth(), tenant.getXrayReportUrl().orElse(builder.xrayReportUrl), tenant.getImportsPerSecond()),
+                tenant.getInfoTemplate().map(template -> InfoTemplate.compile(template, builder.objectMapper)))));
+        this.tenants = Collections.unmodifiableMap(tenants);
+        this.tenantRoutes = List.copyOf(builder.tenantRoutes);
+        this.resultAggregator = new ResultAggregator(builder.description, builder.xrayStatuses, tempDirectoryPath,
+                failureCommentRenderer, builder.environmentGrouping, builder.exampleLimit, builder.heapBudget,
+                builder.rerunPolicy, builder.reportAttempts, builder.resultIndex);
+        this.ingestionQueue = builder.ingestionCapacity.map(capacity -> new IngestionQueue<>("xray-ingester", capacity,
+                builder.ingestionBackpressure, s -> ingest(s.results(), s.start(), s.finish(), s.suiteTimed())));
+    }
+    public static class Builder {
+        private static final ObjectMapper defaultObjectMapper = new ObjectMapper();
+        private Optional<XrayAuth> xrayAuth = Optional.empty();
+        private ObjectMapper objectMapper = defaultObjectMapper;
+        private Optional<Path> prop = Optional.empty();
+        private Optional<Set<String>> environments = Optional.empty();
+        private String description;
+        private String title;
+        private Supplier<Map<Object, Object>> fieldSupplier;
+        private Optional<Path> tempDirectory = Optional.empty();
+        private String xrayReportUrl = "https://xray.cloud.getxray.app/api/v2/import/execution/multipart";
+        private List<String> xrayStatuses = List.of("EXECUTING", "FAILED", "BLOCKED", "PASSED", "TODO");
+        private Optional<Path> runSummaryFile = Optional.empty();
+        private int slowestTestsToLog = 10;
+        private int failureCommentMaxLength = 4000;
+        private List<String> stackTracePackages = List.of();
+        private Optional<Path> resultHistoryFile = Optional.empty();
+        private Duration resultHistoryTimeToLive = Duration.ofDays(7);
+        private Optional<Path> publishLedgerFile = Optional.empty();
+        private String runId;
+        private Optional<ExecutionLookup> executionLookup = Optional.empty();
+        private Optional<Long> heapBudget = Optional.empty();
+        private boolean resultIndex = false;
+        private EnvironmentGroupingStrategy environmentGrouping = EnvironmentGroupingStrategy.byCombination();
+        private boolean warmUp = false;
+        private Optional<Duration> publishBudget = Optional.empty();
+        private int circuitBreakerFailures = Integer.MAX_VALUE;
+        private Optional<Duration> slowImportThreshold = Optional.empty();
+        private Optional<Path> outboxFile = Optional.empty();
+        private Optional<Integer> exampleLimit = Optional.empty();
+        private Optional<String> infoTemplate = Optional.empty();
+        private Optional<IssueKeyResolver> issueKeyResolver = Optional.empty();
+        private Path issueKeyCacheFile;
+        private Duration issueKeyTimeToLive;
+        private Optional<Path> quarantineFile = Optional.empty();
+        private Optional<ExecutionKeyResolver> executionKeyResolver = Optional.empty();
+        private String executionKeyRunId;
+        private long maxEvidenceBytesPerTest = 10L << 20;
+        private long maxEvidenceBytesPerExecution = 50L << 20;
+        private RerunPolicy rerunPolicy = RerunPolicy.LAST_WINS;
+        private boolean reportAttempts = false;
+        private Optional<Integer> ingestionCapacity = Optional.empty();
+        private IngestionBackpressure ingestionBackpressure = IngestionBackpressure.BLOCK;
+        private final Map<String, XrayTenant> tenants = new LinkedHashMap<>();
+        private final List<Route> tenantRoutes = new ArrayList<>();
+
+        public XrayTestResultUpdater build() {
+            Preconditions.checkNotNull(fieldSupplier, "fieldSupplier must not be null");
+            Preconditions.checkNotNull(description, "description must not be null");
+            Preconditions.checkNotNull(title, "title must not be null");
+            for (Route route : tenantRoutes) {
+                Preconditions.checkArgument(tenants.containsKey(route.tenant()), "No tenant named %s was added", route.tenant());
+            }
+            this.objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+            return new XrayTestResultUpdater(this);
+        }
+
+        public Builder(String title, String description, Supplier<Map<Object, Object>> fieldSupplier) {
+            Preconditions.checkNotNull(fieldSupplier, "fieldSupplier must not be null");
+            Preconditions.checkNotNull(title, "title must not be null");
+            Preconditions.checkNotNull(description, "description must not be null");
+            this.title = title;
+            this.description = description;
+            this.fieldSupplier = fieldSupplier;
+        }
+
+        public Builder withXrayStatuses(List<String> xrayStatuses) {
+            this.xrayStatuses = xrayStatuses;
+            return this;
+        }
+
+        /**
+         * Sets the multipart import endpoint of the XRAY v2 REST API. Defaults to the XRAY Cloud instance.
+         *
+         * @param xrayReportUrl the URL results are posted to
+         * @return this builder
+         */
+        public Builder withXrayReportUrl(String xrayReportUrl) {
+            Preconditions.checkNotNull(xrayReportUrl, "xrayReportUrl must not be null");
+            this.xrayReportUrl = xrayReportUrl;
+            return this;
+        }
+
+        public Builder withTempDirectory(Path tempDirectory) {
+            this.tempDirectory = Optional.ofNullable(tempDirectory);
+            return this;
+        }
+
+        public Builder withFieldSupplier(Supplier<Map<Object, Object>> fieldSupplier) {
+            Preconditions.checkNotNull(fieldSupplier);
+            this.fieldSupplier = fieldSupplier;
+            return this;
+        }
+
+        public Builder withTitle(String title) {
+            Preconditions.checkNotNull(title);
+            this.title = title;
+            return this;
+        }
+
+        public Builder withDescription(String description) {
+            Preconditions.checkNotNull(description);
+            this.description = description;
+            return this;
+        }
+
+        public Builder withEnvironments(Set<String> environments) {
+            this.environments = Optional.of(environments);
+            return this;
+        }
+
+        public Builder withPropertiesPath(Path path) {
+            this.prop = Optional.of(path);
+            return this;
+        }
+
+        public Builder withObjectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+        public Builder withXrayAuth(XrayAuth xrayAuth) {
+            this.xrayAuth = Optional.ofNullable(xrayAuth);
+            return this;
+        }
+
+        /**
+         * Writes a JSON summary of every publishing attempt to the provided file after each publish.
+         * <p>
+         * The file is overwritten on each publish and contains one {@link PublishResult} per execution.
+         *
+         * @param runSummaryFile the file to write the summary to
+         * @return this builder
+         */
+        public Builder withRunSummaryFile(Path runSummaryFile) {
+            this.runSummaryFile = Optional.ofNullable(runSummaryFile);
+            return this;
+        }
+
+        /**
+         * Sets how many of the slowest tests are logged when publishing. Defaults to 10; 0 disables the log.
+         * Only tests timed with {@link XrayTestResultUpdater#addResults(Collection, Instant, Instant)} are listed.
+         *
+         * @param slowestTestsToLog the number of tests to list
+         * @return this builder
+         */
+        public Builder withSlowestTestsLogged(int slowestTestsToLog) {
+            Preconditions.checkArgument(slowestTestsToLog >= 0, "slowestTestsToLog must not be negative");
+            this.slowestTestsToLog = slowestTestsToLog;
+            return this;
+        }
+
+        /**
+         * Sets the maximum length of the failure text sent in the comment of a test. Defaults to 4000.
+         *
+         * @param failureCommentMaxLength the maximum number of characters
+         * @return this builder
+         */
+        public Builder withFailureCommentMaxLength(int failureCommentMaxLength) {
+            this.failureCommentMaxLength = failureCommentMaxLength;
+            return this;
+        }
+
+        /**
+         * Only keeps stack frames of classes in the given packages when rendering failures.
+         * By default every frame is kept until the maximum comment length is reached.
+         *
+         * @param packagePrefixes package names, e.g. "com.example.steps"
+         * @return this builder
+         */
+        public Builder withStackTracePackages(String... packagePrefixes) {
+            this.stackTracePackages = List.of(packagePrefixes);
+            return this;
+        }
+
+        /**
+         * Turns on delta publishing: only tests whose status or examples changed since they were last
+         * published are uploaded. The last published results are kept in the given file.
+         * <p>
+         * A test is uploaded again regardless of changes once its last publish is older than the time to live.
+         *
+         * @param resultHistoryFile the file the history is kept in. It is created if it does not exist
+         * @param timeToLive        how long an unchanged result may go without being published again
+         * @return this builder
+         */
+        public Builder withResultHistory(Path resultHistoryFile, Duration timeToLive) {
+            Preconditions.checkNotNull(resultHistoryFile, "resultHistoryFile must not be null");
+            Preconditions.checkNotNull(timeToLive, "timeToLive must not be null");
+            this.resultHistoryFile = Optional.of(resultHistoryFile);
+            this.resultHistoryTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Records every execution successfully published during the given run in a local ledger so that
+         * publishing is idempotent. Retrying or replaying a publish skips executions that already landed and
+         * sends changed results for an execution that landed to the same XRAY execution instead of a new one.
+         *
+         * @param publishLedgerFile the file the ledger is kept in. It is created if it does not exist
+         * @param runId             identifies this run, e.g. the CI build number. Executions from different
+         *                          runs are never considered the same
+         * @return this builder
+         */
+        public Builder withPublishLedger(Path publishLedgerFile, String runId) {
+            Preconditions.checkNotNull(publishLedgerFile, "publishLedgerFile must not be null");
+            Preconditions.checkNotNull(runId, "runId must not be null");
+            this.publishLedgerFile = Optional.of(publishLedgerFile);
+            this.runId = runId;
+            return this;
+        }
+
+        /**
+         * Like {@link #withPublishLedger(Path, String)}, and also covers imports that got no answer. An import
+         * that creates an execution is recorded as pending before it is sent and the execution is labelled with
+         * its group in the ledger. If the import times out, XRAY may still have created the execution, so the
+         * next publish looks it up by that label and only creates the execution if it is not found.
+         * <p>
+         * Without a lookup, a pending import is logged and the execution is created again.
+         *
+         * @param publishLedgerFile the file the ledger is kept in. It is created if it does not exist
+         * @param runId             identifies this run, e.g. the CI build number
+         * @param lookup            finds a test execution issue by label, e.g. with a JQL search
+         * @return this builder
+         */
+        public Builder withPublishLedger(Path publishLedgerFile, String runId, ExecutionLookup lookup) {
+            Preconditions.checkNotNull(lookup, "lookup must not be null");
+            this.executionLookup = Optional.of(lookup);
+            return withPublishLedger(publishLedgerFile, runId);
+        }
+
+        /**
+         * Limits the (estimated) memory used to hold results until they are published. Past the budget the
+         * accumulated results are written to sorted files in the temp directory and merged back in when the
+         * payload is built, so memory use does not grow with the size of the suite.
+         *
+         * @param heapBudgetBytes the number of bytes results may use before they are moved to disk
+         * @return this builder
+         */
+        public Builder withHeapBudget(long heapBudgetBytes) {
+            Preconditions.checkArgument(heapBudgetBytes > 0, "heapBudgetBytes must be positive");
+            this.heapBudget = Optional.of(heapBudgetBytes);
+            return this;
+        }
+
+        /**
+         * Indexes the results as they are added, so {@link XrayTestResultUpdater#getResultIndex()} can answer
+         * queries without building the payload. The index keeps a few fields of every result in memory, also
+         * of results moved to disk by {@link #withHeapBudget(long)}, so it is off by default.
+         *
+         * @return this builder
+         */
+        public Builder withResultIndex() {
+            this.resultIndex = true;
+            return this;
+        }
+
+        /**
+         * Sets how results with different environments are grouped into executions. By default every
+         * environment combination gets its own execution.
+         *
+         * @param environmentGrouping the strategy, e.g. {@link EnvironmentGroupingStrategy#factoring} to merge
+         *                            executions of stages while keeping operating systems apart
+         * @return this builder
+         */
+        public Builder withEnvironmentGrouping(EnvironmentGroupingStrategy environmentGrouping) {
+            Preconditions.checkNotNull(environmentGrouping, "environmentGrouping must not be null");
+            this.environmentGrouping = environmentGrouping;
+            return this;
+        }
+
+        /**
+         * Fetches the XRAY token and opens the connection to XRAY in the background as soon as the first
+         * results are added, so publishing after the tests does not wait for DNS, the TLS handshake and
+         * authentication. A failed warm-up is only logged; publishing then connects as usual.
+         *
+         * @param warmUp whether to warm up. Off by default
+         * @return this builder
+         */
+        public Builder withWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        /**
+         * Limits how long a publish may take in total. Each import, and each lookup of issue keys or of
+         * executions in Jira, is given at most the time that is left, and once the budget is used up the
+         * remaining executions are not attempted (see {@link #withOutbox(Path)}).
+         *
+         * @param publishBudget the time budget of each publish
+         * @return this builder
+         */
+        public Builder withPublishDeadline(Duration publishBudget) {
+            Preconditions.checkNotNull(publishBudget, "publishBudget must not be null");
+            Preconditions.checkArgument(!publishBudget.isNegative() && !publishBudget.isZero(), "publishBudget must be positive");
+            this.publishBudget = Optional.of(publishBudget);
+            return this;
+        }
+
+        /**
+         * Stops attempting imports during a publish once several imports in a row failed or were slow, since
+         * XRAY is then most likely degraded. The remaining executions are not attempted (see {@link #withOutbox(Path)}).
+         *
+         * @param consecutiveFailures the number of failed or slow imports in a row that stop the publish
+         * @param slowImportThreshold imports taking longer than this count as failures
+         * @return this builder
+         */
+        public Builder withCircuitBreaker(int consecutiveFailures, Duration slowImportThreshold) {
+            Preconditions.checkArgument(consecutiveFailures > 0, "consecutiveFailures must be positive");
+            Preconditions.checkNotNull(slowImportThreshold, "slowImportThreshold must not be null");
+            this.circuitBreakerFailures = consecutiveFailures;
+            this.slowImportThreshold = Optional.of(slowImportThreshold);
+            return this;
+        }
+
+        /**
+         * Writes executions that were not attempted, or that failed with a response worth retrying (no response,
+         * 429 or 5xx), to an outbox file instead of losing them. They can be sent later with
+         * {@link XrayTestResultUpdater#publishOutbox()}.
+         *
+         * @param outboxFile the file the executions are appended to. It is created if it does not exist
+         * @return this builder
+         */
+        public Builder withOutbox(Path outboxFile) {
+            Preconditions.checkNotNull(outboxFile, "outboxFile must not be null");
+            this.outboxFile = Optional.of(outboxFile);
+            return this;
+        }
+
+        /**
+         * Caps the number of examples sent per test, to keep payloads of large Scenario Outlines small. Examples
+         * that did not pass are always sent; passing examples past both the limit and the last example that did
+         * not pass are left out and counted in the comment of the test instead, so every sent example keeps its
+         * position. By default every example is sent.
+         *
+         * @param maxExamples the number of examples to send per test
+         * @return this builder
+         */
+        public Builder withExampleLimit(int maxExamples) {
+            Preconditions.checkArgument(maxExamples >= 0, "maxExamples must not be negative");
+            this.exampleLimit = Optional.of(maxExamples);
+            return this;
+        }
+
+        /**
+         * Uses a JSON template for the fields of each test execution issue instead of the field supplier, so
+         * that the summary and environments can differ per execution. The template is compiled once and only
+         * the values of each execution are encoded when publishing.
+         * <p>
+         * Placeholders: ${title}, ${summary}, ${description}, ${testPlanKey} and ${testEnvironments}. A
+         * placeholder that makes up a whole JSON string is replaced by the JSON value, e.g.
+         * {@code {"fields": {"summary": "${summary}", "environment": "${testEnvironments}"}}} puts the
+         * environments in an array. Inside a longer string the value is inserted as text.
+         * <p>
+         * Executions routed to an {@link XrayTenant} use the tenant's own template, see
+         * {@link XrayTenant.Builder#withInfoTemplate}, or else its field supplier.
+         *
+         * @param infoTemplate the JSON of the info part of the import
+         * @return this builder
+         * @throws IllegalArgumentException if the template has an unknown placeholder or is not valid JSON
+         */
+        public Builder withInfoTemplate(String infoTemplate) {
+            Preconditions.checkNotNull(infoTemplate, "infoTemplate must not be null");
+            InfoTemplate.compile(infoTemplate, objectMapper);
+            this.infoTemplate = Optional.of(infoTemplate);
+            return this;
+        }
+
+        /**
+         * Checks the test case, test plan and test execution keys before publishing, so that a mistyped key
+         * does not make XRAY reject the whole import. Keys must look like Jira keys (PROJ-123) and must exist
+         * according to the resolver. Results with an invalid key are held back and logged (and written to the
+         * quarantine file, see {@link #withQuarantine(Path)}); the rest are published as usual.
+         * <p>
+         * Keys that exist are cached in the given file, so they are only looked up again once the time to live
+         * has passed. The other keys of a publish are looked up together, in batches. Keys that are not looked
+         * up before the publish deadline (see {@link #withPublishDeadline(Duration)}) are sent as they are.
+         *
+         * @param resolver   looks up which keys exist, e.g. {@link IssueKeyResolver#fromFile(Path)} offline
+         * @param cacheFile  the file the keys known to exist are kept in. It is created if it does not exist
+         * @param timeToLive how long a key is trusted to exist without looking it up again
+         * @return this builder
+         */
+        public Builder withIssueKeyValidation(IssueKeyResolver resolver, Path cacheFile, Duration timeToLive) {
+            Preconditions.checkNotNull(resolver, "resolver must not be null");
+            Preconditions.checkNotNull(cacheFile, "cacheFile must not be null");
+            Preconditions.checkNotNull(timeToLive, "timeToLive must not be null");
+            this.issueKeyResolver = Optional.of(resolver);
+            this.issueKeyCacheFile = cacheFile;
+            this.issueKeyTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Writes results held back by {@link #withIssueKeyValidation} to a file instead of only logging them.
+         * The file has the same format as the outbox (see {@link #withOutbox(Path)}), so once the keys are
+         * fixed in the file it can be sent with {@link XrayTestResultUpdater#publishOutbox()}.
+         *
+         * @param quarantineFile the file the held back executions are appended to. It is created if it does not exist
+         * @return this builder
+         */
+        public Builder withQuarantine(Path quarantineFile) {
+            Preconditions.checkNotNull(quarantineFile, "quarantineFile must not be null");
+            this.quarantineFile = Optional.of(quarantineFile);
+            return this;
+        }
+
+        /**
+         * Adds results to the execution already created in the same run for their test plan and environments,
+         * instead of creating a new execution on every upload. Useful when a run is split into shards or
+         * publishes several times, e.g. with {@link ExecutionKeyResolver#sharedFile(Path, Duration)} shared by
+         * the shards on a host. Results tagged with @xray-test-execution keep going to that execution.
+         *
+         * @param resolver maps the test plan, environments and run to the execution created for them
+         * @param runId    identifies this run, e.g. the CI build number. Executions are never reused across runs
+         * @return this builder
+         */
+        public Builder withExecutionKeyReuse(ExecutionKeyResolver resolver, String runId) {
+            Preconditions.checkNotNull(resolver, "resolver must not be null");
+            Preconditions.checkNotNull(runId, "runId must not be null");
+            this.executionKeyResolver = Optional.of(resolver);
+            this.executionKeyRunId = runId;
+            return this;
+        }
+
+        /**
+         * Limits the evidence attached to results (see {@link XrayTestResultUpdater#EVIDENCE}). Files are
+         * attached in order while they fit; the rest are listed in the comment of the test. Defaults to 10 MiB
+         * per test and 50 MiB per execution.
+         * <p>
+         * Evidence is read and base64 encoded while the request is written, so the limits bound the size of
+         * the requests rather than the memory used.
+         *
+         * @param maxBytesPerTest      the most bytes of files to attach to a single test
+         * @param maxBytesPerExecution the most bytes of files to attach to all the tests of an execution
+         * @return this builder
+         */
+        public Builder withEvidenceLimits(long maxBytesPerTest, long maxBytesPerExecution) {
+            Preconditions.checkArgument(maxBytesPerTest >= 0, "maxBytesPerTest must not be negative");
+            Preconditions.checkArgument(maxBytesPerExecution >= 0, "maxBytesPerExecution must not be negative");
+            this.maxEvidenceBytesPerTest = maxBytesPerTest;
+            this.maxEvidenceBytesPerExecution = maxBytesPerExecution;
+            return this;
+        }
+
+        /**
+         * Decides which result is reported when a scenario is retried, e.g. by a rerun of flaky tests. A result
+         * for the same example of the same feature file replaces the earlier one instead of being added as
+         * another example, so retries neither duplicate examples nor hold more results in memory. Defaults to
+         * {@link RerunPolicy#LAST_WINS}.
+         *
+         * @param rerunPolicy    which attempt of an example is reported
+         * @param reportAttempts whether to list the examples that took more than one attempt in the comment of
+         *                       the test
+         * @return this builder
+         */
+        public Builder withRerunPolicy(RerunPolicy rerunPolicy, boolean reportAttempts) {
+            Preconditions.checkNotNull(rerunPolicy, "rerunPolicy must not be null");
+            this.rerunPolicy = rerunPolicy;
+            this.reportAttempts = reportAttempts;
+            return this;
+        }
+
+        /**
+         * Adds results on a background thread, so the thread running the tests only queues them and returns.
+         * Parsing the tags, positions and step comments of the results and grouping them then no longer adds
+         * to the run time of the tests. Publishing, exporting and reading the payload or index first wait for
+         * the queued results to be added.
+         * <p>
+         * A failure to add results, such as a test case with two test plans, is thrown when publishing instead
+         * of from the test run.
+         *
+         * @param capacity     how many results may be queued before the backpressure applies
+         * @param backpressure whether adding waits for room or drops the results when the queue is full
+         * @return this builder
+         */
+        public Builder withAsyncIngestion(int capacity, IngestionBackpressure backpressure) {
+            Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+            Preconditions.checkNotNull(backpressure, "backpressure must not be null");
+            this.ingestionCapacity = Optional.of(capacity);
+            this.ingestionBackpressure = backpressure;
+            return this;
+        }
+
+        /**
+         * Adds another XRAY project that executions can be routed to with {@link #withTenantRoute}, e.g. that of
+         * another team sharing the test suite. Executions that no route selects are published with the
+         * credentials and fields of this builder.
+         *
+         * @param tenant the project, its credentials and fields
+         * @return this builder
+         */
+        public Builder withTenant(XrayTenant tenant) {
+            Preconditions.checkNotNull(tenant, "tenant must not be null");
+            this.tenants.put(tenant.getName(), tenant);
+            return this;
+        }
+
+        /**
+         * Publishes the executions the route selects to a tenant. Routes are tried in the order they were added
+         * and the first one that matches decides.
+         *
+         * @param route  selects executions by test plan key prefix or tag, see {@link TenantRoute}
+         * @param tenant the name of a tenant added with {@link #withTenant(XrayTenant)}
+         * @return this builder
+         */
+        public Builder withTenantRoute(TenantRoute route, String tenant) {
+            Preconditions.checkNotNull(route, "route must not be null");
+            Preconditions.checkNotNull(tenant, "tenant must not be null");
+            this.tenantRoutes.add(new Route(route, tenant));
+            return this;
+        }
+
+    }
+
+    private void validateTempDirectory(Path tempDirectoryPath) {
+        if (!tempDirectoryPath.toFile().isDirectory()) {
+            throw new IllegalArgumentException(String.format("""
+                    A directory to put temporary files is required to create the multipart
+                    request to the XRAY API. The provided parameter is not a directory:
+                    %s
+                    
+                    To use the operating systems standard temp location, you can use this as a parameter:
+                      Files.createTempDir()
+                    
+                    Be aware that in a CI/CD pipeline this script will need to have write access to this location.
+                    """, tempDirectoryPath.toUri()));
+        }
+        if (!tempDirectoryPath.toFile().canWrite()) {
+            throw new IllegalArgumentException(String.format("""
+                    A directory to put temporary files is required to create the multipart
+                    request to the XRAY API. The provided  directory is not writeable by this program in this environment:
+                    %s
+                    
+                    To use the operating systems standard temp location, you can use this as a parameter:
+                      Files.createTempDir()
+                    
+                    Be aware that in a CI/CD pipeline this script will need to have write access to this location.
+                    """, tempDirectoryPath.toUri()));
+        }
+    }
+
+
+    /**
+     * Called when a Gherkin scenario is converted. Adds a tag for every XRAY column of the Examples row,
+     * e.g. a column XRAY-TEST-CASE with the value PROJ-10 adds the tag @xray-test-case=PROJ-10.
+     *
+     * @param title         The title of the scenario.
+     * @param steps         The steps in the scenario.
+     * @param tags          The tags associated with the scenario.
+     * @param substitutions The substitutions used in the scenario.
+     */
+    @Override
+    public void onScenarioConverted(String title, List<String> steps, Set<String> tags,
+                                    Map<String, String> substitutions) {
+        // Scenarios are converted before their suite runs, so the first conversion is when the first suite starts
+        lastSuiteFinishedAt.compareAndSet(null, Instant.now());
+        examplesTableTagExtractor.addTags(tags, substitutions);
+    }
+
+  /**
+   * Publishes the test execution reports to Xray.
+   * <p>
+   * This will result in multiple calls to the XRAY API.
+   * There will be 1 execution generated per set of environments.
+   * <p>
+   * E.g. if you have 3 tests with the following environments:
+   * #1 DEV, TST
+   * #2 DEV
+   * #3 TST
+   * <p>
+   * there will be 3 executions created by default. They are not consolidated down to 2
+   * executions based on the shared environments because some users of XRAY will specify
+   * operations systems (such as iOS or Android) with the environments. To tell environments
+   * that can safely be factored out and combined with other executions from those that must be
+   * coupled to their original groups of environments, use
+   * {@link Builder#withEnvironmentGrouping(EnvironmentGroupingStrategy)} with
+   * {@link EnvironmentGroupingStrategy#factoring}: #1 is then reported in both a DEV and a TST execution.
+   * <p>
+   * The executions of each test plan are built in parallel. The next executions are then serialized on a
+   * background thread while the previous one is uploaded, at most a couple ahead.
+   *
+   * @return List of PublishResult: the outcome of each attempt to create a test execution
+   */
+  public List<PublishResult> publishReportsToXray() {
+    boolean debugging = false;
+    if (debugging) {
+      System.setProperty("org.apache.commons.logging.Log", "org.apache.commons.logging.impl.SimpleLog");
+      System.setProperty("org.apache.commons.logging.simplelog.showdatetime", "true");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.wire", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.impl.conn", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.impl.client", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.client", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http", "DEBUG");
+    }
+
+    return publish(() -> List.copyOf(resultAggregator.executions()));
+  }
+
+  /**
+   * Publishes all test execution reports to Xray as a single consolidated execution.
+   * <p>
+   * This will result in a single call to the XRAY API, creating one test execution
+   * containing all test results regardless of their original feature file groupings.
+   * This should be used when the execution grouping (e.g., by specific feature file)
+   * is not required in the Xray report, favoring consolidation over segmentation.
+   *
+   * @return List of PublishResult: the outcome of the single attempt to create a test execution
+   */
+  public List<PublishResult> publishConsolidatedReportsToXray() {
+    boolean debugging = false;
+    if (debugging) {
+      System.setProperty("org.apache.commons.logging.Log", "org.apache.commons.logging.impl.SimpleLog");
+      System.setProperty("org.apache.commons.logging.simplelog.showdatetime", "true");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.wire", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.impl.conn", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.impl.client", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.client", "DEBUG");
+      System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http", "DEBUG");
+    }
+
+    return publish(this::consolidatedExecution);
+  }
+
+  /**
+   * @return every test result in one execution, with the test plan, environments and execution key of the first
+   * execution, or no execution if there are no results
+   */
+  private List<XrayTestExecution> consolidatedExecution() {
+    Collection<XrayTestExecution> allExecutions = resultAggregator.executions();
+    if (allExecutions.isEmpty()) {
+      logger.info("No test results found to publish to Xray. Skipping publishing.");
+      return List.of();
+    }
+    XrayTestExecution masterExecution = allExecutions.iterator().next();
+    return List.of(new XrayTestExecution(
+      masterExecution.testExecutionKey(),
+      masterExecution.info(),
+      resultAggregator.consolidatedTests()
+    ));
+  }
+
+  /**
+   * Publishes the executions with the {@link ExecutionPublisher}, adding what this updater is configured with
+   * through {@link PublishHooks}, and clears the results.
+   */
+  private List<PublishResult> publish(Supplier<List<XrayTestExecution>> executions) {
+    awaitIngested();
+    PublishCircuitBreaker circuitBreaker = publisher.newCircuitBreaker();
+
+    try {
+      logSlowestTests();
+      List<XrayTestExecution> fullExecutionResults = executions.get();
+      // Keys are validated in one batch for every execution, so building completes before serializing starts
+      Set<String> invalidKeys = findInvalidKeys(fullExecutionResults, circuitBreaker);
+      List<PublishResult> publishResults = publisher.publish(fullExecutionResults,
+        new PublishHooks(invalidKeys, circuitBreaker), circuitBreaker);
+      clearResults();
+      tempDirectory.toFile().deleteOnExit();
+      return publishResults;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      resultHistory.ifPresent(ResultHistory::save);
+    }
+  }
+
+  /**
+   * Adds issue key validation, delta mode, the publish ledger, execution key reuse and tenant routing to a publish.
+   */
+  private final class PublishHooks implements ExecutionPublisher.Hooks {
+    private final Set<String> invalidKeys;
+    private final PublishCircuitBreaker circuitBreaker;
+
+    PublishHooks(Set<String> invalidKeys, PublishCircuitBreaker circuitBreaker) {
+      this.invalidKeys = invalidKeys;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Optional<ExecutionPublisher.PreparedExecution> prepare(XrayTestExecution execution,
+                                                                  String sharedInfoBody) throws IOException {
+      return XrayTestResultUpdater.this.prepare(execution, invalidKeys, sharedInfoBody, circuitBreaker);
+    }
+
+    @Override
+    public void discard(ExecutionPublisher.PreparedExecution prepared) {
+      releaseClaimQuietly(prepared.execution());
+    }
+
+    @Override
+    public void beforeImport(XrayTestExecution execution) {
+      recordPending(execution);
+    }
+
+    @Override
+    public void afterImport(XrayTestExecution execution, PublishResult publishResult) throws IOException {
+      recordPublished(execution, publishResult);
+    }
+
+    @Override
+    public String tenantFor(XrayTestExecution execution) {
+      return tenantName(execution);
+    }
+
+    @Override
+    public XrayImportClient clientFor(XrayTestExecution execution) {
+      return XrayTestResultUpdater.this.clientFor(execution.info().testPlanKey());
+    }
+  }
+
+  /**
+   * Applies the evidence limits, issue key validation, delta mode, publish ledger and execution key reuse to an
+   * execution and serializes what is left to send.
+   *
+   * @return the execution ready to be sent, or empty if there is nothing to send
+   */
+  private Optional<ExecutionPublisher.PreparedExecution> prepare(XrayTestExecution execution, Set<String> invalidKeys,
+                                              String sharedInfoBody, PublishCircuitBreaker circuitBreaker)
+    throws IOException {
+    Optional<XrayTestExecution> changedResults = withoutInvalidKeys(evidenceLimits.apply(execution), invalidKeys,
+      sharedInfoBody)
+      .flatMap(this::onlyChangedTests)
+      .flatMap(e -> notYetPublished(e, circuitBreaker));
+    if (changedResults.isEmpty()) {
+      return Optional.empty();
+    }
+    XrayTestExecution executionResult = withReusedExecutionKey(changedResults.get());
+    Path results = null;
+    try {
+      results = publisher.writeResults(executionResult);
+      return Optional.of(new ExecutionPublisher.PreparedExecution(executionResult, results,
+        withLedgerLabel(executionResult, infoBody(executionResult, sharedInfoBody))));
+    } catch (IOException | RuntimeException e) {
+      if (results != null) {
+        ExecutionPublisher.deleteQuietly(results);
+      }
+      releaseClaimQuietly(executionResult);
+      throw e;
+    }
+  }
+
+  /**
+   * With execution key reuse, gives up the claim this process took on the group of an execution it will not
+   * create after all, so other processes do not wait for the claim to time out.
+   */
+  private void releaseClaimQuietly(XrayTestExecution execution) {
+    if (executionKeyResolver.isEmpty() || execution.testExecutionKey() != null) {
+      return;
+    }
+    try {
+      executionKeyResolver.get().release(execution.info().testPlanKey(), execution.info().testEnvironments(),
+        executionKeyRunId);
+    } catch (IOException e) {
+      logger.warning(String.format("Could not release the claim on test plan %s and environments %s: %s",
+        execution.info().testPlanKey(), execution.info().testEnvironments(), e.getMessage()));
+    }
+  }
+
+  /**
+   * With issue key validation, looks up every key of the executions at once. Keys not looked up before the
+   * publish deadline are taken as valid.
+   *
+   * @return the keys that are malformed or do not exist
+   */
+  private Set<String> findInvalidKeys(Collection<XrayTestExecution> executions,
+                                      PublishCircuitBreaker circuitBreaker) {
+    if (issueKeyValidator.isEmpty()) {
+      return Set.of();
+    }
+    Set<String> keys = new HashSet<>();
+    for (XrayTestExecution execution : executions) {
+      Optional.ofNullable(execution.testExecutionKey()).ifPresent(keys::add);
+      Optional.ofNullable(execution.info().testPlanKey()).ifPresent(keys::add);
+      execution.tests().forEach(t -> keys.add(t.testKey()));
+    }
+    return issueKeyValidator.get().findInvalid(keys, circuitBreaker);
+  }
+
+  /**
+   * Holds back the tests with an invalid key, or the whole execution if its test plan or execution key is
+   * invalid, so that they do not make XRAY reject the rest.
+   *
+   * @return the execution with only the tests that can be sent, or empty if there are none
+   */
+  private Optional<XrayTestExecution> withoutInvalidKeys(XrayTestExecution execution, Set<String> invalidKeys,
+                                                         String sharedInfoBody) throws IOException {
+    if (invalidKeys.isEmpty()) {
+      return Optional.of(execution);
+    }
+    for (String key : Arrays.asList(execution.info().testPlanKey(), execution.testExecutionKey())) {
+      if (key != null && invalidKeys.contains(key)) {
+        quarantine(execution, String.format("%s is not a valid issue key", key), sharedInfoBody);
+        return Optional.empty();
+      }
+    }
+    Map<Boolean, Set<XrayTestResult>> testsByValidity = execution.tests().stream()
+      .collect(Collectors.partitioningBy(t -> !invalidKeys.contains(t.testKey()), Collectors.toSet()));
+    Set<XrayTestResult> invalidTests = testsByValidity.get(false);
+    if (invalidTests.isEmpty()) {
+      return Optional.of(execution);
+    }
+    quarantine(new XrayTestExecution(execution.testExecutionKey(), execution.info(), invalidTests),
+      String.format("%s are not valid issue keys",
+        invalidTests.stream().map(XrayTestResult::testKey).sorted().collect(Collectors.joining(", "))),
+      sharedInfoBody);
+    Set<XrayTestResult> validTests = testsByValidity.get(true);
+    return validTests.isEmpty()
+      ? Optional.empty()
+      : Optional.of(new XrayTestExecution(execution.testExecutionKey(), execution.info(), validTests));
+  }
+
+  private void quarantine(XrayTestExecution execution, String reason, String sharedInfoBody) throws IOException {
+    logger.warning(String.format("Holding back %d results for test plan %s and environments %s: %s%s",
+      execution.tests().size(), execution.info().testPlanKey(), execution.info().testEnvironments(), reason,
+      quarantine.map(q -> String.format("; they were written to %s", q.getFile().toAbsolutePath())).orElse("")));
+    if (quarantine.isPresent()) {
+      // The results are streamed to a file like any payload, so their evidence is not held in memory
+      Path results = publisher.writeResults(execution);
+      try {
+        quarantine.get().append(new PublishOutbox.Entry(tenantName(execution), execution.info().testPlanKey(),
+          execution.info().testEnvironments(), execution.testExecutionKey(),
+          objectMapper.readTree(infoBody(execution, sharedInfoBody)), results));
+      } finally {
+        Files.deleteIfExists(results);
+      }
+    }
+  }
+
+  /**
+   * In delta mode, removes the tests whose result is the same as the one last published.
+   *
+   * @return the execution with only the tests that need to be sent, or empty if there are none
+   */
+  private Optional<XrayTestExecution> onlyChangedTests(XrayTestExecution execution) {
+    if (resultHistory.isEmpty()) {
+      return Optional.of(execution);
+    }
+    ResultHistory history = resultHistory.get();
+    Set<XrayTestResult> changedTests = execution.tests().stream()
+      .filter(t -> history.hasChanged(execution.info().testPlanKey(), execution.info().testEnvironments(), t))
+      .collect(Collectors.toSet());
+    if (changedTests.isEmpty()) {
+      logger.info(String.format("Skipping execution for test plan %s and environments %s: no results changed since the last publish",
+        execution.info().testPlanKey(), execution.info().testEnvironments()));
+      return Optional.empty();
+    }
+    if (changedTests.size() < execution.tests().size()) {
+      logger.info(String.format("Publishing %d of %d results for test plan %s and environments %s; the rest are unchanged",
+        changedTests.size(), execution.tests().size(), execution.info().testPlanKey(), execution.info().testEnvironments()));
+    }
+    return Optional.of(new XrayTestExecution(execution.testExecutionKey(), execution.info(), changedTests));
+  }
+
+  /**
+   * With a publish ledger, skips executions whose exact content was already published in this run and
+   * points executions that were published before with different content at the execution XRAY created then.
+   *
+   * @return the execution to send, or empty if it already landed
+   */
+  private Optional<XrayTestExecution> notYetPublished(XrayTestExecution execution,
+                                                      PublishCircuitBreaker circuitBreaker) {
+    if (publishLedger.isEmpty()) {
+      return Optional.of(execution);
+    }
+    Optional<PublishLedger.Entry> previous = publishLedger.get().find(execution);
+    if (previous.isPresent() && previous.get().pending()) {
+      previous = findPendingExecution(execution, circuitBreaker);
+    }
+    if (previous.isEmpty()) {
+      return Optional.of(execution);
+    }
+    if (previous.get().fingerprint().equals(PublishLedger.fingerprint(execution))) {
+      logger.info(String.format("Skipping execution for test plan %s and environments %s: it was already published as %s",
+        execution.info().testPlanKey(), execution.info().testEnvironments(), previous.get().testExecutionKey()));
+      return Optional.empty();
+    }
+    if (execution.testExecutionKey() == null && !previous.get().testExecutionKey().isEmpty()) {
+      return Optional.of(new XrayTestExecution(previous.get().testExecutionKey(), execution.info(), execution.tests()));
+    }
+    return Optional.of(execution);
+  }
+
+  /**
+   * Looks up the execution of an import that got no answer, since XRAY may have created it anyway. The lookup
+   * is given up when the publish deadline passes.
+   *
+   * @return the ledger entry of the execution if it was found, or empty if it has to be created
+   */
+  private Optional<PublishLedger.Entry> findPendingExecution(XrayTestExecution execution,
+                                                             PublishCircuitBreaker circuitBreaker) {
+    if (executionLookup.isEmpty()) {
+      logger.warning(String.format("The last import for test plan %s and environments %s got no answer and may have created an execution; creating it again",
+        execution.info().testPlanKey(), execution.info().testEnvironments()));
+      return Optional.empty();
+    }
+    String label = publishLedger.get().label(execution);
+    Optional<String> key;
+    try {
+      Optional<Optional<String>> found = circuitBreaker.withinDeadline(() -> executionLookup.get().findByLabel(label));
+      if (found.isEmpty()) {
+        logger.warning(String.format("The publish deadline passed while looking up the execution of the last import for test plan %s and environments %s; creating it again",
+          execution.info().testPlanKey(), execution.info().testEnvironments()));
+        return Optional.empty();
+      }
+      key = found.get();
+    } catch (IOException e) {
+      logger.warning(String.format("Could not look up the execution of the last import for test plan %s and environments %s; creating it again: %s",
+        execution.info().testPlanKey(), execution.info().testEnvironments(), e.getMessage()));
+      return Optional.empty();
+    }
+    if (key.isEmpty()) {
+      return Optional.empty();
+    }
+    publishLedger.get().recordFound(execution, key.get());
+    return publishLedger.get().find(execution);
+  }
+
+  /**
+   * With a publish ledger, records an import that creates an execution before it is sent.
+   */
+  private void recordPending(XrayTestExecution execution) {
+    if (execution.testExecutionKey() == null) {
+      publishLedger.ifPresent(l -> l.recordPending(execution));
+    }
+  }
+
+  /**
+   * With an execution lookup, labels an execution that is created with its group in the publish ledger.
+   */
+  private String withLedgerLabel(XrayTestExecution execution, String infoBody) throws IOException {
+    if (executionLookup.isEmpty() || publishLedger.isEmpty() || execution.testExecutionKey() != null) {
+      return infoBody;
+    }
+    ObjectNode info = (ObjectNode) objectMapper.readTree(infoBody);
+    ObjectNode fields = info.get("fields") instanceof ObjectNode existing ? existing : info.putObject("fields");
+    ArrayNode labels = fields.get("labels") instanceof ArrayNode existing ? existing : fields.putArray("labels");
+    labels.add(publishLedger.get().label(execution));
+    return objectMapper.writeValueAsString(info);
+  }
+
+  /**
+   * With execution key reuse, sends an execution without a key to the one already created for its test
+   * plan and environments in this run. If there is none yet, this process claims the group and creates it.
+   */
+  private XrayTestExecution withReusedExecutionKey(XrayTestExecution execution) throws IOException {
+    if (executionKeyResolver.isEmpty() || execution.testExecutionKey() != null) {
+      return execution;
+    }
+    return executionKeyResolver.get()
+      .find(execution.info().testPlanKey(), execution.info().testEnvironments(), executionKeyRunId)
+      .map(key -> new XrayTestExecution(key, execution.info(), execution.tests()))
+      .orElse(execution);
+  }
+
+  private void recordPublished(XrayTestExecution execution, PublishResult publishResult) throws IOException {
+    if (executionKeyResolver.isPresent() && execution.testExecutionKey() == null) {
+      // This process claimed the group in withReusedExecutionKey
+      if (publishResult.isSuccessful() && publishResult.testExecutionKey() != null) {
+        executionKeyResolver.get().record(execution.info().testPlanKey(), execution.info().testEnvironments(),
+          executionKeyRunId, publishResult.testExecutionKey());
+      } else {
+        executionKeyResolver.get().release(execution.info().testPlanKey(), execution.info().testEnvironments(),
+          executionKeyRunId);
+      }
+    }
+    if (publishResult.isSuccessful()) {
+      resultHistory.ifPresent(h -> h.recordPublished(execution.info().testPlanKey(), execution.info().testEnvironments(),
+        execution.tests()));
+      publishLedger.ifPresent(l -> l.recordPublished(execution, publishResult.testExecutionKey()));
+    }
+  }
+
+  /**
+   * @param sharedInfoBody the serialized field supplier, if it was already serialized for this publish
+   * @return the info part for the execution: the rendered template, or else the fields of the field supplier
+   */
+  private String infoBody(XrayTestExecution execution, String sharedInfoBody) throws IOException {
+    Optional<RoutedTenant> tenant = tenantFor(execution.info().testPlanKey());
+    if (tenant.isPresent() && tenant.get().infoTemplate().isPresent()) {
+      return tenant.get().infoTemplate().get().render(execution, title);
+    }
+    if (tenant.isPresent()) {
+      return objectMapper.writeValueAsString(tenant.get().tenant().getFieldSupplier().get());
+    }
+    return publisher.infoBody(execution, sharedInfoBody);
+  }
+
+  /**
+   * @return the name of the tenant the execution is routed to, or null for the default project
+   */
+  private String tenantName(XrayTestExecution execution) {
+    return tenantFor(execution.info().testPlanKey()).map(t -> t.tenant().getName()).orElse(null);
+  }
+
+  /**
+   * @return the tenant the first matching route selects for the test plan, or empty for the default project
+   */
+  private Optional<RoutedTenant> tenantFor(String testPlanKey) {
+    Set<String> tags = tagsByTestPlan.getOrDefault(testPlanKey, Set.of());
+    return tenantRoutes.stream()
+      .filter(r -> r.route().matches(testPlanKey, tags))
+      .findFirst()
+      .map(r -> tenants.get(r.tenant()));
+  }
+
+  /**
+   * @return the client of the tenant the test plan is routed to, or else that of the default project
+   */
+  private XrayImportClient clientFor(String testPlanKey) {
+    return tenantFor(testPlanKey).map(RoutedTenant::importClient).orElse(importClient);
+  }
+
+  /**
+   * Sends the executions in the outbox (see {@link Builder#withOutbox(Path)}) to XRAY. Executions that are
+   * still worth retrying stay in the outbox; the rest are removed. The deadline and circuit breaker apply as
+   * they do to a regular publish.
+   * <p>
+   * The result history and publish ledger are not updated, since only the serialized payload is kept in
+   * the outbox. Executions that were routed to a tenant are sent to the tenant they were spooled for, which must
+   * still be added to this updater; otherwise they stay in the outbox.
+   *
+   * @return List of PublishResult: the outcome for each execution in the outbox
+   */
+  public List<PublishResult> publishOutbox() {
+    return publisher.publishOutbox(name -> Optional.ofNullable(tenants.get(name)).map(RoutedTenant::importClient));
+  }
+
+  private void startWarmUp() {
+    if (warmUp) {
+      importClient.warmUp();
+      tenants.values().forEach(t -> t.importClient().warmUp());
+    }
+  }
+
+  /**
+   * Logs the tests that took the longest so that regressions in run time can be spotted from the publish log.
+   * <p>
+   * PDSL does not time single tests, so only tests timed with {@link #addResults(Collection, Instant, Instant)}
+   * are ranked; the window of a suite added with {@link #addResults(Collection)} would rank suites, not tests.
+   * Each window a test ran in is counted once, however many permutations of the test it holds.
+   */
+  private void logSlowestTests() {
+    if (slowestTestsToLog == 0) {
+      return;
+    }
+    Map<String, Set<TimeWindow>> windows = new HashMap<>();
+    resultAggregator.forEach((source, item) -> {
+      if (item.suiteTimed()) {
+        return;
+      }
+      windows.computeIfAbsent("%s (%s)".formatted(item.testKey(), source.getPath()), (k) -> new HashSet<>())
+        .add(new TimeWindow(item.start(), item.finish()));
+    });
+    Map<String, Duration> durations = new HashMap<>();
+    windows.forEach((test, testWindows) -> durations.put(test, testWindows.stream()
+      .map(TimeWindow::duration)
+      .reduce(Duration.ZERO, Duration::plus)));
+    // Keep only the slowest N in a min-heap rather than sorting everything
+    PriorityQueue<Map.Entry<String, Duration>> slowest = new PriorityQueue<>(Map.Entry.comparingByValue());
+    for (Map.Entry<String, Duration> entry : durations.entrySet()) {
+      slowest.add(entry);
+      if (slowest.size() > slowestTestsToLog) {
+        slowest.poll();
+      }
+    }
+    if (slowest.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<String, Duration>> sorted = new ArrayList<>(slowest);
+    sorted.sort(Map.Entry.<String, Duration>comparingByValue().reversed());
+    StringBuilder message = new StringBuilder(String.format(
+      "Slowest %d tests:%n", sorted.size()));
+    sorted.forEach(e -> message.append(String.format("  %8d ms  %s%n", e.getValue().toMillis(), e.getKey())));
+    logger.info(message.toString());
+  }
+
+    /**
+     * Adds test results to the internal map for later publishing to Xray.
+     * <p>
+     * PDSL only notifies observers once a suite has finished, so the suite is considered to have started
+     * when the previous results were added (for the first suite, when its first scenario was converted, if
+     * any) and to have finished now. That window only dates the execution: the tests themselves are sent
+     * without a start and finish, and are not listed among the slowest tests. Use
+     * {@link #addResults(Collection, Instant, Instant)} with the results of single tests to time them.
+     *
+     * @param results The collection of test results.
+     */
+    public void addResults(Collection<TestResult> results) {
+        Instant finish = Instant.now();
+        // Suites added by several threads each get the time since the one before them, never the same window
+        Instant start = lastSuiteFinishedAt.getAndSet(finish);
+        submit(results, start, finish, true);
+    }
+
+    /**
+     * Adds test results that ran in a known time window to the internal map for later publishing to Xray.
+     * The window is sent as the start and finish of each of the tests, so time single tests with it.
+     *
+     * @param results The collection of test results.
+     * @param start   when the tests started
+     * @param finish  when the tests finished
+     */
+    public void addResults(Collection<TestResult> results, Instant start, Instant finish) {
+        submit(results, start, finish, false);
+    }
+
+    private void submit(Collection<TestResult> results, Instant start, Instant finish, boolean suiteTimed) {
+        if (ingestionQueue.isPresent()) {
+            // The caller may reuse the collection once this returns
+            ingestionQueue.get().submit(new Submission(List.copyOf(results), start, finish, suiteTimed), results.size());
+        } else {
+            ingest(results, start, finish, suiteTimed);
+        }
+    }
+
+    /**
+     * Waits for the results queued in asynchronous ingestion mode to be added.
+     *
+     * @throws RuntimeException the first failure to add queued results
+     */
+    private void awaitIngested() {
+        ingestionQueue.ifPresent(IngestionQueue::awaitIdle);
+    }
+
+    private void ingest(Collection<TestResult> results, Instant start, Instant finish, boolean suiteTimed) {
+        startWarmUp();
+        for (TestResult result : results) {
+            TestCase testCase = result.getTestCase();
+            if (testCase instanceof TaggedTestCase taggedTestCase) {
+                Set<String> testPlanTags = new HashSet<>(extractTags(taggedTestCase.getTags(), XrayTestTag.PLAN));
+                verifyTestItemSize(testPlanTags, testCase, taggedTestCase,
+                        "Only one test plan can be associated with a test case!");
+                Set<String> testExecutionTags = new HashSet<>(extractTags(taggedTestCase.getTags(), XrayTestTag.EXECUTION));
+                verifyTestItemSize(testExecutionTags, testCase, taggedTestCase,
+                        "Only one test execution can be associated with a test case!");
+
+                Set<String> envTags = extractTags(taggedTestCase.getTags(), XrayTestTag.ENV).stream()
+                        .map(s -> Arrays.asList(s.split(",")))
+                        .flatMap(Collection::stream)
+                        .collect(Collectors.toUnmodifiableSet());
+
+                Collection<String> caseTags = extractTags(taggedTestCase.getTags(), XrayTestTag.CASE);
+                // Render the failure once per result; only the (shared) text is retained, not the Throwable
+                String failureComment = result.getFailureReason().map(failureCommentRenderer::render).orElse(null);
+                List<Path> evidence = StepStatus.PASSED.name().equals(result.getStatus().toString())
+                        ? List.of()
+                        : evidenceFiles(testCase.getMetadata().get(EVIDENCE));
+
+                List<TestPlan.XrayTestCase> testCases = caseTags.stream()
+                        .map(tc -> new TestPlan.XrayTestCase(tc, envTags, testCase.getOriginalSource()))
+                        .toList();
+                TestPlan testPlan = new TestPlan(testPlanTags.stream().findFirst().orElse(null), testCases);
+                if (!tenantRoutes.isEmpty()) {
+                    tagsByTestPlan.computeIfAbsent(testPlan.key, (k) -> new HashSet<>()).addAll(taggedTestCase.getTags());
+                }
+                Set<TestItem> testItems = caseTags.stream()
+                        .map(t -> new TestItem(
+                                testCase.getTestTitle(),
+                                t,
+                                result.getStatus().toString(),
+                                testPlan.key,
+                                testExecutionTags.stream().findFirst().orElse(null),
+                                envTags.isEmpty() ? environments : envTags,
+                                testCase.getUnfilteredPhraseBody(),
+                                failureComment,
+                                result.getFailingPhrase().isPresent() ? result.getFailingPhrase().get().getPrefilteredIndex() : null,
+                                start,
+                                finish,
+                                suiteTimed,
+                                evidence
+                        ))
+                        .collect(Collectors.toSet());
+                testItems.forEach(testItem -> resultAggregator.add(testCase.getOriginalSource(), testItem));
+
+                // Extract step-level annotations from TestCase.STEP_COMMENTS
+                @SuppressWarnings("unchecked")
+                Map<Integer, ?> rawStepComments = (Map<Integer, ?>) testCase.getMetadata().get(TestCase.STEP_COMMENTS);
+                processStepComments(rawStepComments, testCase, result, testPlan, testExecutionTags, envTags, start, finish,
+                        suiteTimed, failureComment, evidence);
+            }
+        }
+    }
+
+    /**
+     * Writes every result added so far to a file instead of publishing it, e.g. so that a separate uploader
+     * can publish the results of several test runs with {@link #importResults(Path)}. The results are kept.
+     *
+     * @param file the file to write. It is replaced if it exists
+     */
+    public void exportResults(Path file) {
+        awaitIngested();
+        resultAggregator.exportResults(file);
+    }
+
+    /**
+     * Adds the results in a file written by {@link #exportResults(Path)}, as if they had been added to this
+     * updater directly.
+     *
+     * @param file the exported results
+     * @throws IllegalArgumentException if the file does not contain exported results
+     */
+    public void importResults(Path file) {
+        awaitIngested();
+        resultAggregator.importResults(file);
+    }
+
+    /**
+     * @param value the {@link #EVIDENCE} metadata of a test case
+     * @return the absolute paths of the evidence files
+     */
+    private static List<Path> evidenceFiles(Object value) {
+        if (value == null) {
+            return List.of();
+        }
+        Collection<?> values = value instanceof Collection<?> collection ? collection : List.of(value);
+        List<Path> files = new ArrayList<>();
+        for (Object file : values) {
+            if (file instanceof Path path) {
+                files.add(path.toAbsolutePath());
+            } else if (file instanceof File f) {
+                files.add(f.toPath().toAbsolutePath());
+            } else if (file instanceof String name) {
+                files.add(Path.of(name).toAbsolutePath());
+            } else if (file != null) {
+                throw new IllegalArgumentException(String.format("%s must be a Path, File or String, or a collection of them, but was %s",
+                        EVIDENCE, file.getClass().getName()));
+            }
+        }
+        return files;
+    }
+
+    private void verifyTestItemSize(Set<String> testItems, TestCase testCase, TaggedTestCase taggedTestCase,
+                                    String message) {
+        if (testItems.size() > 1) {
+            throw new IllegalArgumentException(String.format("""
+                     %s
+                     Problem Test-
+                     %s
+                     %s
+                     
+                     Tags: %s
+                     
+                     """, message, testCase.getOriginalSource(), testCase.getTestTitle(), taggedTestCase.getTags()));
+        }
+    }
+
+    private void clearResults() {
+        resultAggregator.clear();
+        tagsByTestPlan.clear();
+    }
+
+    private void processStepComments(Map<Integer, ?> rawStepComments, TestCase testCase, TestResult result,
+                                     TestPlan testPlan, Set<String> testExecutionTags, Set<String> envTags,
+                                     Instant start, Instant finish, boolean suiteTimed,
+                                     String failureComment, List<Path> evidence) {
+        List<String> stepDescriptions = testCase.getUnfilteredPhraseBody();
+        StepSegments stepSegments = StepSegments.of(rawStepComments, stepDescriptions.size());
+        if (stepSegments.isEmpty()) {
+            return;
+        }
+        Integer failingIdx = result.getFailingPhrase().isPresent() ? result.getFailingPhrase().get().getPrefilteredIndex() : null;
+        List<StepStatus> stepStatuses = stepSegments.statuses(failingIdx);
+
+        Map<String, TestItem> uniqueStepTestItems = new LinkedHashMap<>();
+        for (int i = 0; i < stepSegments.segments().size(); i++) {
+            StepSegments.Segment segment = stepSegments.segments().get(i);
+            StepStatus stepStatus = stepStatuses.get(i);
+            TestItem stepTestItem = new TestItem(
+                    testCase.getTestTitle(),
+                    segment.testKey(),
+                    stepStatus.name(),
+                    testPlan.key,
+                    testExecutionTags.stream().findFirst().orElse(null),
+                    envTags.isEmpty() ? environments : envTags,
+                    stepDescriptions.subList(segment.start(), segment.end()),
+                    stepStatus == StepStatus.FAILED ? failureComment : null,
+                    failingIdx,
+                    start,
+                    finish,
+                    suiteTimed,
+                    stepStatus == StepStatus.FAILED ? evidence : List.of()
+            );
+            uniqueStepTestItems.merge(segment.testKey(), stepTestItem, this::mergeStepTestItems);
+        }
+
+        for (TestItem stepTestItem : uniqueStepTestItems.values()) {
+            resultAggregator.add(testCase.getOriginalSource(), stepTestItem);
+        }
+    }
+
+    private TestItem mergeStepTestItems(TestItem existing, TestItem incoming) {
+        int existingPriority = xrayStatuses.indexOf(existing.status());
+        int incomingPriority = xrayStatuses.indexOf(incoming.status());
+        // Smaller index in xrayStatuses means more significant status (e.g. EXECUTING=0, FAILED=1, etc.)
+        if (incomingPriority >= 0 && (existingPriority < 0 || incomingPriority < existingPriority)) {
+            return incoming;
+        }
+        return existing;
+    }
+
+    private static Collection<String> extractTags(Collection<String> tags, XrayTestTag xrayTag) {
+        return tags.stream()
+                .map(tag -> extractTagValue(tag, xrayTag))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .map(Object::toString)
+                .collect(Collectors.toSet());
+    }
+
+    private static Optional<String> extractTagValue(String rawText, XrayTestTag xrayTag) {
+        if (rawText != null && rawText.startsWith(xrayTag.getTagValue())) {
+            String[] split = rawText.split(xrayTag.getTagValue(), 2);
+            if (split.length == 2) {
+                return Optional.of(split[1]);
+            } else {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Queries the results added so far without building the payload, e.g. to fail the build when a test of
+     * a plan failed:
+     * {@code updater.getResultIndex().contains(ResultIndex.Query.all().withTestPlan("PROJ-1").withStatus("FAILED"))}.
+     *
+     * The index is safe to query while results are still being added.
+     *
+     * @return the results indexed by test plan, environments, test key, status and source file
+     * @throws IllegalStateException if the results are not indexed, see {@link Builder#withResultIndex()}
+     */
+    public ResultIndex getResultIndex() {
+        Preconditions.checkState(resultIndexed, "No result index was configured, see Builder#withResultIndex");
+        awaitIngested();
+        return resultAggregator.index();
+    }
+
+    public Collection<XrayTestExecution> getXrayPayload() {
+        awaitIngested();
+        return resultAggregator.executions();
+    }
+
+    // Visible for testing
+    protected List<TestItem> getTestItemsForTestPlan(String testPlanKey) {
+        awaitIngested();
+        return resultAggregator.testItems(testPlanKey);
+    }
+
+    @Override
+    public void onAfterTestSuite(Collection<? extends TestCase> testCases, ParseTreeListener listener,
+                                 MetadataTestRunResults results, String context) {
+        addResults(results.getTestResults());
+    }
+
+    @Override
+    public void onAfterTestSuite(Collection<? extends SharedTestCase> testCases,
+                                 MetadataTestRunResults results, String context) {
+        addResults(results.getTestResults());
+    }
+
+    @Override
+    public void onAfterTestSuite(Collection<? extends TestCase> testCases, ParseTreeVisitor<?> visitor,
+                                 MetadataTestRunResults results, String context) {
+        addResults(results.getTestResults());
+    }
+}
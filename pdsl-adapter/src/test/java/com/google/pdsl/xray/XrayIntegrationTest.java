@@ -2,6 +2,7 @@ package com.google.pdsl.xray;
 
 import com.google.pdsl.xray.core.XrayAuth;
 import com.google.pdsl.xray.core.XrayTestResultUpdater;
+import com.google.pdsl.xray.models.PublishResult;
 import com.pdsl.executors.DefaultPolymorphicDslTestExecutor;
 import com.pdsl.gherkin.DefaultGherkinTestSpecificationFactory;
 import com.pdsl.gherkin.DefaultGherkinTestSpecificationFactoryGenerator;
@@ -12,7 +13,6 @@ import com.pdsl.grammars.AllGrammarsParserBaseListener;
 import com.pdsl.specifications.FilteredPhrase;
 import com.pdsl.transformers.PolymorphicDslPhraseFilter;
 import org.antlr.v4.runtime.tree.ParseTreeListener;
-import org.apache.http.HttpResponse;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.TestTemplate;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -131,7 +131,7 @@ public class XrayIntegrationTest {
     public static void publishReportsToXray() {
         // Validation: Check if the updater has created a valid Xray payload.
         assertNotNull(updater.getXrayPayload(), "Xray payload is null.");
-        List<HttpResponse> responses = updater.publishReportsToXray();
+        List<PublishResult> responses = updater.publishReportsToXray();
         assertFalse(responses.isEmpty());
     }
 
@@ -0,0 +1,150 @@
+package com.google.pdsl.xray;
+
+import com.google.pdsl.xray.core.XrayAuth;
+import com.google.pdsl.xray.core.XrayTestResultUpdater;
+import com.google.pdsl.xray.fake.FakeXrayServer;
+import com.google.pdsl.xray.models.PublishResult;
+import com.pdsl.reports.TestResult;
+import com.pdsl.reports.proto.TechnicalReportData;
+import com.pdsl.testcases.TaggedTestCase;
+import com.pdsl.testcases.TestCase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Drives {@link XrayTestResultUpdater} with large synthetic runs against a {@link FakeXrayServer} and reports
+ * ingestion and publishing throughput along with the p50/p99 latency of each execution import.
+ * <p>
+ * These tests are tagged "load" and only run with the load-test profile: {@code mvn test -Pload-test}
+ */
+@Tag("load")
+public class XrayPublishLoadTest {
+
+    private static final Logger logger = Logger.getLogger(XrayPublishLoadTest.class.getName());
+    private static final int TEST_PLANS = 5;
+    private static final List<String> ENVIRONMENTS = List.of("TST", "TST,Android", "TST,iOS", "DEV");
+    private static final int TEST_CASES_PER_PLAN = 500;
+    private static final int SOURCES = 50;
+    private static final int RESULTS_PER_SUITE = 1_000;
+
+    @ParameterizedTest(name = "{0} results")
+    @ValueSource(ints = {10_000, 50_000, 200_000})
+    void publishReportsToXray_withSyntheticRun(int resultCount) throws IOException {
+        try (FakeXrayServer xray = new FakeXrayServer.Builder()
+                .withLatency(Duration.ofMillis(20))
+                .start()) {
+            XrayTestResultUpdater updater = new XrayTestResultUpdater.Builder("Load test", "Synthetic results",
+                    () -> Map.of("fields", Map.of("project", Map.of("key", "FAKE"))))
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withTempDirectory(Files.createTempDirectory("xray-load"))
+                    .build();
+
+            long ingestStart = System.nanoTime();
+            for (int suiteStart = 0; suiteStart < resultCount; suiteStart += RESULTS_PER_SUITE) {
+                List<TestResult> suite = new ArrayList<>(RESULTS_PER_SUITE);
+                for (int i = suiteStart; i < Math.min(resultCount, suiteStart + RESULTS_PER_SUITE); i++) {
+                    suite.add(syntheticResult(i));
+                }
+                updater.addResults(suite);
+            }
+            long ingestNanos = System.nanoTime() - ingestStart;
+
+            long publishStart = System.nanoTime();
+            List<PublishResult> publishResults = updater.publishReportsToXray();
+            long publishNanos = System.nanoTime() - publishStart;
+
+            long[] latencies = publishResults.stream().mapToLong(PublishResult::latencyMillis).sorted().toArray();
+            long payloadBytes = publishResults.stream().mapToLong(PublishResult::payloadBytes).sum();
+            logger.info(String.format(
+                    "%,d results: ingested in %,d ms (%,.0f results/s); published %d executions (%,d KiB) in %,d ms "
+                            + "(%,.0f results/s); import latency p50=%d ms p99=%d ms",
+                    resultCount,
+                    Duration.ofNanos(ingestNanos).toMillis(), resultCount / (ingestNanos / 1e9),
+                    publishResults.size(), payloadBytes / 1024,
+                    Duration.ofNanos(publishNanos).toMillis(), resultCount / (publishNanos / 1e9),
+                    percentile(latencies, 50), percentile(latencies, 99)));
+
+            assertTrue(publishResults.stream().allMatch(PublishResult::isSuccessful));
+            assertEquals(publishResults.size(), xray.getCreatedExecutions());
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Creates a result without stubbing each call so that hundreds of thousands of them stay cheap.
+     * The results are spread over several test plans, environment combinations and feature files, and
+     * each test case gets several examples.
+     */
+    private static TestResult syntheticResult(int i) {
+        int testCase = i % (TEST_PLANS * TEST_CASES_PER_PLAN);
+        int plan = testCase % TEST_PLANS;
+        String environments = ENVIRONMENTS.get((i / TEST_CASES_PER_PLAN) % ENVIRONMENTS.size());
+        Set<String> tags = Set.of(
+                "@xray-test-plan=PLAN-%d".formatted(plan),
+                "@xray-test-env=" + environments,
+                "@xray-test-case=CASE-%d".formatted(testCase));
+        URI source = URI.create("file:/features/suite-%d.feature?ruleIndex=%d&ordinal=%d&tableIndex=%d"
+                .formatted(testCase % SOURCES, plan, testCase, i));
+        boolean failed = i % 100 == 99;
+
+        Answer<Object> testCaseAnswer = invocation -> switch (invocation.getMethod().getName()) {
+            case "getTags" -> tags;
+            case "getOriginalSource" -> source;
+            case "getTestTitle" -> "Synthetic scenario " + testCase;
+            case "getUnfilteredPhraseBody" -> List.of("Given a synthetic step", "Then it is reported");
+            case "getMetadata" -> Map.of();
+            default -> Mockito.RETURNS_DEFAULTS.answer(invocation);
+        };
+        TaggedTestCase taggedTestCase = Mockito.mock(TaggedTestCase.class,
+                Mockito.withSettings().stubOnly().defaultAnswer(testCaseAnswer));
+
+        Answer<Object> resultAnswer = invocation -> switch (invocation.getMethod().getName()) {
+            case "getTestCase" -> (TestCase) taggedTestCase;
+            case "getStatus" -> failed ? TechnicalReportData.Status.FAILED : TechnicalReportData.Status.PASSED;
+            case "getFailureReason" -> failed ? Optional.of(new AssertionError("Synthetic failure")) : Optional.empty();
+            default -> Mockito.RETURNS_DEFAULTS.answer(invocation);
+        };
+        return Mockito.mock(TestResult.class, Mockito.withSettings().stubOnly().defaultAnswer(resultAnswer));
+    }
+}
@@ -0,0 +1,122 @@
+package com.google.pdsl.xray;
+
+import com.google.pdsl.xray.constants.XrayTestTag;
+import com.google.pdsl.xray.core.XrayAuth;
+import com.google.pdsl.xray.core.XrayTestResultUpdater;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Measures how fast {@link XrayTestResultUpdater#onScenarioConverted} turns the rows of large, wide Examples tables
+ * into tags, compared with scanning every column of every row for each XRAY tag.
+ * <p>
+ * These tests are tagged "load" and only run with the load-test profile: {@code mvn test -Pload-test}
+ */
+@Tag("load")
+public class XrayTagExtractionLoadTest {
+
+    private static final Logger logger = Logger.getLogger(XrayTagExtractionLoadTest.class.getName());
+    private static final int ROWS = 10_000;
+    private static final int ROUNDS = 5;
+
+    @ParameterizedTest(name = "{0} columns")
+    @ValueSource(ints = {5, 50})
+    void onScenarioConverted_withLargeOutline(int columns) throws IOException {
+        XrayTestResultUpdater updater = new XrayTestResultUpdater.Builder("Benchmark", "Tag extraction", Map::of)
+                .withXrayAuth(new XrayAuth("http://localhost", "client-id", "client-secret"))
+                .withTempDirectory(Files.createTempDirectory("xray-benchmark"))
+                .build();
+        List<Map<String, String>> rows = outline(columns);
+
+        long tableNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Map<String, String> row : rows) {
+                updater.onScenarioConverted("Outline", List.of(), new HashSet<>(), row);
+            }
+            tableNanos = Math.min(tableNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (Map<String, String> row : rows) {
+                scanEveryColumn(new HashSet<>(), row);
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+        }
+        logger.info(String.format("%,d rows x %d columns: header index %,d ms (%,.0f rows/s), column scan %,d ms (%,.0f rows/s)",
+                ROWS, columns,
+                Duration.ofNanos(tableNanos).toMillis(), ROWS / (tableNanos / 1e9),
+                Duration.ofNanos(scanNanos).toMillis(), ROWS / (scanNanos / 1e9)));
+
+        for (Map<String, String> row : rows.subList(0, 100)) {
+            Set<String> expected = new HashSet<>();
+            Set<String> actual = new HashSet<>();
+            scanEveryColumn(expected, row);
+            updater.onScenarioConverted("Outline", List.of(), actual, row);
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * A table with the four XRAY columns spread among ordinary parameters. Each row is its own map, as PDSL
+     * creates them.
+     */
+    private static List<Map<String, String>> outline(int columns) {
+        List<Map<String, String>> rows = new ArrayList<>(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            Map<String, String> substitutions = new HashMap<>();
+            for (int column = 0; column < columns; column++) {
+                substitutions.put("<PARAMETER-%d>".formatted(column), "value-%d-%d".formatted(row, column));
+            }
+            substitutions.put("<XRAY-TEST-CASE>", "PROJ-%d".formatted(row % 500));
+            substitutions.put("<Xray-Test-Plan>", "PROJ-222");
+            substitutions.put("<xray-test-execution>", "PROJ-1234");
+            substitutions.put("<XRAY-TEST-ENV>", row % 2 == 0 ? "TST" : "TST,Desktop");
+            rows.add(substitutions);
+        }
+        return rows;
+    }
+
+    /**
+     * The straightforward approach: for each XRAY tag, look through every column of the row.
+     */
+    private static void scanEveryColumn(Set<String> tags, Map<String, String> substitutions) {
+        for (XrayTestTag xrayTag : XrayTestTag.values()) {
+            for (Map.Entry<String, String> entry : substitutions.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(xrayTag.toHtmlTag())) {
+                    tags.add("@%s=%s".formatted(xrayTag, entry.getValue()));
+                    break;
+                }
+            }
+        }
+    }
+}
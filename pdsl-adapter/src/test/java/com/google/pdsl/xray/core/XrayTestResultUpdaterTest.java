@@ -0,0 +1,1180 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.pdsl.xray.constants.StepStatus;
+import com.google.pdsl.xray.fake.FakeXrayServer;
+import com.google.pdsl.xray.models.PublishResult;
+import com.google.pdsl.xray.models.XrayTestExecution;
+import com.google.pdsl.xray.models.XrayTestResult;
+import com.pdsl.reports.TestResult;
+import com.pdsl.reports.proto.TechnicalReportData;
+import com.pdsl.specifications.Phrase;
+import com.pdsl.testcases.TaggedTestCase;
+import com.pdsl.testcases.TestCase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class XrayTestResultUpdaterTest {
+
+    private static final List<String> STEP_DESCRIPTIONS_LIST = List.of(
+            "Given step one",
+            "When step two",
+            "Then step three",
+            "Then step four"
+    );
+
+    private static final String TEST_PLAN_KEY = "PLAN-123";
+    private static final String TEST_EXECUTION_KEY = "EXEC-123";
+    private static final String DEFAULT_SCENARIO_KEY = "SCENARIO-KEY";
+
+    private static final Set<String> DEFAULT_TEST_CASE_TAGS = Set.of(
+            "@xray-test-plan=" + TEST_PLAN_KEY,
+            "@xray-test-execution=" + TEST_EXECUTION_KEY,
+            "@xray-test-case=" + DEFAULT_SCENARIO_KEY
+    );
+
+    @Mock
+    private XrayAuth xrayAuth;
+
+    private XrayTestResultUpdater.Builder xrayTestResultUpdaterBuilder;
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("xray-test");
+        Supplier<Map<Object, Object>> fieldSupplier = () -> new HashMap<>() {{
+            put("summary", "Test Summary");
+            put("project", Map.of("key", "PDSL"));
+        }};
+        xrayTestResultUpdaterBuilder = new XrayTestResultUpdater.Builder("Test Title", "Test Description", fieldSupplier)
+                .withTempDirectory(tempDir);
+    }
+
+    @Test
+    void build_withNullXrayAuth_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> xrayTestResultUpdaterBuilder.build());
+    }
+
+    @Test
+    void build_withXrayAuth_doesNotThrowException() {
+        assertDoesNotThrow(() -> xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build());
+    }
+
+    @Test
+    void build_withXrayAuthProperties_doesNotThrowException() throws IOException {
+        // Create a dummy properties file
+        Properties properties = new Properties();
+        properties.setProperty("xray.api.url", "http://localhost:8080");
+        properties.setProperty("xray.client.id", "dummy-id");
+        properties.setProperty("xray.client.secret", "dummy-secret");
+        Path propertiesFile = tempDir.resolve("xray_new.properties");
+        properties.store(Files.newOutputStream(propertiesFile), null);
+
+        assertDoesNotThrow(() -> xrayTestResultUpdaterBuilder.withPropertiesPath(propertiesFile).build());
+    }
+
+    @Test
+    void addResults_withStepLevelComments_allPassed() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+
+        Map<Integer, List<String>> stepComments = new HashMap<>();
+        stepComments.put(1, List.of("@xray-test-case=STEP-KEY-1"));
+        stepComments.put(3, List.of("@xray-test-case=STEP-KEY-3"));
+        TaggedTestCase testCase = createMockTestCase(stepComments);
+
+        // Mock TestResult
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+
+        updater.addResults(List.of(result));
+
+        XrayTestExecution testExecution = getTestExecution(updater, TEST_EXECUTION_KEY);
+
+        assertEquals(3, testExecution.tests().size());
+        assertEquals(StepStatus.PASSED.name(), getTestStatus(testExecution, "STEP-KEY-1"));
+        assertEquals(StepStatus.PASSED.name(), getTestStatus(testExecution, "STEP-KEY-3"));
+        assertEquals(StepStatus.PASSED.name(), getTestStatus(testExecution, DEFAULT_SCENARIO_KEY));
+    }
+
+    @Test
+    void addResults_withStepLevelComments_stepFailed() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+
+        // Setup step comments:
+        // Step 1 (index 1) has STEP-KEY-1 -> should be PASSED
+        // Step 2 (index 2) has STEP-KEY-2 -> should be FAILED
+        // Step 3 (index 3) has STEP-KEY-2 -> should be FAILED
+        // Step 4 (index 4) has STEP-KEY-3 -> should be BLOCKED
+        Map<Integer, List<String>> stepComments = new HashMap<>();
+        stepComments.put(1, List.of("@xray-test-case=STEP-KEY-1"));
+        stepComments.put(2, List.of("@xray-test-case=STEP-KEY-2"));
+        stepComments.put(4, List.of("@xray-test-case=STEP-KEY-3"));
+        TaggedTestCase testCase = createMockTestCase(stepComments);
+
+        Phrase failingPhrase = Mockito.mock(Phrase.class);
+        when(failingPhrase.getPrefilteredIndex()).thenReturn(2);
+
+        // Mock TestResult
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.FAILED);
+        when(result.getFailureReason()).thenReturn(Optional.of(new RuntimeException("Test Failure")));
+        when(result.getFailingPhrase()).thenReturn(Optional.of(failingPhrase));
+
+        updater.addResults(List.of(result));
+
+        XrayTestExecution testExecution = getTestExecution(updater, TEST_EXECUTION_KEY);
+
+        // SCENARIO-KEY, STEP-KEY-1, STEP-KEY-2, STEP-KEY-3
+        assertEquals(4, testExecution.tests().size());
+        assertEquals(StepStatus.FAILED.name(), getTestStatus(testExecution, DEFAULT_SCENARIO_KEY));
+        assertEquals(StepStatus.PASSED.name(), getTestStatus(testExecution, "STEP-KEY-1"));
+        assertEquals(StepStatus.FAILED.name(), getTestStatus(testExecution, "STEP-KEY-2"));
+        assertEquals(StepStatus.BLOCKED.name(), getTestStatus(testExecution, "STEP-KEY-3"));
+    }
+
+    @Test
+    void addResults_withDuplicateStepLevelComments_avoidsDuplicatesAndConsolidatesStatus() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+
+        // given
+        // Step 1 (index 1) has STEP-KEY-1 -> should be PASSED
+        // Step 2 (index 2) has STEP-KEY-1 (duplicate) -> should be FAILED
+        // Step 3 (index 3) has STEP-KEY-1 (duplicate) -> should be BLOCKED
+        Map<Integer, List<String>> stepComments = new HashMap<>();
+        stepComments.put(1, List.of("@xray-test-case=STEP-KEY-1"));
+        stepComments.put(2, List.of("@xray-test-case=STEP-KEY-1"));
+        stepComments.put(3, List.of("@xray-test-case=STEP-KEY-1"));
+        TaggedTestCase testCase = createMockTestCase(stepComments);
+
+        Phrase failingPhrase = Mockito.mock(Phrase.class);
+        when(failingPhrase.getPrefilteredIndex()).thenReturn(1);
+
+        // when
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.FAILED);
+        when(result.getFailingPhrase()).thenReturn(Optional.of(failingPhrase));
+
+        updater.addResults(List.of(result));
+
+        XrayTestExecution testExecution = getTestExecution(updater, TEST_EXECUTION_KEY);
+
+        // then
+        // Only 2 distinct tests: SCENARIO-KEY, STEP-KEY-1 (no duplicates)
+        assertEquals(2, testExecution.tests().size());
+        assertEquals(StepStatus.FAILED.name(), getTestStatus(testExecution, DEFAULT_SCENARIO_KEY));
+        // Overall status of STEP-KEY-1 should be FAILED since one of the steps failed
+        assertEquals(StepStatus.FAILED.name(), getTestStatus(testExecution, "STEP-KEY-1"));
+    }
+
+    @Test
+    void addResults_withStepLevelComments_stepPopulation() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+
+        Map<Integer, List<String>> stepComments = new HashMap<>();
+        stepComments.put(0, List.of("@xray-test-case=BEFORE-KEY"));
+        stepComments.put(1, List.of("@xray-test-case=STEP-1-KEY"));
+        stepComments.put(2, List.of("@xray-test-case=STEP-2-KEY"));
+        stepComments.put(3, List.of("@xray-test-case=STEP-3-KEY"));
+        TaggedTestCase testCase = createMockTestCase(stepComments);
+
+        // Mock TestResult
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+
+        updater.addResults(List.of(result));
+
+        // Let's assert on the TestItems stepDescriptions using our new testing helper
+        List<TestItem> testItems = updater.getTestItemsForTestPlan(TEST_PLAN_KEY);
+
+        TestItem beforeTestItem = testItems.stream()
+                .filter(item -> item.testKey().equals("BEFORE-KEY"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(STEP_DESCRIPTIONS_LIST, beforeTestItem.stepDescription());
+
+        TestItem step1TestItem = testItems.stream()
+                .filter(item -> item.testKey().equals("STEP-1-KEY"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(STEP_DESCRIPTIONS_LIST.subList(0, 1), step1TestItem.stepDescription());
+
+        TestItem step2TestItem = testItems.stream()
+                .filter(item -> item.testKey().equals("STEP-2-KEY"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(STEP_DESCRIPTIONS_LIST.subList(1, 2), step2TestItem.stepDescription());
+
+        TestItem step3TestItem = testItems.stream()
+                .filter(item -> item.testKey().equals("STEP-3-KEY"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(STEP_DESCRIPTIONS_LIST.subList(2, STEP_DESCRIPTIONS_LIST.size()), step3TestItem.stepDescription());
+    }
+
+    @Test
+    void addResults_withTimings_populatesTestAndExecutionDates() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        TaggedTestCase testCase = createMockTestCase(Map.of());
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+        Instant start = Instant.parse("2025-01-01T10:00:00Z");
+        Instant finish = Instant.parse("2025-01-01T10:00:42Z");
+
+        updater.addResults(List.of(result), start, finish);
+
+        XrayTestExecution testExecution = getTestExecution(updater, TEST_EXECUTION_KEY);
+        XrayTestResult testResult = testExecution.tests().iterator().next();
+        assertEquals(start, OffsetDateTime.parse(testResult.start()).toInstant());
+        assertEquals(finish, OffsetDateTime.parse(testResult.finish()).toInstant());
+        assertEquals(start, OffsetDateTime.parse(testExecution.info().startDate()).toInstant());
+        assertEquals(finish, OffsetDateTime.parse(testExecution.info().finishDate()).toInstant());
+        assertEquals(Duration.ofSeconds(42), updater.getTestItemsForTestPlan(TEST_PLAN_KEY).getFirst().getDuration());
+    }
+
+    @Test
+    void addResults_perSuite_datesOnlyTheExecutionFromTheFirstScenario() throws InterruptedException {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        TaggedTestCase testCase = createMockTestCase(Map.of());
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+        // XRAY dates have whole seconds, so the suite starts more than a second after the updater was built
+        Thread.sleep(1100);
+
+        Instant converted = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        updater.onScenarioConverted("My Scenario", List.of(), Set.of(), Map.of());
+        updater.addResults(List.of(result));
+
+        XrayTestExecution testExecution = getTestExecution(updater, TEST_EXECUTION_KEY);
+        XrayTestResult testResult = testExecution.tests().iterator().next();
+        assertNull(testResult.start());
+        assertNull(testResult.finish());
+        assertFalse(OffsetDateTime.parse(testExecution.info().startDate()).toInstant().isBefore(converted));
+        assertTrue(updater.getTestItemsForTestPlan(TEST_PLAN_KEY).getFirst().suiteTimed());
+    }
+
+    @Test
+    void addResults_withIdenticalFailures_sharesOneBoundedComment() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth)
+                .withFailureCommentMaxLength(200)
+                .withStackTracePackages("com.google.pdsl")
+                .build();
+        RuntimeException failure = new RuntimeException("Test Failure");
+
+        TestResult first = createFailedResult(createMockTestCase(Map.of()), failure);
+        TaggedTestCase otherTestCase = createMockTestCase(Map.of());
+        when(otherTestCase.getTags()).thenReturn(Set.of(
+                "@xray-test-plan=" + TEST_PLAN_KEY,
+                "@xray-test-execution=" + TEST_EXECUTION_KEY,
+                "@xray-test-case=OTHER-KEY"));
+        TestResult second = createFailedResult(otherTestCase, failure);
+
+        updater.addResults(List.of(first, second));
+
+        List<TestItem> testItems = updater.getTestItemsForTestPlan(TEST_PLAN_KEY);
+        assertEquals(2, testItems.size());
+        String firstComment = testItems.get(0).getFailureComment().orElseThrow();
+        assertSame(firstComment, testItems.get(1).getFailureComment().orElseThrow());
+        assertTrue(firstComment.startsWith("java.lang.RuntimeException: Test Failure"));
+        assertTrue(firstComment.length() <= 200);
+        assertTrue(firstComment.lines().skip(1).allMatch(l -> l.startsWith("\tat com.google.pdsl") || l.startsWith("\t...") || l.equals("...")));
+        assertEquals(firstComment, getTestExecution(updater, TEST_EXECUTION_KEY).tests().iterator().next().comment());
+    }
+
+    @Test
+    void addResults_withAsyncIngestion_addsTheResultsBeforeThePayloadIsRead() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth)
+                .withAsyncIngestion(1, IngestionBackpressure.BLOCK)
+                .build();
+        TaggedTestCase twoPlans = Mockito.mock(TaggedTestCase.class);
+        when(twoPlans.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-1", "@xray-test-plan=PLAN-2"));
+        when(twoPlans.getOriginalSource()).thenReturn(URI.create("file:/some/path"));
+        when(twoPlans.getTestTitle()).thenReturn("Two plans");
+        TestResult invalid = Mockito.mock(TestResult.class);
+        when(invalid.getTestCase()).thenReturn(twoPlans);
+
+        updater.addResults(List.of(invalid));
+        updater.addResults(List.of(createFailedResult(createMockTestCase(Map.of()), new RuntimeException("Test Failure"))));
+
+        // The invalid test case fails the read instead of the test run, and only once
+        assertThrows(IllegalArgumentException.class, updater::getXrayPayload);
+        assertEquals("FAILED", getTestStatus(getTestExecution(updater, TEST_EXECUTION_KEY), DEFAULT_SCENARIO_KEY));
+    }
+
+    @Test
+    void addResults_withEvidenceMetadata_attachesTheFilesToFailedResultsOnly() throws IOException {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        Path screenshot = Files.write(tempDir.resolve("screenshot.png"), new byte[]{1, 2, 3});
+        TaggedTestCase failing = createMockTestCase(Map.of());
+        failing.getMetadata().put(XrayTestResultUpdater.EVIDENCE, List.of(screenshot));
+        TaggedTestCase passing = createMockTestCase(Map.of());
+        when(passing.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY,
+                "@xray-test-execution=" + TEST_EXECUTION_KEY, "@xray-test-case=PASSING-KEY"));
+        passing.getMetadata().put(XrayTestResultUpdater.EVIDENCE, screenshot.toString());
+        TestResult passed = Mockito.mock(TestResult.class);
+        when(passed.getTestCase()).thenReturn(passing);
+        when(passed.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+
+        updater.addResults(List.of(createFailedResult(failing, new RuntimeException("Test Failure")), passed));
+
+        Map<String, XrayTestResult> tests = getTestExecution(updater, TEST_EXECUTION_KEY).tests().stream()
+                .collect(Collectors.toMap(XrayTestResult::testKey, t -> t));
+        assertEquals(List.of(screenshot.toAbsolutePath()),
+                tests.get(DEFAULT_SCENARIO_KEY).evidence().stream().map(e -> e.file()).toList());
+        assertEquals("image/png", tests.get(DEFAULT_SCENARIO_KEY).evidence().getFirst().contentType());
+        assertTrue(tests.get("PASSING-KEY").evidence().isEmpty());
+    }
+
+    @Test
+    void getXrayPayload_withFactoringEnvironmentGrouping_mergesExecutionsOfSharedStages() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth)
+                .withEnvironmentGrouping(EnvironmentGroupingStrategy.factoring(env -> env.equals("Android")))
+                .build();
+        Map<String, String> environmentsByTest = Map.of("TEST-1", "DEV,TST", "TEST-2", "DEV", "TEST-3", "TST",
+                "TEST-4", "DEV,Android");
+        environmentsByTest.forEach((testKey, environments) -> {
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY,
+                    "@xray-test-env=" + environments, "@xray-test-case=" + testKey));
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+        });
+
+        Map<Set<String>, Set<String>> testsByEnvironments = updater.getXrayPayload().stream()
+                .collect(Collectors.toMap(e -> e.info().testEnvironments(),
+                        e -> e.tests().stream().map(XrayTestResult::testKey).collect(Collectors.toSet())));
+
+        assertEquals(Map.of(
+                Set.of("DEV"), Set.of("TEST-1", "TEST-2"),
+                Set.of("TST"), Set.of("TEST-1", "TEST-3"),
+                Set.of("DEV", "Android"), Set.of("TEST-4")), testsByEnvironments);
+    }
+
+    @Test
+    void getXrayPayload_calledAgain_onlyRebuildsAfterNewResults() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        TaggedTestCase testCase = createMockTestCase(Map.of());
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+        updater.addResults(List.of(result));
+
+        XrayTestExecution first = getTestExecution(updater, TEST_EXECUTION_KEY);
+        assertSame(first, getTestExecution(updater, TEST_EXECUTION_KEY));
+
+        TestResult failed = createFailedResult(testCase, new RuntimeException("Test Failure"));
+        updater.addResults(List.of(failed));
+        XrayTestExecution rebuilt = getTestExecution(updater, TEST_EXECUTION_KEY);
+        assertNotSame(first, rebuilt);
+        assertEquals("FAILED", getTestStatus(rebuilt, DEFAULT_SCENARIO_KEY));
+    }
+
+    @Test
+    void getXrayPayload_withExampleLimit_keepsPositionsAndCountsOmittedPasses() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).withExampleLimit(5).build();
+        for (int example = 0; example < 50; example++) {
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            when(testCase.getOriginalSource()).thenReturn(
+                    URI.create("file:/some/path?ruleIndex=1&ordinal=2&tableIndex=" + example));
+            TestResult result = example == 10 || example == 40
+                    ? createFailedResult(testCase, new RuntimeException("Test Failure"))
+                    : Mockito.mock(TestResult.class);
+            if (example != 10 && example != 40) {
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            }
+            updater.addResults(List.of(result));
+        }
+
+        XrayTestResult test = getTestExecution(updater, TEST_EXECUTION_KEY).tests().iterator().next();
+
+        assertEquals("FAILED", test.status());
+        List<String> examples = List.copyOf(test.examples());
+        assertEquals(41, examples.size());
+        assertEquals("FAILED", examples.get(10));
+        assertEquals("FAILED", examples.get(40));
+        assertEquals(39, Collections.frequency(examples, "PASSED"));
+        assertTrue(test.comment().startsWith("Examples [11, 41]:"));
+        assertTrue(test.comment().endsWith("48 of 50 examples passed; the last 9 passing examples are not listed"));
+    }
+
+    @Test
+    void getXrayPayload_withResultsSpilledToDisk_matchesInMemoryPayload() throws IOException {
+        XrayTestResultUpdater inMemory = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        XrayTestResultUpdater spilling = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).withHeapBudget(1).build();
+        Map<Integer, List<String>> stepComments = Map.of(2, List.of("@xray-test-case=STEP-KEY-2"));
+        for (int example = 0; example < 3; example++) {
+            TaggedTestCase testCase = createMockTestCase(stepComments);
+            when(testCase.getOriginalSource()).thenReturn(
+                    URI.create("file:/some/path?ruleIndex=1&ordinal=2&tableIndex=" + example));
+            TestResult result = example == 1
+                    ? createFailedResult(testCase, new RuntimeException("Test Failure"))
+                    : Mockito.mock(TestResult.class);
+            if (example != 1) {
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            }
+            inMemory.addResults(List.of(result));
+            spilling.addResults(List.of(result));
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.anyMatch(f -> f.getFileName().toString().startsWith("spilled-results")));
+        }
+        XrayTestExecution expected = getTestExecution(inMemory, TEST_EXECUTION_KEY);
+        XrayTestExecution actual = getTestExecution(spilling, TEST_EXECUTION_KEY);
+        assertEquals(expected.info().summary(), actual.info().summary());
+        assertEquals(expected.tests().size(), actual.tests().size());
+        for (XrayTestResult test : expected.tests()) {
+            XrayTestResult spilled = actual.tests().stream()
+                    .filter(t -> t.testKey().equals(test.testKey()))
+                    .findFirst()
+                    .orElseThrow();
+            assertEquals(test.status(), spilled.status());
+            assertEquals(List.copyOf(test.examples()), List.copyOf(spilled.examples()));
+            assertEquals(test.comment(), spilled.comment());
+        }
+        assertEquals(6, spilling.getTestItemsForTestPlan(TEST_PLAN_KEY).size());
+    }
+
+    @Test
+    void onScenarioConverted_withXrayColumns_addsTagsForEachRow() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        Set<String> firstRowTags = new HashSet<>();
+        Set<String> secondRowTags = new HashSet<>();
+
+        updater.onScenarioConverted("Outline", List.of(), firstRowTags, Map.of(
+                "<PERMUTATION>", "A", "<XRAY-TEST-CASE>", "PROJ-10", "<xray-test-plan>", "PROJ-222", "<Xray-Test-Env>", "TST"));
+        updater.onScenarioConverted("Outline", List.of(), secondRowTags, Map.of(
+                "<PERMUTATION>", "B", "<XRAY-TEST-CASE>", "PROJ-11", "<xray-test-plan>", "PROJ-222", "<Xray-Test-Env>", "TST"));
+
+        assertEquals(Set.of("@xray-test-case=PROJ-10", "@xray-test-plan=PROJ-222", "@xray-test-env=TST"), firstRowTags);
+        assertEquals(Set.of("@xray-test-case=PROJ-11", "@xray-test-plan=PROJ-222", "@xray-test-env=TST"), secondRowTags);
+    }
+
+    @Test
+    void publishReportsToXray_withRunSummaryFile_writesSummary() throws IOException {
+        Path summary = tempDir.resolve("summary.json");
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth)
+                .withRunSummaryFile(summary)
+                .build();
+
+        List<PublishResult> results = updater.publishReportsToXray();
+
+        assertEquals(0, results.size());
+        assertEquals("[ ]", Files.readString(summary).trim());
+    }
+
+    @Test
+    void publishConsolidatedReportsToXray_withoutResults_replacesTheSummaryOfTheLastRun() throws IOException {
+        Path summary = Files.writeString(tempDir.resolve("summary.json"), "[ { \"testPlanKey\" : \"PLAN-1\" } ]");
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth)
+                .withRunSummaryFile(summary)
+                .build();
+
+        List<PublishResult> results = updater.publishConsolidatedReportsToXray();
+
+        assertEquals(0, results.size());
+        assertEquals("[ ]", Files.readString(summary).trim());
+    }
+
+    @Test
+    void publishReportsToXray_withRunSummaryFile_writesImportOutcome() throws IOException {
+        Path summary = tempDir.resolve("summary.json");
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL")
+                .withLatency(Duration.ofMillis(50)).start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withRunSummaryFile(summary)
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            updater.publishReportsToXray();
+
+            JsonNode execution = new ObjectMapper().readTree(summary.toFile()).get(0);
+            assertEquals(TEST_PLAN_KEY, execution.get("testPlanKey").asText());
+            assertEquals("PDSL-1", execution.get("testExecutionKey").asText());
+            assertEquals(200, execution.get("statusCode").asInt());
+            assertEquals(1, execution.get("attempts").asInt());
+            assertTrue(execution.get("payloadBytes").asLong() > 0);
+            assertTrue(execution.get("latencyMillis").asLong() >= 50);
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withFakeXray_returnsCreatedExecution() throws IOException {
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertEquals(1, results.size());
+            assertTrue(results.getFirst().isSuccessful());
+            assertEquals("PDSL-1", results.getFirst().testExecutionKey());
+            assertEquals(TEST_PLAN_KEY, results.getFirst().testPlanKey());
+            assertEquals(1, xray.getImportRequests());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withInfoTemplate_publishesRenderedInfo() throws IOException {
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withInfoTemplate("{\"fields\": {\"project\": {\"key\": \"PDSL\"}, \"summary\": \"${title} for ${testPlanKey}\"}}")
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertTrue(results.getFirst().isSuccessful());
+            assertEquals(1, xray.getImportRequests());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withTenantRoute_publishesToTenantProject() throws IOException {
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start();
+             FakeXrayServer tenantXray = new FakeXrayServer.Builder().withProjectKey("OPS").start()) {
+            XrayTenant tenant = new XrayTenant.Builder("ops",
+                    new XrayAuth(tenantXray.getAuthenticateUrl(), "ops-client-id", "ops-client-secret"),
+                    () -> Map.of("fields", Map.of("project", Map.of("key", "OPS"))))
+                    .withXrayReportUrl(tenantXray.getImportUrl())
+                    .withRateLimit(10)
+                    .build();
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withTenant(tenant)
+                    .withTenantRoute(TenantRoute.planKeyPrefix("PLAN-"), "ops")
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertTrue(results.getFirst().isSuccessful());
+            assertEquals("OPS-1", results.getFirst().testExecutionKey());
+            assertEquals(1, tenantXray.getImportRequests());
+            assertEquals(0, xray.getImportRequests());
+        }
+    }
+
+    @Test
+    void withTenantRoute_undefinedTenant_throws() {
+        xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).withTenantRoute(TenantRoute.tag("@ops"), "ops");
+
+        assertThrows(IllegalArgumentException.class, xrayTestResultUpdaterBuilder::build);
+    }
+
+    @Test
+    void withInfoTemplate_unknownPlaceholder_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> xrayTestResultUpdaterBuilder.withInfoTemplate("{\"fields\": {\"summary\": \"${plan}\"}}"));
+    }
+
+    @Test
+    void publishReportsToXray_withWarmUp_authenticatesWhileTestsRun() throws Exception {
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withWarmUp(true)
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+            updater.addResults(List.of(result));
+
+            for (int i = 0; i < 100 && xray.getAuthenticationRequests() == 0; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, xray.getAuthenticationRequests());
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertTrue(results.getFirst().isSuccessful());
+            assertEquals(1, xray.getAuthenticationRequests());
+            assertEquals(1, xray.getImportRequests());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_afterImportTimedOut_findsCreatedExecutionInsteadOfDuplicating() throws IOException {
+        Path ledgerFile = tempDir.resolve("ledger.tsv");
+        List<String> lookedUpLabels = new ArrayList<>();
+        ExecutionLookup lookup = label -> {
+            lookedUpLabels.add(label);
+            return Optional.of("PDSL-1");
+        };
+        try (FakeXrayServer slow = new FakeXrayServer.Builder().withProjectKey("PDSL")
+                .withLatency(Duration.ofSeconds(1)).start()) {
+            xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(slow.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(slow.getImportUrl())
+                    .withPublishLedger(ledgerFile, "build-1", lookup);
+            for (Duration deadline : List.of(Duration.ofMillis(200), Duration.ofMinutes(1))) {
+                XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withPublishDeadline(deadline).build();
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                // Without an @xray-test-execution tag, so the import creates the execution
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY, "@xray-test-case=" + DEFAULT_SCENARIO_KEY));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+
+                List<PublishResult> results = updater.publishReportsToXray();
+
+                // The second publish finds the execution created by the first one, so sends nothing
+                assertEquals(deadline.toMillis() == 200 ? List.of(0) : List.of(),
+                        results.stream().map(PublishResult::statusCode).toList());
+            }
+            assertEquals(1, slow.getImportRequests());
+            assertEquals(1, lookedUpLabels.size());
+            assertTrue(lookedUpLabels.getFirst().startsWith("pdsl-xray-"));
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withPublishLedger_keepsFeatureFilesOfTheSameGroupApart() throws IOException {
+        Path ledgerFile = tempDir.resolve("ledger.tsv");
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withPublishLedger(ledgerFile, "build-1", label -> Optional.empty());
+            List<List<String>> publishedKeys = new ArrayList<>();
+            for (int attempt = 0; attempt < 2; attempt++) {
+                XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.build();
+                for (String feature : List.of("a", "b")) {
+                    TaggedTestCase testCase = createMockTestCase(Map.of());
+                    when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY, "@xray-test-case=PDSL-" + feature));
+                    when(testCase.getOriginalSource()).thenReturn(URI.create("file:/features/" + feature + ".feature?ruleIndex=1&ordinal=0&tableIndex=3"));
+                    TestResult result = Mockito.mock(TestResult.class);
+                    when(result.getTestCase()).thenReturn(testCase);
+                    when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                    updater.addResults(List.of(result));
+                }
+
+                publishedKeys.add(updater.publishReportsToXray().stream().map(PublishResult::testExecutionKey).sorted().toList());
+            }
+
+            // Each feature file gets its own execution, and the replay finds both in the ledger
+            assertEquals(List.of(List.of("PDSL-1", "PDSL-2"), List.of()), publishedKeys);
+            assertEquals(2, xray.getImportRequests());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_whenAuthenticationStalls_spoolsWithinTheDeadline() throws IOException {
+        Path outboxFile = tempDir.resolve("outbox.jsonl");
+        // Accepts connections but never answers
+        try (ServerSocket stalledAuth = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             FakeXrayServer xray = new FakeXrayServer.Builder().start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth("http://127.0.0.1:%d/authenticate".formatted(stalledAuth.getLocalPort()),
+                            "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withPublishDeadline(Duration.ofMillis(500))
+                    .withOutbox(outboxFile)
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            List<PublishResult> results = assertTimeoutPreemptively(Duration.ofSeconds(10), updater::publishReportsToXray);
+
+            assertEquals(List.of(0), results.stream().map(PublishResult::statusCode).toList());
+            assertEquals(0, xray.getImportRequests());
+            assertEquals(1, Files.readAllLines(outboxFile).size());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_whenIssueKeyLookupStalls_spoolsWithinTheDeadline() throws IOException {
+        Path outboxFile = tempDir.resolve("outbox.jsonl");
+        IssueKeyResolver stalledJira = keys -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return keys;
+        };
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withPublishDeadline(Duration.ofMillis(500))
+                    .withIssueKeyValidation(stalledJira, tempDir.resolve("keys.cache"), Duration.ofDays(1))
+                    .withOutbox(outboxFile)
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-1", "@xray-test-case=PDSL-10"));
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            List<PublishResult> results = assertTimeoutPreemptively(Duration.ofSeconds(10), updater::publishReportsToXray);
+
+            assertEquals(List.of(0), results.stream().map(PublishResult::statusCode).toList());
+            assertEquals(0, xray.getImportRequests());
+            assertEquals(1, Files.readAllLines(outboxFile).size());
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withOpenCircuitBreaker_spoolsRemainingExecutionsToOutbox() throws IOException {
+        Path outboxFile = tempDir.resolve("outbox.jsonl");
+        XrayTestResultUpdater updater;
+        try (FakeXrayServer degraded = new FakeXrayServer.Builder().withServerErrorRate(1).start()) {
+            updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(degraded.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(degraded.getImportUrl())
+                    .withPublishDeadline(Duration.ofMinutes(1))
+                    .withCircuitBreaker(1, Duration.ofSeconds(10))
+                    .withOutbox(outboxFile)
+                    .build();
+            for (String testPlan : List.of("PLAN-1", "PLAN-2")) {
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + testPlan, "@xray-test-case=" + DEFAULT_SCENARIO_KEY));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+            }
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertEquals(List.of(503, 0), results.stream().map(PublishResult::statusCode).toList());
+            assertEquals(List.of(1, 0), results.stream().map(PublishResult::attempts).toList());
+            assertEquals(1, degraded.getImportRequests());
+            assertEquals(2, Files.readAllLines(outboxFile).size());
+        }
+
+        try (FakeXrayServer healthy = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater retry = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(healthy.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(healthy.getImportUrl())
+                    .build();
+
+            List<PublishResult> results = retry.publishOutbox();
+
+            assertTrue(results.stream().allMatch(PublishResult::isSuccessful));
+            assertEquals(Set.of("PLAN-1", "PLAN-2"), results.stream().map(PublishResult::testPlanKey).collect(Collectors.toSet()));
+            assertEquals(2, healthy.getCreatedExecutions());
+            assertTrue(Files.notExists(outboxFile));
+        }
+    }
+
+    @Test
+    void publishOutbox_afterTaggedTenantExecutionWasSpooled_publishesToTheTenant() throws IOException {
+        Path outboxFile = tempDir.resolve("outbox.jsonl");
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start();
+             FakeXrayServer degradedTenant = new FakeXrayServer.Builder().withServerErrorRate(1).start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withTenant(new XrayTenant.Builder("ops",
+                            new XrayAuth(degradedTenant.getAuthenticateUrl(), "ops-client-id", "ops-client-secret"),
+                            () -> Map.of("fields", Map.of("project", Map.of("key", "OPS"))))
+                            .withXrayReportUrl(degradedTenant.getImportUrl())
+                            .withInfoTemplate("{\"fields\": {\"project\": {\"key\": \"OPS\"}, \"summary\": \"${testPlanKey} for ops\"}}")
+                            .build())
+                    .withTenantRoute(TenantRoute.tag("@ops"), "ops")
+                    .withCircuitBreaker(1, Duration.ofSeconds(10))
+                    .withOutbox(outboxFile)
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY, "@xray-test-case=" + DEFAULT_SCENARIO_KEY, "@ops"));
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            assertEquals(List.of(503), updater.publishReportsToXray().stream().map(PublishResult::statusCode).toList());
+            JsonNode spooled = new ObjectMapper().readTree(Files.readAllLines(outboxFile).getFirst());
+            assertEquals("ops", spooled.get("tenant").asText());
+            assertEquals(TEST_PLAN_KEY + " for ops", spooled.at("/info/fields/summary").asText());
+        }
+
+        // The tag routing is gone once the results are cleared, so the replay relies on the stored tenant
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start();
+             FakeXrayServer tenantXray = new FakeXrayServer.Builder().withProjectKey("OPS").start()) {
+            XrayTestResultUpdater retry = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withTenant(new XrayTenant.Builder("ops",
+                            new XrayAuth(tenantXray.getAuthenticateUrl(), "ops-client-id", "ops-client-secret"),
+                            () -> Map.of("fields", Map.of("project", Map.of("key", "OPS"))))
+                            .withXrayReportUrl(tenantXray.getImportUrl())
+                            .build())
+                    .build();
+
+            List<PublishResult> results = retry.publishOutbox();
+
+            assertEquals(List.of("OPS-1"), results.stream().map(PublishResult::testExecutionKey).toList());
+            assertEquals(1, tenantXray.getImportRequests());
+            assertEquals(0, xray.getImportRequests());
+            assertTrue(Files.notExists(outboxFile));
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withUnknownTestCaseKey_quarantinesOnlyThatTest() throws IOException {
+        Path knownKeys = Files.writeString(tempDir.resolve("known-keys.txt"), "PLAN-1\nPDSL-10\n");
+        Path quarantineFile = tempDir.resolve("quarantine.jsonl");
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withIssueKeyValidation(IssueKeyResolver.fromFile(knownKeys), tempDir.resolve("keys.cache"), Duration.ofDays(1))
+                    .withQuarantine(quarantineFile)
+                    .build();
+            int ordinal = 0;
+            for (String testCaseKey : List.of("PDSL-10", "PDSL-11")) {
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-1", "@xray-test-case=" + testCaseKey));
+                when(testCase.getOriginalSource()).thenReturn(URI.create("file:/some/path?ruleIndex=1&ordinal=" + ordinal++ + "&tableIndex=3"));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+            }
+
+            List<PublishResult> results = updater.publishReportsToXray();
+
+            assertEquals(1, results.size());
+            assertTrue(results.getFirst().isSuccessful());
+            List<String> quarantined = Files.readAllLines(quarantineFile);
+            assertEquals(1, quarantined.size());
+            String resultsFile = new ObjectMapper().readTree(quarantined.getFirst()).get("results").asText();
+            String heldBack = Files.readString(tempDir.resolve("quarantine.jsonl.results").resolve(resultsFile));
+            assertTrue(heldBack.contains("PDSL-11"));
+            assertFalse(heldBack.contains("PDSL-10"));
+        }
+    }
+
+    @Test
+    void publishReportsToXray_withExecutionKeyReuse_secondShardUsesTheSameExecution() throws IOException {
+        Path executionKeys = tempDir.resolve("execution-keys.tsv");
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            for (int shard = 0; shard < 2; shard++) {
+                XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                        .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                        .withXrayReportUrl(xray.getImportUrl())
+                        .withExecutionKeyReuse(ExecutionKeyResolver.sharedFile(executionKeys, Duration.ofMinutes(1)), "build-7")
+                        .build();
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-1", "@xray-test-case=PDSL-1" + shard));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+
+                assertTrue(updater.publishReportsToXray().getFirst().isSuccessful());
+            }
+
+            // The first shard claimed the group and recorded PDSL-1; the second one only looked it up
+            List<String> lines = Files.readAllLines(executionKeys);
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(1).contains("\tPDSL-1\t"));
+        }
+    }
+
+    @Test
+    void publishReportsToXray_whenPublishingStopsEarly_releasesEveryClaim() throws IOException {
+        Set<String> claimed = ConcurrentHashMap.newKeySet();
+        Set<String> released = ConcurrentHashMap.newKeySet();
+        ExecutionKeyResolver resolver = new ExecutionKeyResolver() {
+            @Override
+            public Optional<String> find(String testPlanKey, Set<String> testEnvironments, String runId) {
+                claimed.add(testPlanKey);
+                return Optional.empty();
+            }
+
+            @Override
+            public void record(String testPlanKey, Set<String> testEnvironments, String runId, String testExecutionKey) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void release(String testPlanKey, Set<String> testEnvironments, String runId) {
+                released.add(testPlanKey);
+            }
+        };
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withExecutionKeyReuse(resolver, "build-7")
+                    .build();
+            for (int plan = 0; plan < 4; plan++) {
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-" + plan, "@xray-test-case=PDSL-1" + plan));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+            }
+
+            assertThrows(RuntimeException.class, updater::publishReportsToXray);
+        }
+
+        assertFalse(claimed.isEmpty());
+        assertEquals(claimed, released);
+    }
+
+    @Test
+    void publishConsolidatedReportsToXray_whenRecordingFails_releasesTheClaim() throws IOException {
+        Set<String> claimed = ConcurrentHashMap.newKeySet();
+        Set<String> released = ConcurrentHashMap.newKeySet();
+        ExecutionKeyResolver resolver = new ExecutionKeyResolver() {
+            @Override
+            public Optional<String> find(String testPlanKey, Set<String> testEnvironments, String runId) {
+                claimed.add(testPlanKey);
+                return Optional.empty();
+            }
+
+            @Override
+            public void record(String testPlanKey, Set<String> testEnvironments, String runId, String testExecutionKey) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void release(String testPlanKey, Set<String> testEnvironments, String runId) {
+                released.add(testPlanKey);
+            }
+        };
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withExecutionKeyReuse(resolver, "build-7")
+                    .build();
+            TaggedTestCase testCase = createMockTestCase(Map.of());
+            when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=" + TEST_PLAN_KEY, "@xray-test-case=" + DEFAULT_SCENARIO_KEY));
+            TestResult result = Mockito.mock(TestResult.class);
+            when(result.getTestCase()).thenReturn(testCase);
+            when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+            updater.addResults(List.of(result));
+
+            assertThrows(RuntimeException.class, updater::publishConsolidatedReportsToXray);
+        }
+
+        assertEquals(Set.of(TEST_PLAN_KEY), claimed);
+        assertEquals(claimed, released);
+    }
+
+    @Test
+    void publishReportsToXray_whenPublishingStopsWhileTheNextIsPrepared_releasesTheSharedClaim() throws Exception {
+        Path keyFile = tempDir.resolve("execution-keys.tsv");
+        ExecutionKeyResolver shared = ExecutionKeyResolver.sharedFile(keyFile, Duration.ofMinutes(1));
+        CountDownLatch recordFailed = new CountDownLatch(1);
+        AtomicInteger finds = new AtomicInteger();
+        ExecutionKeyResolver resolver = new ExecutionKeyResolver() {
+            @Override
+            public Optional<String> find(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException {
+                Optional<String> key = shared.find(testPlanKey, testEnvironments, runId);
+                if (finds.getAndIncrement() > 0) {
+                    // Still preparing this execution when publishing stops
+                    Uninterruptibles.awaitUninterruptibly(recordFailed);
+                    Uninterruptibles.sleepUninterruptibly(Duration.ofMillis(200));
+                }
+                return key;
+            }
+
+            @Override
+            public void record(String testPlanKey, Set<String> testEnvironments, String runId, String testExecutionKey) throws IOException {
+                recordFailed.countDown();
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void release(String testPlanKey, Set<String> testEnvironments, String runId) throws IOException {
+                shared.release(testPlanKey, testEnvironments, runId);
+            }
+        };
+        try (FakeXrayServer xray = new FakeXrayServer.Builder().withProjectKey("PDSL").start()) {
+            XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder
+                    .withXrayAuth(new XrayAuth(xray.getAuthenticateUrl(), "client-id", "client-secret"))
+                    .withXrayReportUrl(xray.getImportUrl())
+                    .withExecutionKeyReuse(resolver, "build-7")
+                    .build();
+            for (int plan = 0; plan < 2; plan++) {
+                TaggedTestCase testCase = createMockTestCase(Map.of());
+                when(testCase.getTags()).thenReturn(Set.of("@xray-test-plan=PLAN-" + plan, "@xray-test-case=PDSL-1" + plan));
+                TestResult result = Mockito.mock(TestResult.class);
+                when(result.getTestCase()).thenReturn(testCase);
+                when(result.getStatus()).thenReturn(TechnicalReportData.Status.PASSED);
+                updater.addResults(List.of(result));
+            }
+
+            assertThrows(RuntimeException.class, updater::publishReportsToXray);
+        }
+
+        // Another shard can claim both groups at once instead of waiting for the claims to time out
+        ExecutionKeyResolver otherShard = ExecutionKeyResolver.sharedFile(keyFile, Duration.ofMinutes(1));
+        assertEquals(2, finds.get());
+        for (String plan : List.of("PLAN-0", "PLAN-1")) {
+            assertEquals(Optional.empty(), assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> otherShard.find(plan, Set.of(), "build-7")));
+        }
+    }
+
+    @Test
+    void getResultIndex_withResultIndex_findsTheFailedTests() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).withResultIndex().build();
+        updater.addResults(List.of(createFailedResult(createMockTestCase(Map.of()), new AssertionError("expected 2 but was 3"))));
+
+        ResultIndex.Query failed = ResultIndex.Query.all().withTestPlan(TEST_PLAN_KEY).withStatus("FAILED");
+
+        assertEquals(1, updater.getResultIndex().count(failed));
+    }
+
+    @Test
+    void getResultIndex_withoutResultIndex_throws() {
+        XrayTestResultUpdater updater = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+
+        assertThrows(IllegalStateException.class, updater::getResultIndex);
+    }
+
+    @Test
+    void importResults_ofExportedResults_buildsTheSamePayload() {
+        XrayTestResultUpdater exporter = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        TaggedTestCase testCase = createMockTestCase(Map.of());
+        exporter.addResults(List.of(createFailedResult(testCase, new AssertionError("expected 2 but was 3"))));
+        Path exported = tempDir.resolve("results.bin");
+
+        exporter.exportResults(exported);
+        XrayTestResultUpdater uploader = xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build();
+        uploader.importResults(exported);
+
+        assertEquals(List.copyOf(exporter.getXrayPayload()), List.copyOf(uploader.getXrayPayload()));
+    }
+
+    @Test
+    void importResults_ofOtherFile_throws() throws IOException {
+        Path other = Files.writeString(tempDir.resolve("results.json"), "{\"tests\": []}");
+
+        assertThrows(IllegalArgumentException.class, () -> xrayTestResultUpdaterBuilder.withXrayAuth(xrayAuth).build().importResults(other));
+    }
+
+    private TestResult createFailedResult(TestCase testCase, Throwable failure) {
+        TestResult result = Mockito.mock(TestResult.class);
+        when(result.getTestCase()).thenReturn(testCase);
+        when(result.getStatus()).thenReturn(TechnicalReportData.Status.FAILED);
+        when(result.getFailureReason()).thenReturn(Optional.of(failure));
+        return result;
+    }
+
+    private TaggedTestCase createMockTestCase(Map<Integer, List<String>> stepComments) {
+        TaggedTestCase testCase = Mockito.mock(TaggedTestCase.class);
+        when(testCase.getTags()).thenReturn(DEFAULT_TEST_CASE_TAGS);
+        when(testCase.getOriginalSource()).thenReturn(URI.create("file:/some/path?ruleIndex=1&ordinal=2&tableIndex=3"));
+        when(testCase.getTestTitle()).thenReturn("My Scenario");
+        when(testCase.getUnfilteredPhraseBody()).thenReturn(STEP_DESCRIPTIONS_LIST);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(TestCase.STEP_COMMENTS, stepComments);
+        when(testCase.getMetadata()).thenReturn(metadata);
+        return testCase;
+    }
+
+    private XrayTestExecution getTestExecution(XrayTestResultUpdater updater, String testExecutionKey) {
+
+        Collection<XrayTestExecution> payloads = updater.getXrayPayload().stream().toList();
+        assertEquals(1, payloads.size());
+        XrayTestExecution testExecution = payloads.iterator().next();
+        assertEquals(testExecutionKey, testExecution.testExecutionKey());
+        return testExecution;
+    }
+
+    private String getTestStatus(XrayTestExecution testExecution, String testKey) {
+        XrayTestResult result = testExecution.tests().stream()
+                .filter(r -> r.testKey().equals(testKey))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Could not find test with key " + testKey));
+        return result.status();
+    }
+
+}
\ No newline at end of file
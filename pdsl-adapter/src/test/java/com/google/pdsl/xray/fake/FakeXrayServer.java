@@ -0,0 +1,251 @@
+package com.google.pdsl.xray.fake;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * An embedded stand-in for the XRAY Cloud v2 REST API, built on the JDK {@link HttpServer}.
+ * <p>
+ * It serves the authenticate and multipart execution import endpoints so publishing can be tested
+ * without network access or credentials. Latency, throttling (429), server errors (5xx) and payload
+ * size limits can be configured to see how publishing behaves when XRAY is degraded.
+ */
+public final class FakeXrayServer implements AutoCloseable {
+
+    public static final String AUTHENTICATE_PATH = "/api/v2/authenticate";
+    public static final String IMPORT_PATH = "/api/v2/import/execution/multipart";
+    public static final String TOKEN = "fake-xray-token";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration latency;
+    private final double throttleRate;
+    private final double serverErrorRate;
+    private final long maxPayloadBytes;
+    private final String projectKey;
+    private final Random random;
+    private final AtomicInteger executionCounter = new AtomicInteger();
+    private final AtomicInteger authenticationRequests = new AtomicInteger();
+    private final AtomicInteger importRequests = new AtomicInteger();
+    private final AtomicInteger rejectedRequests = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private FakeXrayServer(Builder builder) throws IOException {
+        this.latency = builder.latency;
+        this.throttleRate = builder.throttleRate;
+        this.serverErrorRate = builder.serverErrorRate;
+        this.maxPayloadBytes = builder.maxPayloadBytes;
+        this.projectKey = builder.projectKey;
+        this.random = new Random(builder.seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(AUTHENTICATE_PATH, this::authenticate);
+        this.server.createContext(IMPORT_PATH, this::importExecution);
+        this.server.start();
+    }
+
+    public static class Builder {
+        private Duration latency = Duration.ZERO;
+        private double throttleRate = 0;
+        private double serverErrorRate = 0;
+        private long maxPayloadBytes = Long.MAX_VALUE;
+        private String projectKey = "FAKE";
+        private long seed = 42;
+
+        /**
+         * @param latency how long each import request takes before it is answered
+         */
+        public Builder withLatency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param throttleRate the fraction of import requests answered with 429 Too Many Requests
+         */
+        public Builder withThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /**
+         * @param serverErrorRate the fraction of import requests answered with 503 Service Unavailable
+         */
+        public Builder withServerErrorRate(double serverErrorRate) {
+            this.serverErrorRate = serverErrorRate;
+            return this;
+        }
+
+        /**
+         * @param maxPayloadBytes import requests larger than this are answered with 413 Payload Too Large
+         */
+        public Builder withMaxPayloadBytes(long maxPayloadBytes) {
+            this.maxPayloadBytes = maxPayloadBytes;
+            return this;
+        }
+
+        /**
+         * @param projectKey the project of the execution keys handed out, e.g. FAKE-1, FAKE-2...
+         */
+        public Builder withProjectKey(String projectKey) {
+            this.projectKey = projectKey;
+            return this;
+        }
+
+        /**
+         * @param seed the seed that decides which requests get injected failures
+         */
+        public Builder withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FakeXrayServer start() throws IOException {
+            return new FakeXrayServer(this);
+        }
+    }
+
+    public String getAuthenticateUrl() {
+        return getBaseUrl() + AUTHENTICATE_PATH;
+    }
+
+    public String getImportUrl() {
+        return getBaseUrl() + IMPORT_PATH;
+    }
+
+    public int getAuthenticationRequests() {
+        return authenticationRequests.get();
+    }
+
+    public int getImportRequests() {
+        return importRequests.get();
+    }
+
+    public int getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public int getCreatedExecutions() {
+        return executionCounter.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String getBaseUrl() {
+        return "http://%s:%d".formatted(server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    private void authenticate(HttpExchange exchange) throws IOException {
+        authenticationRequests.incrementAndGet();
+        drain(exchange.getRequestBody());
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "");
+            return;
+        }
+        respond(exchange, 200, "\"%s\"".formatted(TOKEN));
+    }
+
+    private void importExecution(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            // e.g. a client opening the connection ahead of time; not an import
+            drain(exchange.getRequestBody());
+            respond(exchange, 405, "");
+            return;
+        }
+        importRequests.incrementAndGet();
+        long size = drain(exchange.getRequestBody());
+        receivedBytes.addAndGet(size);
+        sleep(latency);
+        if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            reject(exchange, 401, "{\"error\":\"Authentication failed\"}");
+        } else if (size > maxPayloadBytes) {
+            reject(exchange, 413, "{\"error\":\"Payload too large\"}");
+        } else if (nextDouble() < throttleRate) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            reject(exchange, 429, "{\"error\":\"Too many requests\"}");
+        } else if (nextDouble() < serverErrorRate) {
+            reject(exchange, 503, "{\"error\":\"Service unavailable\"}");
+        } else {
+            int id = executionCounter.incrementAndGet();
+            respond(exchange, 200, "{\"id\":\"%d\",\"key\":\"%s-%d\",\"self\":\"%s/rest/api/2/issue/%d\"}"
+                    .formatted(10000 + id, projectKey, id, getBaseUrl(), 10000 + id));
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private void reject(HttpExchange exchange, int status, String body) throws IOException {
+        rejectedRequests.incrementAndGet();
+        respond(exchange, status, body);
+    }
+
+    private static long drain(InputStream body) throws IOException {
+        try (body) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.pdsl.xray.models.PublishResult;
+import com.google.pdsl.xray.models.XrayTestExecution;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Sends executions built by a {@link ResultAggregator} to XRAY: serializes the results part of each into a
+ * temp file, imports it within the deadline and circuit breaker, spools what is worth sending again to the
+ * outbox and writes the run summary.
+ * <p>
+ * It only needs the core and transport modules, so tools that do not run PDSL, such as the command line
+ * uploader, publish with it directly.
+ */
+public final class ExecutionPublisher {
+
+    // How many serialized payloads may wait for the upload before serializing waits in turn
+    private static final int PAYLOADS_AHEAD = 2;
+
+    private final XrayImportClient importClient;
+    private final ObjectMapper objectMapper;
+    private final Path tempDirectory;
+    private final String title;
+    private final Supplier<Map<Object, Object>> fieldSupplier;
+    private final Optional<InfoTemplate> infoTemplate;
+    private final Optional<Path> runSummaryFile;
+    private final Optional<Duration> publishBudget;
+    private final int circuitBreakerFailures;
+    private final Optional<Duration> slowImportThreshold;
+    private final Optional<PublishOutbox> outbox;
+    private final EvidenceLimits evidenceLimits;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /**
+     * An execution that is ready to be sent: its results serialized to a temp file and its info part rendered.
+     */
+    record PreparedExecution(XrayTestExecution execution, Path results, String infoBody) {}
+
+    /**
+     * What a caller such as the {@code XrayTestResultUpdater} adds to a publish: how each execution is prepared,
+     * what is recorded around its import and which project it is imported to.
+     */
+    interface Hooks {
+        /**
+         * Prepares an execution on the background thread, e.g. with {@link #writeResults} and {@link #infoBody}.
+         *
+         * @param sharedInfoBody the serialized field supplier, if it is the same for every execution
+         * @return the execution ready to be sent, or empty if there is nothing to send
+         */
+        Optional<PreparedExecution> prepare(XrayTestExecution execution, String sharedInfoBody) throws IOException;
+
+        /**
+         * Undoes the preparation of an execution that will not be imported, because publishing stopped early
+         * or its import failed. Its results file is deleted by the publisher.
+         */
+        default void discard(PreparedExecution prepared) {}
+
+        /**
+         * Called right before the prepared execution is imported.
+         */
+        default void beforeImport(XrayTestExecution execution) throws IOException {}
+
+        /**
+         * Called with the outcome of the import, before the execution is spooled to the outbox.
+         */
+        default void afterImport(XrayTestExecution execution, PublishResult publishResult) throws IOException {}
+
+        /**
+         * @return the name of the tenant the execution is imported to, or null for the default project
+         */
+        default String tenantFor(XrayTestExecution execution) {
+            return null;
+        }
+
+        /**
+         * @return the client that imports the execution, e.g. that of its tenant
+         */
+        XrayImportClient clientFor(XrayTestExecution execution);
+    }
+
+    private ExecutionPublisher(Builder builder) {
+        this.importClient = builder.importClient;
+        this.objectMapper = builder.objectMapper;
+        this.tempDirectory = builder.tempDirectory;
+        this.title = builder.title;
+        this.fieldSupplier = builder.fieldSupplier;
+        this.infoTemplate = builder.infoTemplate.map(template -> InfoTemplate.compile(template, builder.objectMapper));
+        this.runSummaryFile = builder.runSummaryFile;
+        this.publishBudget = builder.publishBudget;
+        this.circuitBreakerFailures = builder.circuitBreakerFailures;
+        this.slowImportThreshold = builder.slowImportThreshold;
+        this.outbox = builder.outboxFile.map(file -> new PublishOutbox(file, builder.objectMapper));
+        this.evidenceLimits = new EvidenceLimits(builder.maxEvidenceBytesPerTest, builder.maxEvidenceBytesPerExecution);
+    }
+
+    public static class Builder {
+        private final XrayImportClient importClient;
+        private final ObjectMapper objectMapper;
+        private final Path tempDirectory;
+        private String title = "";
+        private Supplier<Map<Object, Object>> fieldSupplier = Map::of;
+        private Optional<String> infoTemplate = Optional.empty();
+        private Optional<Path> runSummaryFile = Optional.empty();
+        private Optional<Duration> publishBudget = Optional.empty();
+        private int circuitBreakerFailures = Integer.MAX_VALUE;
+        private Optional<Duration> slowImportThreshold = Optional.empty();
+        private Optional<Path> outboxFile = Optional.empty();
+        private long maxEvidenceBytesPerTest = 10L << 20;
+        private long maxEvidenceBytesPerExecution = 50L << 20;
+
+        /**
+         * @param importClient  sends the executions
+         * @param objectMapper  serializes the payloads; null fields are left out of them
+         * @param tempDirectory where the parts of each import are written
+         */
+        public Builder(XrayImportClient importClient, ObjectMapper objectMapper, Path tempDirectory) {
+            Preconditions.checkNotNull(importClient, "importClient must not be null");
+            Preconditions.checkNotNull(objectMapper, "objectMapper must not be null");
+            Preconditions.checkNotNull(tempDirectory, "tempDirectory must not be null");
+            this.importClient = importClient;
+            this.objectMapper = objectMapper;
+            this.tempDirectory = tempDirectory;
+        }
+
+        public ExecutionPublisher build() {
+            this.objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+            return new ExecutionPublisher(this);
+        }
+
+        /**
+         * @param fieldSupplier the fields of each test execution issue, unless an info template is used
+         * @return this builder
+         */
+        public Builder withFieldSupplier(Supplier<Map<Object, Object>> fieldSupplier) {
+            Preconditions.checkNotNull(fieldSupplier, "fieldSupplier must not be null");
+            this.fieldSupplier = fieldSupplier;
+            return this;
+        }
+
+        /**
+         * Renders the info part of each execution from a JSON template instead of the field supplier, see
+         * {@code XrayTestResultUpdater.Builder#withInfoTemplate}.
+         *
+         * @param infoTemplate the JSON template
+         * @param title        the value of ${title}
+         * @return this builder
+         * @throws IllegalArgumentException if the template has an unknown placeholder or is not valid JSON
+         */
+        public Builder withInfoTemplate(String infoTemplate, String title) {
+            Preconditions.checkNotNull(infoTemplate, "infoTemplate must not be null");
+            Preconditions.checkNotNull(title, "title must not be null");
+            InfoTemplate.compile(infoTemplate, objectMapper);
+            this.infoTemplate = Optional.of(infoTemplate);
+            this.title = title;
+            return this;
+        }
+
+        /**
+         * @param runSummaryFile where a JSON summary of each publish is written
+         * @return this builder
+         */
+        public Builder withRunSummaryFile(Path runSummaryFile) {
+            this.runSummaryFile = Optional.ofNullable(runSummaryFile);
+            return this;
+        }
+
+        /**
+         * @param publishBudget the most time a publish may take; executions not imported by then are not attempted
+         * @return this builder
+         */
+        public Builder withPublishDeadline(Duration publishBudget) {
+            Preconditions.checkNotNull(publishBudget, "publishBudget must not be null");
+            Preconditions.checkArgument(!publishBudget.isNegative() && !publishBudget.isZero(), "publishBudget must be positive");
+            this.publishBudget = Optional.of(publishBudget);
+            return this;
+        }
+
+        /**
+         * @param consecutiveFailures the failed imports in a row after which the rest are not attempted
+         * @param slowImportThreshold imports taking longer than this count as failures
+         * @return this builder
+         */
+        public Builder withCircuitBreaker(int consecutiveFailures, Duration slowImportThreshold) {
+            Preconditions.checkArgument(consecutiveFailures > 0, "consecutiveFailures must be positive");
+            Preconditions.checkNotNull(slowImportThreshold, "slowImportThreshold must not be null");
+            this.circuitBreakerFailures = consecutiveFailures;
+            this.slowImportThreshold = Optional.of(slowImportThreshold);
+            return this;
+        }
+
+        /**
+         * @param outboxFile where executions that are worth sending again are spooled
+         * @return this builder
+         */
+        public Builder withOutbox(Path outboxFile) {
+            Preconditions.checkNotNull(outboxFile, "outboxFile must not be null");
+            this.outboxFile = Optional.of(outboxFile);
+            return this;
+        }
+
+        /**
+         * Bounds the evidence sent by {@link ExecutionPublisher#publish}, see
+         * {@code XrayTestResultUpdater.Builder#withEvidenceLimits}. Defaults to 10 MB per test and 50 MB per
+         * execution.
+         *
+         * @param maxBytesPerTest      the most bytes of evidence files attached to a single test
+         * @param maxBytesPerExecution the most bytes of evidence files attached to an execution
+         * @return this builder
+         */
+        public Builder withEvidenceLimits(long maxBytesPerTest, long maxBytesPerExecution) {
+            Preconditions.checkArgument(maxBytesPerTest >= 0, "maxBytesPerTest must not be negative");
+            Preconditions.checkArgument(maxBytesPerExecution >= 0, "maxBytesPerExecution must not be negative");
+            this.maxEvidenceBytesPerTest = maxBytesPerTest;
+            this.maxEvidenceBytesPerExecution = maxBytesPerExecution;
+            return this;
+        }
+    }
+
+    /**
+     * Imports each execution, with the evidence that fits in the limits. The next executions are serialized on a background thread while the previous
+     * one is uploaded, at most a couple ahead.
+     *
+     * @return the outcome of each attempt to import an execution
+     * @throws IOException if an execution could not be serialized, or, unless publishing is guarded by a
+     *                     deadline, circuit breaker or outbox, not imported
+     */
+    public List<PublishResult> publish(Collection<XrayTestExecution> executions) throws IOException {
+        return publish(List.copyOf(executions), new Hooks() {
+            @Override
+            public Optional<PreparedExecution> prepare(XrayTestExecution execution, String sharedInfoBody) throws IOException {
+                return Optional.of(ExecutionPublisher.this.prepare(execution, sharedInfoBody));
+            }
+
+            @Override
+            public XrayImportClient clientFor(XrayTestExecution execution) {
+                return importClient;
+            }
+        }, newCircuitBreaker());
+    }
+
+    /**
+     * Imports each execution as {@link #publish(Collection)} does, with what the hooks add.
+     *
+     * @param circuitBreaker bounds this publish, including what the caller did before it started
+     */
+    List<PublishResult> publish(List<XrayTestExecution> executions, Hooks hooks,
+                                PublishCircuitBreaker circuitBreaker) throws IOException {
+        List<PublishResult> publishResults = new ArrayList<>();
+        String sharedInfoBody = sharedInfoBody();
+        try (PublishPipeline<XrayTestExecution, PreparedExecution> pipeline = new PublishPipeline<>("xray-payload-writer",
+                executions, PAYLOADS_AHEAD, execution -> hooks.prepare(execution, sharedInfoBody),
+                prepared -> discard(prepared, hooks))) {
+            for (Optional<PreparedExecution> next = pipeline.next(); next.isPresent(); next = pipeline.next()) {
+                XrayTestExecution execution = next.get().execution();
+                Path results = next.get().results();
+                boolean imported = false;
+                try {
+                    hooks.beforeImport(execution);
+                    PublishResult publishResult = importExecution(hooks.clientFor(execution),
+                            execution.info().testPlanKey(), execution.info().testEnvironments(),
+                            execution.testExecutionKey(), results, next.get().infoBody(), circuitBreaker);
+                    publishResults.add(publishResult);
+                    hooks.afterImport(execution, publishResult);
+                    imported = true;
+                    spoolIfWorthRetrying(publishResult, hooks.tenantFor(execution), next.get().infoBody(), results);
+                } finally {
+                    if (!imported) {
+                        discard(next.get(), hooks);
+                    }
+                    Files.deleteIfExists(results);
+                }
+            }
+        }
+        logOpenCircuitBreaker(circuitBreaker, publishResults);
+        writeRunSummary(publishResults);
+        return publishResults;
+    }
+
+    private static void discard(PreparedExecution prepared, Hooks hooks) {
+        deleteQuietly(prepared.results());
+        hooks.discard(prepared);
+    }
+
+    /**
+     * Sends the executions in the outbox to XRAY. Executions that are still worth retrying stay in the outbox;
+     * the rest are removed. The deadline and circuit breaker apply as they do to a regular publish.
+     * <p>
+     * Executions that were spooled for a tenant of an updater are left in the outbox, since only the updater
+     * knows the credentials of its tenants.
+     *
+     * @return the outcome for each execution in the outbox
+     * @throws IllegalStateException if no outbox was configured
+     */
+    public List<PublishResult> publishOutbox() {
+        return publishOutbox(tenant -> Optional.empty());
+    }
+
+    /**
+     * @param tenantClients the client of each tenant by its name, or empty if the tenant is unknown
+     */
+    List<PublishResult> publishOutbox(Function<String, Optional<XrayImportClient>> tenantClients) {
+        Preconditions.checkState(outbox.isPresent(), "No outbox was configured, see Builder#withOutbox");
+        List<PublishResult> publishResults = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        PublishCircuitBreaker circuitBreaker = newCircuitBreaker();
+        try {
+            // The results of each entry are already a file, so they are imported as they are
+            for (PublishOutbox.Entry entry : outbox.get().read()) {
+                if (!Files.exists(entry.results())) {
+                    // Sent and removed by another process since the outbox was read
+                    continue;
+                }
+                Optional<XrayImportClient> client = entry.tenant() == null
+                        ? Optional.of(importClient)
+                        : tenantClients.apply(entry.tenant());
+                if (client.isEmpty()) {
+                    logger.warning(String.format("Leaving the execution for test plan %s and environments %s in the outbox: it is for the unknown tenant %s",
+                            entry.testPlanKey(), entry.testEnvironments(), entry.tenant()));
+                    continue;
+                }
+                PublishResult publishResult = importExecution(client.get(), entry.testPlanKey(),
+                        entry.testEnvironments(), entry.testExecutionKey(), entry.results(),
+                        objectMapper.writeValueAsString(entry.info()), circuitBreaker);
+                publishResults.add(publishResult);
+                if (!isWorthRetrying(publishResult)) {
+                    done.add(entry.id());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            // Only the entries that were sent are removed, so entries spooled meanwhile by other processes stay
+            outbox.get().remove(done);
+        }
+        logOpenCircuitBreaker(circuitBreaker, publishResults);
+        writeRunSummary(publishResults);
+        return publishResults;
+    }
+
+    private PreparedExecution prepare(XrayTestExecution execution, String sharedInfoBody) throws IOException {
+        XrayTestExecution limited = evidenceLimits.apply(execution);
+        Path results = writeResults(limited);
+        try {
+            return new PreparedExecution(limited, results, infoBody(limited, sharedInfoBody));
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(results);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the serialized field supplier shared by every execution of a publish, or null if the info part
+     * is rendered per execution
+     */
+    String sharedInfoBody() throws IOException {
+        return infoTemplate.isPresent() ? null : objectMapper.writeValueAsString(fieldSupplier.get());
+    }
+
+    /**
+     * @param sharedInfoBody the serialized field supplier, if it was already serialized for this publish
+     * @return the info part for the execution: the rendered template, or else the fields of the field supplier
+     */
+    String infoBody(XrayTestExecution execution, String sharedInfoBody) throws IOException {
+        if (infoTemplate.isPresent()) {
+            return infoTemplate.get().render(execution, title);
+        }
+        return sharedInfoBody != null ? sharedInfoBody : objectMapper.writeValueAsString(fieldSupplier.get());
+    }
+
+    PublishCircuitBreaker newCircuitBreaker() {
+        return new PublishCircuitBreaker(Clock.systemUTC(), publishBudget, circuitBreakerFailures, slowImportThreshold);
+    }
+
+    boolean isGuarded() {
+        return publishBudget.isPresent() || slowImportThreshold.isPresent() || outbox.isPresent();
+    }
+
+    /**
+     * Serializes the results part of an import into a new file in the temp directory. Evidence is base64
+     * encoded from its files straight into the file, so it is never held in memory.
+     */
+    Path writeResults(Object results) throws IOException {
+        Path file = tempDirectory.resolve(String.format("results-%s.json", UUID.randomUUID()));
+        file.toFile().deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW))) {
+            objectMapper.writeValue(out, results);
+        }
+        return file;
+    }
+
+    static void deleteQuietly(Path file) {
+        @SuppressWarnings("unused") boolean unused = file.toFile().delete();
+    }
+
+    /**
+     * Imports an execution unless the circuit breaker is open, within the time the publish has left.
+     * <p>
+     * When publishing is guarded by a deadline, circuit breaker or outbox, an import that gets no response, or
+     * no token, is reported with status code 0 instead of failing the publish. An execution that is not attempted is
+     * reported with status code 0 and 0 attempts.
+     */
+    PublishResult importExecution(XrayImportClient client, String testPlanKey, Set<String> testEnvironments,
+                                  String testExecutionKey, Path results, String infoBody,
+                                  PublishCircuitBreaker circuitBreaker) throws IOException {
+        long payloadBytes = Files.size(results);
+        if (circuitBreaker.isOpen()) {
+            return new PublishResult(testPlanKey, testEnvironments, testExecutionKey, 0, 0, payloadBytes, 0);
+        }
+        // Convert the info to a file as per the xray API specification; the results were written by the caller
+        Path info = Files.writeString(tempDirectory.resolve(String.format("info-%s.json", UUID.randomUUID())),
+                infoBody, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW);
+        info.toFile().deleteOnExit();
+        long start = System.nanoTime();
+        PublishResult publishResult;
+        try {
+            publishResult = client.importExecution(testPlanKey, testEnvironments, testExecutionKey, results, info,
+                    circuitBreaker.remaining());
+        } catch (IOException e) {
+            if (!isGuarded()) {
+                throw e;
+            }
+            logger.severe(String.format("Failed to import Xray test execution results for test plan %s and environments %s: %s",
+                    testPlanKey, testEnvironments, e));
+            publishResult = new PublishResult(testPlanKey, testEnvironments, testExecutionKey, 0,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), payloadBytes, 1);
+        } finally {
+            deleteQuietly(info);
+        }
+        circuitBreaker.record(publishResult);
+        return publishResult;
+    }
+
+    /**
+     * Only executions that were not attempted, got no response, were throttled or hit a server error are
+     * worth sending again; anything else XRAY would reject the same way.
+     */
+    static boolean isWorthRetrying(PublishResult publishResult) {
+        int statusCode = publishResult.statusCode();
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Spools an execution to the outbox if it is worth sending again. Its results file is moved into the outbox.
+     *
+     * @param tenant the name of the tenant the execution was imported to, or null for the default project
+     */
+    void spoolIfWorthRetrying(PublishResult publishResult, String tenant, String infoBody, Path results) throws IOException {
+        if (outbox.isEmpty() || !isWorthRetrying(publishResult)) {
+            return;
+        }
+        outbox.get().append(new PublishOutbox.Entry(tenant, publishResult.testPlanKey(), publishResult.testEnvironments(),
+                publishResult.testExecutionKey(), objectMapper.readTree(infoBody), results));
+    }
+
+    void logOpenCircuitBreaker(PublishCircuitBreaker circuitBreaker, List<PublishResult> publishResults) {
+        circuitBreaker.getOpenReason().ifPresent(reason -> {
+            long notAttempted = publishResults.stream().filter(r -> r.attempts() == 0).count();
+            logger.warning(String.format("Stopped importing to XRAY because %s; %d executions were not attempted%s",
+                    reason, notAttempted,
+                    outbox.map(o -> String.format(" and were written to the outbox %s", o.getFile().toAbsolutePath())).orElse("")));
+        });
+    }
+
+    void writeRunSummary(List<PublishResult> publishResults) {
+        if (runSummaryFile.isEmpty()) {
+            return;
+        }
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(runSummaryFile.get().toFile(), publishResults);
+        } catch (IOException e) {
+            // The summary is diagnostic only; failing to write it should not fail the publishing step
+            logger.warning(String.format("Could not write the XRAY run summary to %s: %s",
+                    runSummaryFile.get().toAbsolutePath(), e.getMessage()));
+        }
+    }
+}
@@ -4,12 +4,17 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 /*
 Copyright 2025 Google LLC
 
@@ -37,6 +42,7 @@ public class XrayAuth {
   private LocalDateTime tokenCreationDate;
   private final String clientId;
   private final String clientSecret;
+  private final ReentrantLock tokenLock = new ReentrantLock();
 
     /**
    * Constructor for XrayAuth.
@@ -53,16 +59,49 @@ public class XrayAuth {
 
   /**
    * Retrieves the authentication token. If a valid token exists, it is returned. Otherwise, a new
-   * token is fetched.
+   * token is fetched. Safe to call from several threads; only one of them fetches the token.
    *
    * @return The Xray authentication token.
+   * @throws IllegalStateException If an error occurs during token retrieval.
    */
   public String getAuthToken() {
-      if (authToken == null || tokenCreationDate == null
-              || LocalDateTime.now().minusHours(tokenValidityHours).isAfter(tokenCreationDate)) {
-        fetchAuthToken();
+    try {
+      return getAuthToken(Optional.empty());
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Retrieves the authentication token like {@link #getAuthToken()}, within a time limit, e.g. the time a
+   * publish has left. Waiting for another thread that is fetching the token counts against the limit.
+   *
+   * @param timeout the most time to spend, if limited
+   * @return The Xray authentication token.
+   * @throws IOException If the token could not be fetched in time or Xray did not issue one.
+   */
+  public String getAuthToken(Optional<Duration> timeout) throws IOException {
+      long start = System.nanoTime();
+      // A lock rather than synchronized so a virtual thread waiting on XRAY does not pin its carrier thread
+      try {
+        if (timeout.isEmpty()) {
+          tokenLock.lockInterruptibly();
+        } else if (!tokenLock.tryLock(timeout.get().toNanos(), TimeUnit.NANOSECONDS)) {
+          throw new IOException("Timed out after %s waiting for the Xray auth token".formatted(timeout.get()));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the Xray auth token");
+      }
+      try {
+        if (authToken == null || tokenCreationDate == null
+                || LocalDateTime.now().minusHours(tokenValidityHours).isAfter(tokenCreationDate)) {
+          fetchAuthToken(timeout.map(t -> t.minusNanos(System.nanoTime() - start)));
+        }
+        return authToken;
+      } finally {
+        tokenLock.unlock();
       }
-      return authToken;
   }
 
   /**
@@ -77,35 +116,39 @@ public class XrayAuth {
   /**
    * Fetches a new authentication token from the Xray API.
    *
-   * @throws IllegalStateException If an error occurs during token retrieval.
+   * @param timeout the most time the request may take, if limited
+   * @throws IOException If an error occurs during token retrieval.
    */
-  private void fetchAuthToken() {
+  private void fetchAuthToken(Optional<Duration> timeout) throws IOException {
+    if (timeout.isPresent() && (timeout.get().isNegative() || timeout.get().isZero())) {
+      throw new IOException("No time was left to fetch the Xray auth token");
+    }
     try {
       ObjectMapper objectMapper = new ObjectMapper();
       JsonNode requestBody = objectMapper.createObjectNode()
           .put("client_id", this.clientId)
           .put("client_secret", this.clientSecret);
 
-      HttpRequest request = HttpRequest.newBuilder()
+      HttpRequest.Builder request = HttpRequest.newBuilder()
           .uri(URI.create(this.xrayUrl))
           .header("Content-Type", "application/json")
-          .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
-          .build();
+          .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)));
+      timeout.ifPresent(request::timeout);
 
-      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
       String responseBody = response.body().replaceAll("\"", "");
 
       if (response.statusCode() >= 200 && response.statusCode() < 300) {
         tokenCreationDate = LocalDateTime.now();
         this.authToken = responseBody;
       } else {
-        throw new IllegalStateException(
+        throw new IOException(
             "Failed to fetch Xray auth token: %d - %s".formatted(response.statusCode(),
                 responseBody));
       }
-    } catch (IOException | InterruptedException e) {
-      throw new IllegalStateException(
-          "Error fetching Xray auth token: %s".formatted(e.getMessage()), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching the Xray auth token");
     }
   }
 
@@ -0,0 +1,252 @@
+package com.google.pdsl.xray.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.pdsl.xray.models.PublishResult;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+/*
+Copyright 2025 Google LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    https://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Sends executions to the multipart import endpoint of the XRAY v2 REST API.
+ * <p>
+ * Connections are pooled, so the connection opened by {@link #warmUp()} (or an earlier import) is reused by
+ * later imports. Clients for other XRAY projects created with {@link #forTenant} share the pool.
+ */
+public final class XrayImportClient {
+
+    private static final String BOUNDARY = "X-PDSL-XRAY-PLUGIN-BOUNDARY";
+    // The context attribute the retry handler counts the requests made for an import in
+    private static final String ATTEMPTS = "pdsl.xray.attempts";
+
+    private final XrayAuth xrayAuth;
+    private final String importUrl;
+    private final ObjectMapper objectMapper;
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+    private final AtomicBoolean warmUpStarted = new AtomicBoolean();
+    private final CloseableHttpClient httpClient;
+    private final Optional<RateLimiter> rateLimiter;
+
+    /**
+     * @param xrayAuth     authenticates the imports
+     * @param importUrl    the multipart import endpoint
+     * @param objectMapper reads the responses
+     */
+    public XrayImportClient(XrayAuth xrayAuth, String importUrl, ObjectMapper objectMapper) {
+        this(xrayAuth, importUrl, objectMapper, HttpClients.custom()
+                .evictIdleConnections(1, TimeUnit.MINUTES)
+                .setRetryHandler(countingRetries(DefaultHttpRequestRetryHandler.INSTANCE))
+                .build(), Optional.empty());
+    }
+
+    private XrayImportClient(XrayAuth xrayAuth, String importUrl, ObjectMapper objectMapper,
+                             CloseableHttpClient httpClient, Optional<RateLimiter> rateLimiter) {
+        Preconditions.checkNotNull(xrayAuth, "xrayAuth must not be null");
+        Preconditions.checkNotNull(importUrl, "importUrl must not be null");
+        Preconditions.checkNotNull(objectMapper, "objectMapper must not be null");
+        this.xrayAuth = xrayAuth;
+        this.importUrl = importUrl;
+        this.objectMapper = objectMapper;
+        this.httpClient = httpClient;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * A client for another XRAY project that shares the connection pool of this one. It authenticates with
+     * its own credentials, so it caches its own token.
+     *
+     * @param xrayAuth         authenticates the imports of the tenant
+     * @param importUrl        the multipart import endpoint of the tenant
+     * @param importsPerSecond the most imports the tenant may start per second, if limited
+     * @return the client of the tenant
+     */
+    public XrayImportClient forTenant(XrayAuth xrayAuth, String importUrl, Optional<Double> importsPerSecond) {
+        importsPerSecond.ifPresent(rate -> Preconditions.checkArgument(rate > 0, "importsPerSecond must be positive"));
+        return new XrayImportClient(xrayAuth, importUrl, objectMapper, httpClient, importsPerSecond.map(RateLimiter::create));
+    }
+
+    /**
+     * Posts the results and info files of an execution.
+     *
+     * @param testExecutionKey the execution the results are added to, or null if XRAY creates one
+     * @param timeout          the most time the import may take, if limited, including waiting for the rate
+     *                         limit and fetching the token
+     * @return the outcome; the execution key is the one XRAY answered with if the import succeeded
+     * @throws IOException if XRAY could not be reached or did not answer in time, did not issue a token, or the
+     *                     rate limit did not allow the import within the timeout
+     */
+    public PublishResult importExecution(String testPlanKey, Set<String> testEnvironments, String testExecutionKey,
+                                         Path results, Path info, Optional<Duration> timeout) throws IOException {
+        long started = System.nanoTime();
+        if (rateLimiter.isPresent()) {
+            if (timeout.isEmpty()) {
+                rateLimiter.get().acquire();
+            } else if (!rateLimiter.get().tryAcquire(timeout.get().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException(String.format("The rate limit of %s imports per second does not allow an import within %s",
+                        rateLimiter.get().getRate(), timeout.get()));
+            }
+        }
+        String authToken = xrayAuth.getAuthToken(remaining(timeout, started));
+        HttpPost post = new HttpPost(importUrl);
+        remaining(timeout, started).ifPresent(t -> {
+            int millis = (int) Math.max(1, Math.min(Integer.MAX_VALUE, t.toMillis()));
+            post.setConfig(RequestConfig.custom()
+                    .setConnectTimeout(millis)
+                    .setConnectionRequestTimeout(millis)
+                    .setSocketTimeout(millis)
+                    .build());
+        });
+        post.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + authToken);
+        post.addHeader(HttpHeaders.CONTENT_TYPE, String.format("%s; boundary=%s",
+                ContentType.MULTIPART_FORM_DATA.getMimeType(),
+                BOUNDARY));
+        post.addHeader(HttpHeaders.ACCEPT, "*/*");
+        post.addHeader(HttpHeaders.ACCEPT_ENCODING, "*/*");
+
+        post.setEntity(MultipartEntityBuilder.create()
+                .addBinaryBody("results", results.toFile(), ContentType.APPLICATION_JSON, results.getFileName().toString())
+                .addBinaryBody("info", info.toFile(), ContentType.APPLICATION_JSON, info.getFileName().toString())
+                .setLaxMode()
+                .setBoundary(BOUNDARY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build());
+
+        long payloadBytes = Files.size(results);
+        HttpClientContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = httpClient.execute(post, context)) {
+            // Read the body exactly once; it is only needed for logging and to find the execution key
+            String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            final int statusCode = response.getStatusLine().getStatusCode();
+            PublishResult publishResult = new PublishResult(
+                    testPlanKey,
+                    testEnvironments,
+                    statusCode >= 200 && statusCode < 300 ? parseExecutionKey(body).orElse(testExecutionKey) : testExecutionKey,
+                    statusCode,
+                    latencyMillis,
+                    payloadBytes,
+                    attempts(context));
+            if (publishResult.isSuccessful()) {
+                logger.info(String.format("Xray test execution results imported successfully in %d ms%n%s%n", latencyMillis, body));
+            } else {
+                logger.severe(String.format("Failed to import Xray test execution results: %s - %s%n",
+                        response.getStatusLine(), body));
+            }
+            return publishResult;
+        }
+    }
+
+    /**
+     * Authenticates and opens a pooled connection to the import endpoint on a virtual thread, once.
+     * The HEAD request is only made for its connection; whatever XRAY answers is ignored.
+     */
+    public void warmUp() {
+        if (!warmUpStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("xray-warm-up").start(() -> {
+            long start = System.nanoTime();
+            try {
+                xrayAuth.getAuthToken();
+                try (CloseableHttpResponse response = httpClient.execute(new HttpHead(importUrl))) {
+                    EntityUtils.consume(response.getEntity());
+                }
+                logger.fine(String.format("Connected and authenticated to XRAY in %d ms",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            } catch (IOException | RuntimeException e) {
+                logger.warning(String.format("Could not warm up the connection to XRAY; publishing will connect when needed: %s",
+                        e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * @return the time left of the timeout, if limited
+     * @throws IOException if no time is left
+     */
+    private static Optional<Duration> remaining(Optional<Duration> timeout, long startedNanos) throws IOException {
+        if (timeout.isEmpty()) {
+            return timeout;
+        }
+        Duration remaining = timeout.get().minusNanos(System.nanoTime() - startedNanos);
+        if (remaining.isNegative() || remaining.isZero()) {
+            throw new IOException(String.format("The import did not complete within %s", timeout.get()));
+        }
+        return Optional.of(remaining);
+    }
+
+    /**
+     * Lets the retry handler decide as usual and counts the requests it makes in the context of the import.
+     */
+    private static HttpRequestRetryHandler countingRetries(HttpRequestRetryHandler retryHandler) {
+        return (exception, executionCount, context) -> {
+            boolean retry = retryHandler.retryRequest(exception, executionCount, context);
+            if (retry) {
+                context.setAttribute(ATTEMPTS, executionCount + 1);
+            }
+            return retry;
+        };
+    }
+
+    /**
+     * @return the number of requests made for the import: 1 unless the retry handler sent it again
+     */
+    private static int attempts(HttpClientContext context) {
+        Integer attempts = context.getAttribute(ATTEMPTS, Integer.class);
+        return attempts == null ? 1 : attempts;
+    }
+
+    /**
+     * Finds the key of the execution in the body of a successful import response.
+     * <p>
+     * XRAY responds with something like {"id":"10001","key":"PROJ-123","self":"https://..."}
+     */
+    private Optional<String> parseExecutionKey(String responseBody) {
+        try {
+            JsonNode key = objectMapper.readTree(responseBody).get("key");
+            return key == null || key.isNull() ? Optional.empty() : Optional.of(key.asText());
+        } catch (IOException e) {
+            logger.warning(String.format("Could not read the execution key from the XRAY response: %s", e.getMessage()));
+            return Optional.empty();
+        }
+    }
+}